@@ -17,6 +17,13 @@
 
 package com.servoy.eclipse.knowledgebase;
 
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.sablo.specification.Package.IPackageReader;
@@ -39,7 +46,10 @@ import com.servoy.eclipse.model.util.ServoyLog;
  * Solution Activation Strategy:
  * - Registers IActiveProjectListener to track solution changes
  * - When solution activates: clears existing knowledge base, discovers and loads knowledge base packages
- * - Knowledge base packages are NOT auto-reloaded on updates - user must use context menu actions
+ * - Edits of loaded knowledge base packages in the workspace are applied incrementally ({@link KnowledgeBaseResourceListener})
+ * 
+ * Model loading and knowledge base embedding run in background jobs ({@link KnowledgeBaseJob}), never in start().
+ * Consumers wait for {@link KnowledgeBaseManager#awaitEmbeddingService(long, java.util.concurrent.TimeUnit)}.
  * 
  * @author mvid
  * @since 2026.3
@@ -51,6 +61,7 @@ public class Activator implements BundleActivator
 	private static Activator plugin;
 	private static BundleContext context;
 	private IActiveProjectListener solutionActivationListener;
+	private KnowledgeBaseResourceListener resourceListener;
 
 	public static Activator getDefault()
 	{
@@ -70,21 +81,42 @@ public class Activator implements BundleActivator
 		
 		ServoyLog.logInfo("[KnowledgeBase] Plugin starting...");
 		
+		registerSolutionActivationListener();
+		resourceListener = new KnowledgeBaseResourceListener();
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(resourceListener, IResourceChangeEvent.POST_CHANGE);
+		new KnowledgeBaseJob("Loading Servoy knowledge base", Job.LONG, this::initialize).schedule();
+
+		ServoyLog.logInfo("[KnowledgeBase] Plugin started - knowledge base is loading in the background");
+	}
+
+	/**
+	 * Background initialization pipeline: load the ONNX models, then discover and embed the knowledge bases
+	 * of the current solution. Completes the readiness future of {@link KnowledgeBaseManager} either way.
+	 */
+	private void initialize(IProgressMonitor monitor)
+	{
+		SubMonitor progress = SubMonitor.convert(monitor, 10);
+		ServoyEmbeddingService embeddingService;
 		try
 		{
+			progress.subTask("Loading embedding model");
 			ServoyLog.logInfo("[KnowledgeBase] Initializing embedding service...");
-			ServoyEmbeddingService.getInstance();
+			embeddingService = ServoyEmbeddingService.getInstance();
 			ServoyLog.logInfo("[KnowledgeBase] Embedding service initialized successfully");
+			progress.worked(4);
 		}
 		catch (Throwable e)
 		{
 			ServoyLog.logError("[KnowledgeBase] Failed to initialize embedding service: " + e.getMessage(), e);
+			KnowledgeBaseManager.embeddingServiceFailed(e);
+			return;
 		}
-		
-		registerSolutionActivationListener();
-		loadKnowledgeBasesForCurrentSolution();
 
-		ServoyLog.logInfo("[KnowledgeBase] Plugin started - service accessible via Activator.getDefault()");
+		if (!progress.isCanceled())
+		{
+			loadKnowledgeBasesForCurrentSolution(progress.split(6));
+		}
+		KnowledgeBaseManager.embeddingServiceReady(embeddingService);
 	}
 	
 	/**
@@ -104,7 +136,8 @@ public class Activator implements BundleActivator
 					@Override
 					public void activeProjectChanged(ServoyProject activeProject)
 					{
-						handleSolutionActivation(activeProject);
+						new KnowledgeBaseJob("Loading Servoy knowledge base", Job.LONG, monitor -> handleSolutionActivation(activeProject))
+							.schedule();
 					}
 					
 					@Override
@@ -117,7 +150,7 @@ public class Activator implements BundleActivator
 					@Override
 					public void activeProjectUpdated(ServoyProject activeProject, int updateInfo)
 					{
-						// Do NOT react to updates - user must manually reload via context menu
+						// knowledge base package edits are applied by the KnowledgeBaseResourceListener
 					}
 				};
 			
@@ -150,8 +183,7 @@ public class Activator implements BundleActivator
 				// Reset context to active solution
 				resetContextToActiveSolution();
 
-				// Reload knowledge bases
-				ServoyEmbeddingService.getInstance().reloadAllKnowledgeBasesFromReaders(new IPackageReader[0]);
+				// Replace the knowledge bases of the previous solution
 				KnowledgeBaseManager.loadKnowledgeBasesForSolution(activeProject);
 			}
 			catch (Exception e)
@@ -162,10 +194,12 @@ public class Activator implements BundleActivator
 	}
 	
 	/**
-	 * Loads knowledge bases for currently active solution at plugin startup.
+	 * Loads knowledge bases for currently active solution at plugin startup:
+	 * discovers the knowledge base packages, then embeds them.
 	 */
-	private void loadKnowledgeBasesForCurrentSolution()
+	private void loadKnowledgeBasesForCurrentSolution(IProgressMonitor monitor)
 	{
+		SubMonitor progress = SubMonitor.convert(monitor, 3);
 		try
 		{
 			ServoyProject activeProject = ServoyModelFinder.getServoyModel().getActiveProject();
@@ -173,7 +207,14 @@ public class Activator implements BundleActivator
 			{
 				String solutionName = activeProject.getProject().getName();
 				ServoyLog.logInfo("[KnowledgeBase] Loading knowledge bases for current solution: " + solutionName);
-				KnowledgeBaseManager.loadKnowledgeBasesForSolution(activeProject);
+				progress.subTask("Discovering knowledge base packages");
+				IPackageReader[] packageReaders = KnowledgeBaseManager.discoverKnowledgeBasePackagesInSolution(activeProject);
+				progress.worked(1);
+				if (!progress.isCanceled())
+				{
+					progress.subTask("Embedding knowledge bases");
+					KnowledgeBaseManager.loadKnowledgeBases(packageReaders);
+				}
 			}
 		}
 		catch (Exception e)
@@ -187,11 +228,23 @@ public class Activator implements BundleActivator
 	{
 		ServoyLog.logInfo("[KnowledgeBase] Plugin stopping...");
 		
+		if (resourceListener != null)
+		{
+			ResourcesPlugin.getWorkspace().removeResourceChangeListener(resourceListener);
+			resourceListener = null;
+		}
+		Job.getJobManager().cancel(KnowledgeBaseJob.FAMILY);
+		
 		if (solutionActivationListener != null)
 		{
 			try
 			{
-				ServoyEmbeddingService.getInstance().reloadAllKnowledgeBasesFromReaders(new IPackageReader[0]);
+				// do not load the models just to clear them when the startup job never got that far
+				CompletableFuture<ServoyEmbeddingService> ready = KnowledgeBaseManager.whenReady();
+				if (ready.isDone() && !ready.isCompletedExceptionally())
+				{
+					ready.join().reloadAllKnowledgeBasesFromReaders(new IPackageReader[0]);
+				}
 				IServoyModel servoyModel = ServoyModelFinder.getServoyModel();
 				if (servoyModel instanceof IDeveloperServoyModel)
 				{
@@ -35,6 +35,12 @@ public interface IKnowledgeBaseOperations
 	 */
 	void loadKnowledgeBase(String packageName);
 
+	/**
+	 * Unload the knowledge base of a specific package, keeping the other loaded knowledge bases.
+	 * @param packageName the package name to unload
+	 */
+	void unloadKnowledgeBase(String packageName);
+
 	/**
 	 * Reload all knowledge bases for the currently active solution.
 	 */
@@ -45,4 +51,11 @@ public interface IKnowledgeBaseOperations
 	 * @param solutionName the solution name
 	 */
 	void loadKnowledgeBasesForSolution(String solutionName);
+
+	/**
+	 * Generate precomputed embedding vector files inside a knowledge base package project.
+	 * @param packageName the package name
+	 * @return number of vector files written
+	 */
+	int generatePrecomputedEmbeddings(String packageName);
 }
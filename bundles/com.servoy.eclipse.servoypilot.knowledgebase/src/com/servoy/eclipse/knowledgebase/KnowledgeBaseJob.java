@@ -0,0 +1,95 @@
+/*
+ This file belongs to the Servoy development and deployment environment, Copyright (C) 1997-2025 Servoy BV
+
+ This program is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Affero General Public License as published by the Free
+ Software Foundation; either version 3 of the License, or (at your option) any
+ later version.
+
+ This program is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License along
+ with this program; if not, see http://www.gnu.org/licenses or write to the Free
+ Software Foundation,Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301
+*/
+
+package com.servoy.eclipse.knowledgebase;
+
+import org.eclipse.core.runtime.ICoreRunnable;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+
+import com.servoy.eclipse.model.util.ServoyLog;
+
+/**
+ * Background job for knowledge-base work (model loading, package discovery, embedding),
+ * so it never runs during bundle activation or on the thread that fires solution activation events.
+ * 
+ * All knowledge-base jobs share one scheduling rule and therefore run one at a time in scheduling order:
+ * a solution activated while the models are still loading is only embedded after the initial load finished.
+ * 
+ * @since 2026.3
+ */
+class KnowledgeBaseJob extends Job
+{
+	/**
+	 * Job family of all knowledge-base jobs, see {@link org.eclipse.core.runtime.jobs.IJobManager#cancel(Object)}.
+	 */
+	static final Object FAMILY = KnowledgeBaseJob.class;
+
+	private static final ISchedulingRule RULE = new ISchedulingRule()
+	{
+		@Override
+		public boolean contains(ISchedulingRule rule)
+		{
+			return rule == this;
+		}
+
+		@Override
+		public boolean isConflicting(ISchedulingRule rule)
+		{
+			return rule == this;
+		}
+	};
+
+	private final ICoreRunnable runnable;
+
+	/**
+	 * @param name the job name shown in the progress view
+	 * @param priority the job priority, e.g. {@link Job#LONG}
+	 * @param runnable the work to run
+	 */
+	KnowledgeBaseJob(String name, int priority, ICoreRunnable runnable)
+	{
+		super(name);
+		this.runnable = runnable;
+		setPriority(priority);
+		setRule(RULE);
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor)
+	{
+		try
+		{
+			runnable.run(monitor);
+			return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+		}
+		catch (Exception e)
+		{
+			ServoyLog.logError("[KnowledgeBase] " + getName() + " failed: " + e.getMessage(), e);
+			return Status.error(getName() + " failed", e);
+		}
+	}
+
+	@Override
+	public boolean belongsTo(Object family)
+	{
+		return family == FAMILY;
+	}
+}
@@ -17,11 +17,15 @@
 
 package com.servoy.eclipse.knowledgebase;
 
-import java.io.InputStream;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.jar.Manifest;
 
 import org.eclipse.core.resources.IFile;
@@ -30,6 +34,7 @@ import org.eclipse.core.runtime.Platform;
 import org.osgi.framework.Bundle;
 import org.sablo.specification.Package.IPackageReader;
 
+import com.servoy.eclipse.knowledgebase.service.PackageTasks;
 import com.servoy.eclipse.knowledgebase.service.RulesCache;
 import com.servoy.eclipse.knowledgebase.service.ServoyEmbeddingService;
 import com.servoy.eclipse.model.ServoyModelFinder;
@@ -49,8 +54,15 @@ import com.servoy.eclipse.model.util.ServoyLog;
  */
 public class KnowledgeBaseManager
 {
+	/**
+	 * Completed by the startup job once the models are loaded and the knowledge bases of the active solution are embedded.
+	 */
+	private static final CompletableFuture<ServoyEmbeddingService> embeddingServiceReady = new CompletableFuture<>();
+
 	/**
 	 * Get the embedding service singleton.
+	 * Loads the models on the calling thread when the startup job did not do so yet;
+	 * prefer {@link #awaitEmbeddingService(long, TimeUnit)} from tools that must stay responsive.
 	 * 
 	 * @return ServoyEmbeddingService instance
 	 */
@@ -59,6 +71,56 @@ public class KnowledgeBaseManager
 		return ServoyEmbeddingService.getInstance();
 	}
 
+	/**
+	 * Readiness of the knowledge base: completes with the embedding service once the models are loaded and the
+	 * knowledge bases of the active solution are embedded, or exceptionally when the models could not be loaded.
+	 * 
+	 * @return a future that callers may chain on but cannot complete
+	 */
+	public static CompletableFuture<ServoyEmbeddingService> whenReady()
+	{
+		return embeddingServiceReady.copy();
+	}
+
+	/**
+	 * Wait until the knowledge base is ready, see {@link #whenReady()}.
+	 * 
+	 * @param timeout maximum time to wait
+	 * @param unit unit of the timeout
+	 * @return the embedding service, or null when it is still loading after the timeout
+	 * @throws IllegalStateException when the embedding service failed to initialize
+	 */
+	public static ServoyEmbeddingService awaitEmbeddingService(long timeout, TimeUnit unit)
+	{
+		try
+		{
+			return embeddingServiceReady.get(timeout, unit);
+		}
+		catch (TimeoutException e)
+		{
+			return null;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException("Knowledge base failed to initialize: " + e.getCause().getMessage(), e.getCause());
+		}
+	}
+
+	static void embeddingServiceReady(ServoyEmbeddingService embeddingService)
+	{
+		embeddingServiceReady.complete(embeddingService);
+	}
+
+	static void embeddingServiceFailed(Throwable cause)
+	{
+		embeddingServiceReady.completeExceptionally(cause);
+	}
+
 	/**
 	 * Get the rules cache.
 	 * 
@@ -85,27 +147,36 @@ public class KnowledgeBaseManager
 	{
 		if (solution instanceof ServoyProject servoyProject)
 		{
-			IPackageReader[] packageReaders = discoverKnowledgeBasePackagesInSolution(servoyProject);
-			try
-			{
-				ServoyEmbeddingService embeddingService = ServoyEmbeddingService.getInstance();
-				embeddingService.reloadAllKnowledgeBasesFromReaders(packageReaders);
-				
-				int embeddingCount = embeddingService.getEmbeddingCount();
-				int ruleCount = RulesCache.getRuleCount();
-				
-				if (packageReaders.length > 0)
-				{
-					ServoyLog.logInfo("[KnowledgeBaseManager] Knowledge bases loaded successfully - " + 
-						embeddingCount + " embeddings, " + ruleCount + " rules");
-				}
-			}
-			catch (Exception e)
+			loadKnowledgeBases(discoverKnowledgeBasePackagesInSolution(servoyProject));
+		}
+	}
+
+	/**
+	 * Replace all loaded knowledge bases by the given packages.
+	 * 
+	 * @param packageReaders the knowledge base packages to load
+	 */
+	static void loadKnowledgeBases(IPackageReader[] packageReaders)
+	{
+		try
+		{
+			ServoyEmbeddingService embeddingService = ServoyEmbeddingService.getInstance();
+			embeddingService.reloadAllKnowledgeBasesFromReaders(packageReaders);
+			
+			int embeddingCount = embeddingService.getEmbeddingCount();
+			int ruleCount = RulesCache.getRuleCount();
+			
+			if (packageReaders.length > 0)
 			{
-				ServoyLog.logError("[KnowledgeBaseManager] Error loading/clearing knowledge bases: " + 
-					e.getMessage(), e);
+				ServoyLog.logInfo("[KnowledgeBaseManager] Knowledge bases loaded successfully - " + 
+					embeddingCount + " embeddings, " + ruleCount + " rules");
 			}
 		}
+		catch (Exception e)
+		{
+			ServoyLog.logError("[KnowledgeBaseManager] Error loading/clearing knowledge bases: " + 
+				e.getMessage(), e);
+		}
 	}
 
 	/**
@@ -125,17 +196,7 @@ public class KnowledgeBaseManager
 			
 			if (ngPackageManager != null)
 			{
-				List<IPackageReader> allReaders = ngPackageManager.getAllPackageReaders();
-			
-				IPackageReader targetReader = null;
-				for (IPackageReader reader : allReaders)
-				{
-					if (reader.getPackageName().equals(packageName))
-					{
-						targetReader = reader;
-						break;
-					}
-				}
+				IPackageReader targetReader = findPackageReader(ngPackageManager, packageName);
 				
 				if (targetReader != null)
 				{
@@ -158,36 +219,89 @@ public class KnowledgeBaseManager
 		}
 	}
 
+	/**
+	 * Unload a specific knowledge base package: its embeddings and rules are removed,
+	 * the knowledge bases of other packages stay loaded.
+	 * 
+	 * @param packageName The name of the knowledge base package
+	 */
+	public static void unloadKnowledgeBase(String packageName)
+	{
+		try
+		{
+			int removedEmbeddings = ServoyEmbeddingService.getInstance().unloadKnowledgeBase(packageName);
+
+			ServoyLog.logInfo("[KnowledgeBaseManager] Knowledge base unloaded: " + packageName +
+				" (removed " + removedEmbeddings + " embeddings, " + RulesCache.getRuleCount() + " rules left)");
+		}
+		catch (Exception e)
+		{
+			ServoyLog.logError("[KnowledgeBaseManager] Error unloading knowledge base '" + packageName + "': " + 
+				e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Generate precomputed embedding vector files (embeddings/*.vec) for a knowledge base package.
+	 * Only packages that are a folder on disk (workspace package projects) can be written to;
+	 * the generated files should be included when the package is exported.
+	 * 
+	 * @param packageName The name of the knowledge base package
+	 * @return number of vector files written
+	 */
+	public static int generatePrecomputedEmbeddings(String packageName)
+	{
+		try
+		{
+			BaseNGPackageManager ngPackageManager = ServoyModelFinder.getServoyModel().getNGPackageManager();
+			IPackageReader reader = ngPackageManager != null ? findPackageReader(ngPackageManager, packageName) : null;
+			if (reader == null || !isKnowledgeBasePackage(reader))
+			{
+				ServoyLog.logInfo("[KnowledgeBaseManager] No knowledge base package found: " + packageName);
+				return 0;
+			}
+			File resource = reader.getResource();
+			if (resource == null || !resource.isDirectory())
+			{
+				ServoyLog.logInfo("[KnowledgeBaseManager] Cannot write precomputed embeddings, package is not a folder: " + packageName);
+				return 0;
+			}
+			return ServoyEmbeddingService.getInstance().writePrecomputedEmbeddings(reader, new File(resource, "embeddings").toPath());
+		}
+		catch (Exception e)
+		{
+			ServoyLog.logError("[KnowledgeBaseManager] Error generating precomputed embeddings for '" + packageName + "': " + 
+				e.getMessage(), e);
+		}
+		return 0;
+	}
+
 	/**
 	 * Reload all knowledge bases from all installed bundles.
 	 * Called manually by user via UI action.
-	 * Clears existing knowledge and reloads fresh from active solution.
+	 * Replaces the loaded knowledge with a fresh load from the active solution.
 	 */
 	public static void reloadAllKnowledgeBases()
 	{
 		ServoyLog.logInfo("[KnowledgeBaseManager] reloadAllKnowledgeBases called (manual trigger)");
-		ServoyEmbeddingService.getInstance().reloadAllKnowledgeBasesFromReaders(new IPackageReader[0]);
 		
+		// the reload replaces the loaded snapshot as a whole, so there is no need to clear it first
 		ServoyProject activeProject = ServoyModelFinder.getServoyModel().getActiveProject();
-		if (activeProject != null)
+		IPackageReader[] packageReaders = activeProject != null ? discoverKnowledgeBasePackagesInSolution(activeProject) : new IPackageReader[0];
+		try
 		{
-			IPackageReader[] packageReaders = discoverKnowledgeBasePackagesInSolution(activeProject);
-			try
-			{
-				ServoyEmbeddingService embeddingService = ServoyEmbeddingService.getInstance();
-				embeddingService.reloadAllKnowledgeBasesFromReaders(packageReaders);
-				
-				int embeddingCount = embeddingService.getEmbeddingCount();
-				int ruleCount = RulesCache.getRuleCount();
-				
-				ServoyLog.logInfo("[KnowledgeBaseManager] Reload complete - Loaded " + embeddingCount + 
-					" embeddings and " + ruleCount + " rules from " + packageReaders.length + " package(s)");
-			}
+			ServoyEmbeddingService embeddingService = ServoyEmbeddingService.getInstance();
+			embeddingService.reloadAllKnowledgeBasesFromReaders(packageReaders);
 			
-			catch (Exception e)
-			{
-				ServoyLog.logError("[KnowledgeBaseManager] Error reloading knowledge bases: " + e.getMessage(), e);
-			}
+			int embeddingCount = embeddingService.getEmbeddingCount();
+			int ruleCount = RulesCache.getRuleCount();
+			
+			ServoyLog.logInfo("[KnowledgeBaseManager] Reload complete - Loaded " + embeddingCount + 
+				" embeddings and " + ruleCount + " rules from " + packageReaders.length + " package(s)");
+		}
+		catch (Exception e)
+		{
+			ServoyLog.logError("[KnowledgeBaseManager] Error reloading knowledge bases: " + e.getMessage(), e);
 		}
 	}
 
@@ -202,7 +316,7 @@ public class KnowledgeBaseManager
 	 * @param solution The Servoy solution to scan
 	 * @return Array of package readers for knowledge base packages (no duplicates)
 	 */
-	private static IPackageReader[] discoverKnowledgeBasePackagesInSolution(ServoyProject solution)
+	static IPackageReader[] discoverKnowledgeBasePackagesInSolution(ServoyProject solution)
 	{
 		String solutionName = solution.getProject().getName();
 		ServoyLog.logError("[discoverKnowledgeBasePackagesInSolution: " + solutionName);
@@ -218,16 +332,21 @@ public class KnowledgeBaseManager
 				List<IPackageReader> allReaders = ngPackageManager.getAllPackageReaders();
 				ServoyLog.logInfo("[KnowledgeBaseManager] Checking " + allReaders.size() + " loaded package(s) for knowledge bases");
 				
-				// Check each package reader for knowledge base markers
-				for (IPackageReader reader : allReaders)
+				// Check all package readers for knowledge base markers in parallel, each check reads the manifest and probes two files
+				long start = System.currentTimeMillis();
+				List<Boolean> knowledgeBaseFlags = PackageTasks.map(allReaders, reader -> Boolean.valueOf(isKnowledgeBasePackage(reader)));
+				ServoyLog.logInfo("[KnowledgeBaseManager] Checked " + allReaders.size() + " package(s) in " + (System.currentTimeMillis() - start) + " ms");
+				
+				for (int i = 0; i < allReaders.size(); i++)
 				{
+					IPackageReader reader = allReaders.get(i);
 					String packageName = reader.getPackageName();
 					if (processedPackageNames.contains(packageName))
 					{
 						continue;
 					}
 						
-					if (isKnowledgeBasePackage(reader))
+					if (Boolean.TRUE.equals(knowledgeBaseFlags.get(i)))
 					{
 						knowledgeBaseReaders.add(reader);
 						processedPackageNames.add(packageName);
@@ -245,9 +364,27 @@ public class KnowledgeBaseManager
 		return knowledgeBaseReaders.toArray(new IPackageReader[0]);
 	}
 	
+	/**
+	 * Find a loaded package reader by package name.
+	 * 
+	 * @return the package reader, or null if no package with that name is loaded
+	 */
+	private static IPackageReader findPackageReader(BaseNGPackageManager ngPackageManager, String packageName)
+	{
+		for (IPackageReader reader : ngPackageManager.getAllPackageReaders())
+		{
+			if (reader.getPackageName().equals(packageName))
+			{
+				return reader;
+			}
+		}
+		return null;
+	}
+	
 	/**
 	 * Check if a package reader is a knowledge base package.
 	 * Works with ANY IPackageReader (workspace projects, zips, etc.)
+	 * Called from loader threads, see {@link PackageTasks}.
 	 * 
 	 * Requirements:
 	 * 1. MANIFEST.MF must contain Knowledge-Base: true
@@ -32,6 +32,12 @@ public class KnowledgeBaseOperationsProvider implements IKnowledgeBaseOperations
 		KnowledgeBaseManager.loadKnowledgeBase(packageName);
 	}
 
+	@Override
+	public void unloadKnowledgeBase(String packageName)
+	{
+		KnowledgeBaseManager.unloadKnowledgeBase(packageName);
+	}
+
 	@Override
 	public void reloadAllKnowledgeBases()
 	{
@@ -43,4 +49,10 @@ public class KnowledgeBaseOperationsProvider implements IKnowledgeBaseOperations
 	{
 		KnowledgeBaseManager.loadKnowledgeBasesForSolution(solutionName);
 	}
+
+	@Override
+	public int generatePrecomputedEmbeddings(String packageName)
+	{
+		return KnowledgeBaseManager.generatePrecomputedEmbeddings(packageName);
+	}
 }
@@ -0,0 +1,160 @@
+/*
+ This file belongs to the Servoy development and deployment environment, Copyright (C) 1997-2025 Servoy BV
+
+ This program is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Affero General Public License as published by the Free
+ Software Foundation; either version 3 of the License, or (at your option) any
+ later version.
+
+ This program is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License along
+ with this program; if not, see http://www.gnu.org/licenses or write to the Free
+ Software Foundation,Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301
+*/
+
+package com.servoy.eclipse.knowledgebase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.sablo.specification.Package.IPackageReader;
+
+import com.servoy.eclipse.knowledgebase.service.RulesCache;
+import com.servoy.eclipse.knowledgebase.service.ServoyEmbeddingService;
+import com.servoy.eclipse.model.util.ServoyLog;
+
+/**
+ * Keeps the loaded knowledge bases in sync with edits of knowledge-base packages in the workspace.
+ *
+ * Changed files under embeddings/ and rules/ are collected from resource deltas and applied after a short delay,
+ * so a save of several files or a team update results in one update. Only the changed files of the packages that are
+ * loaded are read again: new lines are embedded, removed lines are dropped and unchanged lines keep their vectors,
+ * see {@link ServoyEmbeddingService#updateKnowledgeBaseFiles(IPackageReader, java.util.Collection)}.
+ *
+ * @since 2026.3
+ */
+class KnowledgeBaseResourceListener implements IResourceChangeListener
+{
+	private static final long UPDATE_DELAY = 500; // ms, coalesces the deltas of one save or team update
+
+	private final Set<File> pendingFiles = new HashSet<>();
+	private final Job updateJob = new KnowledgeBaseJob("Updating Servoy knowledge base", Job.SHORT, this::applyPendingChanges);
+
+	KnowledgeBaseResourceListener()
+	{
+		updateJob.setSystem(true);
+	}
+
+	@Override
+	public void resourceChanged(IResourceChangeEvent event)
+	{
+		IResourceDelta delta = event.getDelta();
+		if (delta == null)
+		{
+			return;
+		}
+		List<File> changed = new ArrayList<>();
+		try
+		{
+			delta.accept(child -> {
+				if (child.getResource().getType() == IResource.FILE && isKnowledgeBaseFile(child))
+				{
+					IPath location = child.getResource().getLocation();
+					if (location != null)
+					{
+						changed.add(location.toFile());
+					}
+				}
+				return true;
+			});
+		}
+		catch (CoreException e)
+		{
+			ServoyLog.logError("[KnowledgeBase] Failed to process workspace changes: " + e.getMessage(), e);
+		}
+		if (!changed.isEmpty())
+		{
+			synchronized (pendingFiles)
+			{
+				pendingFiles.addAll(changed);
+			}
+			updateJob.schedule(UPDATE_DELAY);
+		}
+	}
+
+	/**
+	 * Embedding texts, rule files and their lists, with changed contents or added or removed.
+	 */
+	private static boolean isKnowledgeBaseFile(IResourceDelta delta)
+	{
+		if (delta.getKind() == IResourceDelta.CHANGED && (delta.getFlags() & IResourceDelta.CONTENT) == 0)
+		{
+			return false;
+		}
+		IResource file = delta.getResource();
+		String folder = file.getParent().getName();
+		String name = file.getName();
+		return ("embeddings".equals(folder) && (name.endsWith(".txt") || name.equals("embeddings.list"))) ||
+			("rules".equals(folder) && (name.endsWith(".md") || name.equals("rules.list")));
+	}
+
+	private void applyPendingChanges(IProgressMonitor monitor)
+	{
+		Set<File> files;
+		synchronized (pendingFiles)
+		{
+			files = new HashSet<>(pendingFiles);
+			pendingFiles.clear();
+		}
+		CompletableFuture<ServoyEmbeddingService> ready = KnowledgeBaseManager.whenReady();
+		if (files.isEmpty() || !ready.isDone() || ready.isCompletedExceptionally())
+		{
+			// nothing loaded yet: the initial load reads the current files anyway
+			return;
+		}
+		ServoyEmbeddingService embeddingService = ready.join();
+
+		Map<IPackageReader, List<String>> changedPaths = new LinkedHashMap<>();
+		for (IPackageReader reader : embeddingService.getLoadedPackages())
+		{
+			File packageDir = reader.getResource();
+			if (packageDir == null || !packageDir.isDirectory())
+			{
+				continue; // zipped packages are not edited in the workspace
+			}
+			String prefix = packageDir.getAbsolutePath() + File.separator;
+			for (File file : files)
+			{
+				String absolutePath = file.getAbsolutePath();
+				if (absolutePath.startsWith(prefix))
+				{
+					changedPaths.computeIfAbsent(reader, key -> new ArrayList<>())
+						.add(absolutePath.substring(prefix.length()).replace(File.separatorChar, '/'));
+				}
+			}
+		}
+
+		changedPaths.forEach((reader, paths) -> {
+			ServoyLog.logInfo("[KnowledgeBase] Knowledge base package " + reader.getPackageName() + " changed: " + paths);
+			embeddingService.updateKnowledgeBaseFiles(reader, paths);
+			RulesCache.updateFromPackageReader(reader, paths);
+		});
+	}
+}
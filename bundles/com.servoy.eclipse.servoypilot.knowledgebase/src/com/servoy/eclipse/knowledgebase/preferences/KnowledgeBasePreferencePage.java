@@ -0,0 +1,154 @@
+/*
+ This file belongs to the Servoy development and deployment environment, Copyright (C) 1997-2025 Servoy BV
+
+ This program is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Affero General Public License as published by the Free
+ Software Foundation; either version 3 of the License, or (at your option) any
+ later version.
+
+ This program is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License along
+ with this program; if not, see http://www.gnu.org/licenses or write to the Free
+ Software Foundation,Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301
+*/
+
+package com.servoy.eclipse.knowledgebase.preferences;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.preference.BooleanFieldEditor;
+import org.eclipse.jface.preference.ComboFieldEditor;
+import org.eclipse.jface.preference.FieldEditorPreferencePage;
+import org.eclipse.jface.preference.IntegerFieldEditor;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.ui.IWorkbench;
+import org.eclipse.ui.IWorkbenchPreferencePage;
+import org.eclipse.ui.preferences.ScopedPreferenceStore;
+
+import com.servoy.eclipse.knowledgebase.Activator;
+import com.servoy.eclipse.knowledgebase.KnowledgeBaseManager;
+import com.servoy.eclipse.knowledgebase.service.OrtSessionSettings;
+import com.servoy.eclipse.knowledgebase.service.ServoyEmbeddingService;
+import com.servoy.eclipse.knowledgebase.service.ServoyEmbeddingService.BenchmarkResult;
+import com.servoy.eclipse.model.util.ServoyLog;
+
+/**
+ * Preference page for the ONNX Runtime settings of the knowledge base embedding model.
+ */
+public class KnowledgeBasePreferencePage extends FieldEditorPreferencePage implements IWorkbenchPreferencePage
+{
+	private static final int MAX_THREADS = 256;
+	private static final int MAX_QUERY_CACHE_BUDGET_KB = 256 * 1024;
+	private static final int MAX_RERANK_CANDIDATES = 100;
+	private static final int MAX_RERANK_BUDGET_MS = 60_000;
+
+	public KnowledgeBasePreferencePage()
+	{
+		super(GRID);
+	}
+
+	@Override
+	public void init(IWorkbench workbench)
+	{
+		setDescription("ONNX Runtime and cache settings of the knowledge base embedding model. Changes take effect after restarting Servoy Developer.");
+		ScopedPreferenceStore store = new ScopedPreferenceStore(InstanceScope.INSTANCE, Activator.PLUGIN_ID);
+		KnowledgeBasePreferences.initializeDefaults(store);
+		setPreferenceStore(store);
+	}
+
+	@Override
+	protected void createFieldEditors()
+	{
+		IntegerFieldEditor intraOpThreads = new IntegerFieldEditor(KnowledgeBasePreferences.ONNX_INTRA_OP_THREADS,
+			"Intra-op threads (0 = all cores):", getFieldEditorParent());
+		intraOpThreads.setValidRange(0, MAX_THREADS);
+		addField(intraOpThreads);
+
+		IntegerFieldEditor interOpThreads = new IntegerFieldEditor(KnowledgeBasePreferences.ONNX_INTER_OP_THREADS,
+			"Inter-op threads (0 = default):", getFieldEditorParent());
+		interOpThreads.setValidRange(0, MAX_THREADS);
+		addField(interOpThreads);
+
+		addField(new ComboFieldEditor(KnowledgeBasePreferences.ONNX_OPTIMIZATION_LEVEL, "Graph optimization level:",
+			KnowledgeBasePreferences.optimizationLevels(), getFieldEditorParent()));
+		addField(new ComboFieldEditor(KnowledgeBasePreferences.ONNX_EXECUTION_MODE, "Execution mode:",
+			KnowledgeBasePreferences.executionModes(), getFieldEditorParent()));
+		addField(new BooleanFieldEditor(KnowledgeBasePreferences.ONNX_MEMORY_PATTERN, "Memory pattern optimization", getFieldEditorParent()));
+		addField(new BooleanFieldEditor(KnowledgeBasePreferences.ONNX_CPU_ARENA, "CPU memory arena", getFieldEditorParent()));
+
+		addField(new BooleanFieldEditor(KnowledgeBasePreferences.JAVA_TOKENIZER, "In-process WordPiece tokenizer (when the model ships vocab.txt)",
+			getFieldEditorParent()));
+
+		IntegerFieldEditor queryCacheBudget = new IntegerFieldEditor(KnowledgeBasePreferences.QUERY_CACHE_BUDGET_KB,
+			"Query embedding cache (KB, 0 = off):", getFieldEditorParent());
+		queryCacheBudget.setValidRange(0, MAX_QUERY_CACHE_BUDGET_KB);
+		addField(queryCacheBudget);
+
+		addField(new BooleanFieldEditor(KnowledgeBasePreferences.RERANKER, "Rerank search results with a cross-encoder (when installed)",
+			getFieldEditorParent()));
+
+		IntegerFieldEditor rerankCandidates = new IntegerFieldEditor(KnowledgeBasePreferences.RERANK_CANDIDATES,
+			"Reranked candidates per query:", getFieldEditorParent());
+		rerankCandidates.setValidRange(1, MAX_RERANK_CANDIDATES);
+		addField(rerankCandidates);
+
+		IntegerFieldEditor rerankBudget = new IntegerFieldEditor(KnowledgeBasePreferences.RERANK_BUDGET_MS,
+			"Reranking latency budget (ms, 0 = no limit):", getFieldEditorParent());
+		rerankBudget.setValidRange(0, MAX_RERANK_BUDGET_MS);
+		addField(rerankBudget);
+
+		Button benchmarkButton = new Button(getFieldEditorParent(), SWT.PUSH);
+		benchmarkButton.setText("Run Benchmark");
+		benchmarkButton.setToolTipText("Measure embeddings/second of the saved settings and variations of it");
+		GridData buttonData = new GridData();
+		buttonData.horizontalSpan = 2;
+		buttonData.verticalIndent = 10;
+		benchmarkButton.setLayoutData(buttonData);
+		benchmarkButton.addSelectionListener(new SelectionAdapter()
+		{
+			@Override
+			public void widgetSelected(SelectionEvent e)
+			{
+				scheduleBenchmark();
+			}
+		});
+	}
+
+	/**
+	 * Run the benchmark in the background and show the results when done.
+	 */
+	private static void scheduleBenchmark()
+	{
+		Job job = Job.create("Benchmarking knowledge base embeddings", monitor -> {
+			ServoyEmbeddingService embeddingService = KnowledgeBaseManager.awaitEmbeddingService(5, TimeUnit.MINUTES);
+			if (embeddingService == null)
+			{
+				ServoyLog.logInfo("[KnowledgeBase] Benchmark skipped, knowledge base is still loading");
+				return;
+			}
+			List<BenchmarkResult> results = embeddingService
+				.benchmarkSessionSettings(OrtSessionSettings.benchmarkCandidates(KnowledgeBasePreferences.getSessionSettings()));
+			StringBuilder message = new StringBuilder();
+			for (BenchmarkResult result : results)
+			{
+				message.append(result).append('\n');
+			}
+			Display.getDefault().asyncExec(() -> MessageDialog.openInformation(null, "Knowledge Base Benchmark",
+				results.isEmpty() ? "The benchmark failed, see the log for details." : message.toString()));
+		});
+		job.setPriority(Job.LONG);
+		job.schedule();
+	}
+}
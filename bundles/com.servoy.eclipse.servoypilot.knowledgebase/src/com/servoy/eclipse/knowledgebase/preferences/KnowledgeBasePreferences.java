@@ -0,0 +1,187 @@
+/*
+ This file belongs to the Servoy development and deployment environment, Copyright (C) 1997-2025 Servoy BV
+
+ This program is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Affero General Public License as published by the Free
+ Software Foundation; either version 3 of the License, or (at your option) any
+ later version.
+
+ This program is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License along
+ with this program; if not, see http://www.gnu.org/licenses or write to the Free
+ Software Foundation,Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301
+*/
+
+package com.servoy.eclipse.knowledgebase.preferences;
+
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.preferences.IPreferencesService;
+import org.eclipse.jface.preference.IPreferenceStore;
+
+import com.servoy.eclipse.knowledgebase.Activator;
+import com.servoy.eclipse.knowledgebase.service.OrtSessionSettings;
+
+import ai.onnxruntime.OrtSession.SessionOptions.ExecutionMode;
+import ai.onnxruntime.OrtSession.SessionOptions.OptLevel;
+
+/**
+ * Preference keys and defaults of the knowledge base plugin (instance scope, node {@link Activator#PLUGIN_ID}).
+ * Values can also be preset for all workspaces, e.g. on CI agents, with a plugin_customization.ini:
+ * <pre>
+ * com.servoy.eclipse.servoypilot.knowledgebase/onnxIntraOpThreads=2
+ * </pre>
+ */
+public final class KnowledgeBasePreferences
+{
+	public static final String ONNX_INTRA_OP_THREADS = "onnxIntraOpThreads";
+	public static final String ONNX_INTER_OP_THREADS = "onnxInterOpThreads";
+	public static final String ONNX_OPTIMIZATION_LEVEL = "onnxOptimizationLevel";
+	public static final String ONNX_MEMORY_PATTERN = "onnxMemoryPattern";
+	public static final String ONNX_CPU_ARENA = "onnxCpuArena";
+	public static final String ONNX_EXECUTION_MODE = "onnxExecutionMode";
+	public static final String QUERY_CACHE_BUDGET_KB = "queryCacheBudgetKB";
+	public static final String JAVA_TOKENIZER = "javaTokenizer";
+	public static final String RERANKER = "reranker";
+	public static final String RERANK_CANDIDATES = "rerankCandidates";
+	public static final String RERANK_BUDGET_MS = "rerankBudgetMs";
+
+	public static final int DEFAULT_QUERY_CACHE_BUDGET_KB = 1024;
+	public static final int DEFAULT_RERANK_CANDIDATES = 10;
+	public static final int DEFAULT_RERANK_BUDGET_MS = 50;
+
+	private KnowledgeBasePreferences()
+	{
+		// Utility class
+	}
+
+	public static void initializeDefaults(IPreferenceStore store)
+	{
+		OrtSessionSettings defaults = OrtSessionSettings.DEFAULT;
+		store.setDefault(ONNX_INTRA_OP_THREADS, defaults.intraOpThreads());
+		store.setDefault(ONNX_INTER_OP_THREADS, defaults.interOpThreads());
+		store.setDefault(ONNX_OPTIMIZATION_LEVEL, defaults.optimizationLevel().name());
+		store.setDefault(ONNX_MEMORY_PATTERN, defaults.memoryPattern());
+		store.setDefault(ONNX_CPU_ARENA, defaults.cpuArena());
+		store.setDefault(ONNX_EXECUTION_MODE, defaults.executionMode().name());
+		store.setDefault(QUERY_CACHE_BUDGET_KB, DEFAULT_QUERY_CACHE_BUDGET_KB);
+		store.setDefault(JAVA_TOKENIZER, true);
+		store.setDefault(RERANKER, true);
+		store.setDefault(RERANK_CANDIDATES, DEFAULT_RERANK_CANDIDATES);
+		store.setDefault(RERANK_BUDGET_MS, DEFAULT_RERANK_BUDGET_MS);
+	}
+
+	/**
+	 * Get the configured ONNX Runtime session settings; unset or invalid values fall back to {@link OrtSessionSettings#DEFAULT}.
+	 */
+	public static OrtSessionSettings getSessionSettings()
+	{
+		OrtSessionSettings defaults = OrtSessionSettings.DEFAULT;
+		IPreferencesService preferences = Platform.getPreferencesService();
+		if (preferences == null)
+		{
+			return defaults;
+		}
+		return new OrtSessionSettings(
+			Math.max(0, preferences.getInt(Activator.PLUGIN_ID, ONNX_INTRA_OP_THREADS, defaults.intraOpThreads(), null)),
+			Math.max(0, preferences.getInt(Activator.PLUGIN_ID, ONNX_INTER_OP_THREADS, defaults.interOpThreads(), null)),
+			getEnum(preferences, ONNX_OPTIMIZATION_LEVEL, defaults.optimizationLevel()),
+			preferences.getBoolean(Activator.PLUGIN_ID, ONNX_MEMORY_PATTERN, defaults.memoryPattern(), null),
+			preferences.getBoolean(Activator.PLUGIN_ID, ONNX_CPU_ARENA, defaults.cpuArena(), null),
+			getEnum(preferences, ONNX_EXECUTION_MODE, defaults.executionMode()));
+	}
+
+	/**
+	 * Get the memory the query embedding cache may use, in bytes; 0 disables the cache.
+	 */
+	public static long getQueryCacheBudget()
+	{
+		IPreferencesService preferences = Platform.getPreferencesService();
+		int budgetKB = preferences != null
+			? preferences.getInt(Activator.PLUGIN_ID, QUERY_CACHE_BUDGET_KB, DEFAULT_QUERY_CACHE_BUDGET_KB, null) : DEFAULT_QUERY_CACHE_BUDGET_KB;
+		return Math.max(0, budgetKB) * 1024L;
+	}
+
+	/**
+	 * Whether texts are tokenized in-process instead of by the ONNX tokenizer, when the model ships a vocab.txt.
+	 */
+	public static boolean isJavaTokenizerEnabled()
+	{
+		IPreferencesService preferences = Platform.getPreferencesService();
+		return preferences == null || preferences.getBoolean(Activator.PLUGIN_ID, JAVA_TOKENIZER, true, null);
+	}
+
+	/**
+	 * Whether search results are reranked by a cross-encoder, when a cross-encoder model bundle is installed.
+	 */
+	public static boolean isRerankerEnabled()
+	{
+		IPreferencesService preferences = Platform.getPreferencesService();
+		return preferences == null || preferences.getBoolean(Activator.PLUGIN_ID, RERANKER, true, null);
+	}
+
+	/**
+	 * Get the number of bi-encoder candidates per query that the cross-encoder re-scores, at least 1.
+	 */
+	public static int getRerankCandidates()
+	{
+		IPreferencesService preferences = Platform.getPreferencesService();
+		int candidates = preferences != null
+			? preferences.getInt(Activator.PLUGIN_ID, RERANK_CANDIDATES, DEFAULT_RERANK_CANDIDATES, null) : DEFAULT_RERANK_CANDIDATES;
+		return Math.max(1, candidates);
+	}
+
+	/**
+	 * Get the maximum estimated duration of one reranking run, in milliseconds; 0 for no limit.
+	 */
+	public static int getRerankBudgetMillis()
+	{
+		IPreferencesService preferences = Platform.getPreferencesService();
+		int budget = preferences != null
+			? preferences.getInt(Activator.PLUGIN_ID, RERANK_BUDGET_MS, DEFAULT_RERANK_BUDGET_MS, null) : DEFAULT_RERANK_BUDGET_MS;
+		return Math.max(0, budget);
+	}
+
+	private static <E extends Enum<E>> E getEnum(IPreferencesService preferences, String key, E defaultValue)
+	{
+		String value = preferences.getString(Activator.PLUGIN_ID, key, defaultValue.name(), null);
+		try
+		{
+			return Enum.valueOf(defaultValue.getDeclaringClass(), value);
+		}
+		catch (IllegalArgumentException e)
+		{
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * @return label/value pairs of the optimization levels for a combo field editor
+	 */
+	static String[][] optimizationLevels()
+	{
+		OptLevel[] levels = OptLevel.values();
+		String[][] entries = new String[levels.length][];
+		for (int i = 0; i < levels.length; i++)
+		{
+			entries[i] = new String[] { levels[i].name(), levels[i].name() };
+		}
+		return entries;
+	}
+
+	/**
+	 * @return label/value pairs of the execution modes for a combo field editor
+	 */
+	static String[][] executionModes()
+	{
+		ExecutionMode[] modes = ExecutionMode.values();
+		String[][] entries = new String[modes.length][];
+		for (int i = 0; i < modes.length; i++)
+		{
+			entries[i] = new String[] { modes[i].name(), modes[i].name() };
+		}
+		return entries;
+	}
+}
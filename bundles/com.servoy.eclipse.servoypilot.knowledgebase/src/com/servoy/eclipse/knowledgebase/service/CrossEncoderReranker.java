@@ -0,0 +1,211 @@
+/*
+ This file belongs to the Servoy development and deployment environment, Copyright (C) 1997-2025 Servoy BV
+
+ This program is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Affero General Public License as published by the Free
+ Software Foundation; either version 3 of the License, or (at your option) any
+ later version.
+
+ This program is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License along
+ with this program; if not, see http://www.gnu.org/licenses or write to the Free
+ Software Foundation,Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301
+*/
+
+
+package com.servoy.eclipse.knowledgebase.service;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+
+/**
+ * Cross-encoder reranking stage of knowledge base searches.
+ *
+ * The bi-encoder compares a query embedding with embeddings of the stored texts, computed independently of each other.
+ * A cross-encoder (e.g. ms-marco-MiniLM-L-6-v2) reads the query and a candidate text together as one input,
+ * [CLS] query [SEP] text [SEP], and outputs a relevance logit, which tells close intent categories apart much better.
+ * It is too slow to run over the whole store, so it only re-scores the best bi-encoder candidates.
+ *
+ * All pairs of a search are scored in one model run. Every run is guarded by a latency budget: its duration is estimated
+ * from the measured time per token of earlier runs, and a run that would not fit the budget is skipped.
+ * Instances are thread-safe.
+ *
+ * @since 2026.3
+ */
+public final class CrossEncoderReranker
+{
+	private static final int MAX_PAIR_TOKENS = 256; // knowledge base lines are short, longer texts are truncated
+	private static final int MAX_QUERY_TOKENS = 64;
+	private static final double COST_SMOOTHING = 0.2; // weight of the latest run in the time per token estimate
+	private static final int WARM_UP_RUNS = 3;
+
+	/**
+	 * Usage statistics of the reranker.
+	 *
+	 * @param runs model runs
+	 * @param skipped runs skipped because they would exceed the latency budget
+	 * @param pairs query/text pairs scored
+	 * @param nanosPerToken current estimate of the model time per input token
+	 */
+	public record Stats(long runs, long skipped, long pairs, double nanosPerToken)
+	{
+		@Override
+		public String toString()
+		{
+			return String.format(Locale.ROOT, "%d reranking runs (%d pairs), %d skipped over the latency budget, %.1f us per token", runs, pairs,
+				skipped, nanosPerToken / 1000);
+		}
+	}
+
+	private final OrtEnvironment env;
+	private final OrtSession session;
+	private final WordPieceTokenizer tokenizer;
+	private final boolean tokenTypes;
+	private double nanosPerToken;
+	private long runs;
+	private long skipped;
+	private long pairs;
+
+	/**
+	 * @param env the ONNX Runtime environment
+	 * @param session the cross-encoder model, with input_ids and attention_mask (and optionally token_type_ids) inputs
+	 *            and a [batch, 1] logits output
+	 * @param tokenizer the tokenizer of the model
+	 */
+	CrossEncoderReranker(OrtEnvironment env, OrtSession session, WordPieceTokenizer tokenizer)
+	{
+		this.env = env;
+		this.session = session;
+		this.tokenizer = tokenizer;
+		this.tokenTypes = session.getInputNames().contains("token_type_ids");
+	}
+
+	/**
+	 * Run the model a few times so the first search does not pay for the allocations of the first runs,
+	 * and the time per token estimate reflects steady state.
+	 */
+	void warmUp() throws OrtException
+	{
+		List<String> queries = List.of("create form", "create form", "add buttons", "add buttons");
+		List<String> texts = List.of("create a new form", "add a relation between two tables", "place buttons on a form", "style a component");
+		for (int i = 0; i < WARM_UP_RUNS; i++)
+		{
+			score(queries, texts, 0);
+		}
+	}
+
+	/**
+	 * Score query/text pairs in one model run.
+	 *
+	 * @param queries the query of every pair
+	 * @param texts the candidate text of every pair
+	 * @param budgetMillis maximum estimated duration of the run; 0 for no limit
+	 * @return the relevance logit of every pair, higher is more relevant; null when the run was skipped for the budget
+	 */
+	float[] score(List<String> queries, List<String> texts, long budgetMillis) throws OrtException
+	{
+		int batch = texts.size();
+		long[][] ids = new long[batch][];
+		int[] queryLengths = new int[batch];
+		int length = 0;
+		for (int i = 0; i < batch; i++)
+		{
+			long[] query = tokenizer.encode(queries.get(i));
+			if (query.length > MAX_QUERY_TOKENS)
+			{
+				long sep = query[query.length - 1];
+				query = Arrays.copyOf(query, MAX_QUERY_TOKENS);
+				query[MAX_QUERY_TOKENS - 1] = sep;
+			}
+			ids[i] = pair(query, tokenizer.encode(texts.get(i)));
+			queryLengths[i] = query.length;
+			length = Math.max(length, ids[i].length);
+		}
+
+		long tokens = (long)batch * length;
+		synchronized (this)
+		{
+			if (budgetMillis > 0 && nanosPerToken * tokens > budgetMillis * 1_000_000.0)
+			{
+				skipped++;
+				return null;
+			}
+		}
+
+		long start = System.nanoTime();
+		float[] logits = run(ids, queryLengths, batch, length);
+		long nanos = System.nanoTime() - start;
+		synchronized (this)
+		{
+			nanosPerToken = runs == 0 ? (double)nanos / tokens : (1 - COST_SMOOTHING) * nanosPerToken + COST_SMOOTHING * nanos / tokens;
+			runs++;
+			pairs += batch;
+		}
+		return logits;
+	}
+
+	synchronized Stats getStats()
+	{
+		return new Stats(runs, skipped, pairs, nanosPerToken);
+	}
+
+	/**
+	 * Join the tokens of a query and a text to [CLS] query [SEP] text [SEP], truncating the text to {@link #MAX_PAIR_TOKENS}.
+	 */
+	private static long[] pair(long[] query, long[] text)
+	{
+		int textLength = Math.min(text.length - 1, MAX_PAIR_TOKENS - query.length); // without the [CLS] of the text
+		long[] ids = new long[query.length + textLength];
+		System.arraycopy(query, 0, ids, 0, query.length);
+		System.arraycopy(text, 1, ids, query.length, textLength - 1);
+		ids[ids.length - 1] = text[text.length - 1]; // [SEP]
+		return ids;
+	}
+
+	private float[] run(long[][] ids, int[] queryLengths, int batch, int length) throws OrtException
+	{
+		LongBuffer inputIds = LongBuffer.allocate(batch * length);
+		LongBuffer attentionMask = LongBuffer.allocate(batch * length);
+		LongBuffer tokenTypeIds = LongBuffer.allocate(batch * length);
+		for (int i = 0; i < batch; i++)
+		{
+			for (int t = 0; t < length; t++)
+			{
+				boolean token = t < ids[i].length;
+				inputIds.put(token ? ids[i][t] : 0);
+				attentionMask.put(token ? 1 : 0);
+				tokenTypeIds.put(token && t >= queryLengths[i] ? 1 : 0);
+			}
+		}
+		long[] shape = { batch, length };
+		try (OnnxTensor inputIdsTensor = OnnxTensor.createTensor(env, inputIds.flip(), shape);
+			OnnxTensor attentionMaskTensor = OnnxTensor.createTensor(env, attentionMask.flip(), shape);
+			OnnxTensor tokenTypeIdsTensor = OnnxTensor.createTensor(env, tokenTypeIds.flip(), shape))
+		{
+			Map<String, OnnxTensor> inputs = tokenTypes
+				? Map.of("input_ids", inputIdsTensor, "attention_mask", attentionMaskTensor, "token_type_ids", tokenTypeIdsTensor)
+				: Map.of("input_ids", inputIdsTensor, "attention_mask", attentionMaskTensor);
+			try (OrtSession.Result result = session.run(inputs))
+			{
+				float[][] output = (float[][])result.get(0).getValue();
+				float[] logits = new float[batch];
+				for (int i = 0; i < batch; i++)
+				{
+					logits[i] = output[i][0];
+				}
+				return logits;
+			}
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ This file belongs to the Servoy development and deployment environment, Copyright (C) 1997-2025 Servoy BV
+
+ This program is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Affero General Public License as published by the Free
+ Software Foundation; either version 3 of the License, or (at your option) any
+ later version.
+
+ This program is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License along
+ with this program; if not, see http://www.gnu.org/licenses or write to the Free
+ Software Foundation,Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301
+*/
+
+package com.servoy.eclipse.knowledgebase.service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import com.servoy.eclipse.model.util.ServoyLog;
+
+/**
+ * Persistent cache of knowledge-base embeddings in the workspace metadata area.
+ *
+ * Every embedded text file is stored as one {@link VectorFile}, named after the model id and the checksum
+ * of the file's lines. A reload of an unchanged package therefore only hashes the lines and maps the cached file,
+ * instead of running the model again. Entries that were not used for {@link #MAX_UNUSED_DAYS} days are pruned.
+ *
+ * @since 2026.3
+ */
+public class EmbeddingCache
+{
+	private static final String EXTENSION = ".vec";
+	private static final long MAX_UNUSED_DAYS = 30;
+
+	private final Path cacheDir;
+	private final String modelId;
+
+	/**
+	 * @param cacheDir directory holding the cache files, created when needed
+	 * @param modelId id of the model producing the embeddings; entries of other models are never returned
+	 */
+	public EmbeddingCache(Path cacheDir, String modelId)
+	{
+		this.cacheDir = cacheDir;
+		this.modelId = modelId;
+	}
+
+	/**
+	 * Get the cached vectors for a text file.
+	 *
+	 * @param checksum checksum of the embedded lines, see {@link VectorFile#checksum(java.util.List)}
+	 * @param expectedCount number of embedded lines
+	 * @return the vectors in line order, or null when not cached
+	 */
+	public float[][] get(String checksum, int expectedCount)
+	{
+		Path file = fileFor(checksum);
+		if (!Files.isRegularFile(file))
+		{
+			return null;
+		}
+		try
+		{
+			VectorFile vectorFile = VectorFile.read(file);
+			if (!modelId.equals(vectorFile.modelId) || !checksum.equals(vectorFile.checksum) || vectorFile.vectors.length != expectedCount)
+			{
+				Files.deleteIfExists(file);
+				return null;
+			}
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+			return vectorFile.vectors;
+		}
+		catch (IOException e)
+		{
+			ServoyLog.logError("[EmbeddingCache] Dropping unreadable cache entry " + file.getFileName() + ": " + e.getMessage());
+			try
+			{
+				Files.deleteIfExists(file);
+			}
+			catch (IOException ex)
+			{
+				// ignore, will be overwritten by the next put
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Store the vectors of a text file.
+	 *
+	 * @param checksum checksum of the embedded lines
+	 * @param vectors the vectors in line order
+	 */
+	public void put(String checksum, float[][] vectors)
+	{
+		try
+		{
+			Files.createDirectories(cacheDir);
+			VectorFile.write(fileFor(checksum), modelId, checksum, vectors);
+		}
+		catch (IOException e)
+		{
+			ServoyLog.logError("[EmbeddingCache] Failed to write cache entry: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Delete cache entries that were not used recently.
+	 */
+	public void prune()
+	{
+		if (!Files.isDirectory(cacheDir))
+		{
+			return;
+		}
+		long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(MAX_UNUSED_DAYS);
+		int deleted = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDir, "*" + EXTENSION))
+		{
+			for (Path file : files)
+			{
+				if (Files.getLastModifiedTime(file).toMillis() < cutoff)
+				{
+					Files.deleteIfExists(file);
+					deleted++;
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			ServoyLog.logError("[EmbeddingCache] Failed to prune cache: " + e.getMessage());
+		}
+		if (deleted > 0)
+		{
+			ServoyLog.logInfo("[EmbeddingCache] Pruned " + deleted + " unused cache entries");
+		}
+	}
+
+	private Path fileFor(String checksum)
+	{
+		return cacheDir.resolve(modelId + '-' + checksum + EXTENSION);
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ This file belongs to the Servoy development and deployment environment, Copyright (C) 1997-2025 Servoy BV
+
+ This program is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Affero General Public License as published by the Free
+ Software Foundation; either version 3 of the License, or (at your option) any
+ later version.
+
+ This program is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License along
+ with this program; if not, see http://www.gnu.org/licenses or write to the Free
+ Software Foundation,Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301
+*/
+
+package com.servoy.eclipse.knowledgebase.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.util.Map;
+
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+
+/**
+ * Input and output tensors of the embedding model for one [batch, length] shape, backed by direct buffers.
+ *
+ * ONNX Runtime reads the inputs straight from the buffers and writes the hidden states into the pinned output buffer,
+ * so a model run does not copy through long[][] inputs or a boxed float[][][] output. The tensors keep their shape,
+ * so they can be reused for every run with the same batch size and (padded) length; see {@link #bucketLength(int)}.
+ * Instances are not thread-safe.
+ *
+ * @since 2026.3
+ */
+final class EmbeddingTensors implements AutoCloseable
+{
+	private static final int[] LENGTH_BUCKETS = { 16, 32, 64, 128, 256, 512 };
+
+	final int batch;
+	final int length;
+	private final int dimension;
+
+	private final LongBuffer inputIds;
+	private final LongBuffer attentionMask;
+	private final LongBuffer tokenTypeIds;
+	private final FloatBuffer hiddenStates;
+
+	private final OnnxTensor inputIdsTensor;
+	private final OnnxTensor attentionMaskTensor;
+	private final OnnxTensor tokenTypeIdsTensor;
+	private final OnnxTensor hiddenStatesTensor;
+	private final Map<String, OnnxTensor> inputs;
+	private Map<String, OnnxTensor> pinnedOutputs = Map.of();
+
+	/**
+	 * @param env the ONNX Runtime environment
+	 * @param batch number of texts per run
+	 * @param length tokens per text, including padding
+	 * @param dimension hidden size of the model output
+	 */
+	EmbeddingTensors(OrtEnvironment env, int batch, int length, int dimension) throws OrtException
+	{
+		this.batch = batch;
+		this.length = length;
+		this.dimension = dimension;
+		long[] inputShape = { batch, length };
+		inputIds = allocateLongs(batch * length);
+		attentionMask = allocateLongs(batch * length);
+		tokenTypeIds = allocateLongs(batch * length);
+		hiddenStates = ByteBuffer.allocateDirect(batch * length * dimension * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+
+		inputIdsTensor = OnnxTensor.createTensor(env, inputIds, inputShape);
+		attentionMaskTensor = OnnxTensor.createTensor(env, attentionMask, inputShape);
+		tokenTypeIdsTensor = OnnxTensor.createTensor(env, tokenTypeIds, inputShape);
+		hiddenStatesTensor = OnnxTensor.createTensor(env, hiddenStates, new long[] { batch, length, dimension });
+		inputs = Map.of("input_ids", inputIdsTensor, "attention_mask", attentionMaskTensor, "token_type_ids", tokenTypeIdsTensor);
+	}
+
+	private static LongBuffer allocateLongs(int count)
+	{
+		return ByteBuffer.allocateDirect(count * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+	}
+
+	/**
+	 * Padded length for a single text of the given number of tokens: the smallest bucket that fits.
+	 * Bucketing keeps the number of distinct tensor shapes, and so the number of cached tensors, small.
+	 */
+	static int bucketLength(int tokens)
+	{
+		for (int bucket : LENGTH_BUCKETS)
+		{
+			if (tokens <= bucket)
+			{
+				return bucket;
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * Write the tokens of one text, right-padded with zeros (attention mask 0) up to the tensor length.
+	 */
+	void setRow(int row, long[] ids, long[] mask, long[] types)
+	{
+		int offset = row * length;
+		for (int t = 0; t < length; t++)
+		{
+			boolean token = t < ids.length;
+			inputIds.put(offset + t, token ? ids[t] : 0);
+			attentionMask.put(offset + t, token ? mask[t] : 0);
+			tokenTypeIds.put(offset + t, token ? types[t] : 0);
+		}
+	}
+
+	/**
+	 * Run the model; the hidden states are written into this object's output buffer.
+	 *
+	 * @param session the embedding model session
+	 */
+	void run(OrtSession session) throws OrtException
+	{
+		String outputName = session.getOutputNames().iterator().next();
+		if (!pinnedOutputs.containsKey(outputName))
+		{
+			pinnedOutputs = Map.of(outputName, hiddenStatesTensor);
+		}
+		// only the pinned output is computed and it is read from the pinned buffer, not from the result;
+		// the tensor is owned by this object, so closing the result leaves it open
+		session.run(inputs, pinnedOutputs).close();
+	}
+
+	/**
+	 * Mean of the hidden states of the tokens of one row whose attention mask is 1, read from the output buffer.
+	 *
+	 * @return the pooled (not normalized) vector
+	 */
+	float[] meanPooling(int row)
+	{
+		return VectorMath.meanPooling(hiddenStates, row * length * dimension, attentionMask, row * length, length, dimension);
+	}
+
+	@Override
+	public void close()
+	{
+		inputIdsTensor.close();
+		attentionMaskTensor.close();
+		tokenTypeIdsTensor.close();
+		hiddenStatesTensor.close();
+	}
+}
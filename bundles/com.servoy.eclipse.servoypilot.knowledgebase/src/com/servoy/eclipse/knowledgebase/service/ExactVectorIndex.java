@@ -0,0 +1,128 @@
+/*
+ This file belongs to the Servoy development and deployment environment, Copyright (C) 1997-2025 Servoy BV
+
+ This program is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Affero General Public License as published by the Free
+ Software Foundation; either version 3 of the License, or (at your option) any
+ later version.
+
+ This program is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License along
+ with this program; if not, see http://www.gnu.org/licenses or write to the Free
+ Software Foundation,Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301
+*/
+
+package com.servoy.eclipse.knowledgebase.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Vector index doing an exact linear scan over all vectors.
+ * Best choice for small stores, where building and walking a graph costs more than scanning.
+ *
+ * @since 2026.3
+ */
+public class ExactVectorIndex implements IVectorIndex
+{
+	private final VectorStore store;
+	private int size;
+
+	public ExactVectorIndex(VectorStore store)
+	{
+		this.store = store;
+	}
+
+	@Override
+	public void add(int id)
+	{
+		size = id + 1;
+	}
+
+	@Override
+	public List<Match> search(float[] query, int maxResults, double minSimilarity)
+	{
+		return scan(store, size, query, maxResults, minSimilarity);
+	}
+
+	@Override
+	public List<List<Match>> searchBatch(float[][] queries, int maxResults, double minSimilarity)
+	{
+		return scanBatch(store, size, queries, maxResults, minSimilarity);
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public IVectorIndex copy(VectorStore storeCopy)
+	{
+		ExactVectorIndex copy = new ExactVectorIndex(storeCopy);
+		copy.size = size;
+		return copy;
+	}
+
+	/**
+	 * Exact top-k scan over the first rows of a store.
+	 */
+	static List<Match> scan(VectorStore store, int rows, float[] query, int maxResults, double minSimilarity)
+	{
+		if (maxResults <= 0)
+		{
+			return new ArrayList<>();
+		}
+		float[] scores = new float[rows];
+		store.dotAll(query, rows, scores);
+		return best(scores, rows, maxResults, minSimilarity);
+	}
+
+	/**
+	 * Exact top-k scan of several queries over the first rows of a store, reading each row once for all queries.
+	 */
+	static List<List<Match>> scanBatch(VectorStore store, int rows, float[][] queries, int maxResults, double minSimilarity)
+	{
+		float[][] scores = new float[queries.length][rows];
+		store.dotAll(queries, rows, scores);
+		List<List<Match>> results = new ArrayList<>(queries.length);
+		for (float[] queryScores : scores)
+		{
+			results.add(best(queryScores, rows, maxResults, minSimilarity));
+		}
+		return results;
+	}
+
+	/**
+	 * Top-k selection over the scores of the first rows.
+	 */
+	private static List<Match> best(float[] scores, int rows, int maxResults, double minSimilarity)
+	{
+		if (maxResults <= 0)
+		{
+			return new ArrayList<>();
+		}
+		PriorityQueue<Match> best = new PriorityQueue<>(Comparator.comparingDouble(Match::similarity));
+		for (int id = 0; id < rows; id++)
+		{
+			double similarity = scores[id];
+			if (similarity >= minSimilarity && (best.size() < maxResults || similarity > best.peek().similarity()))
+			{
+				best.add(new Match(id, similarity));
+				if (best.size() > maxResults)
+				{
+					best.poll();
+				}
+			}
+		}
+		List<Match> matches = new ArrayList<>(best);
+		matches.sort(Comparator.comparingDouble(Match::similarity).reversed());
+		return matches;
+	}
+}
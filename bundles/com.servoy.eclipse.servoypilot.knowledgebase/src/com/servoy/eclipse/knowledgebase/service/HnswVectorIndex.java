@@ -0,0 +1,328 @@
+/*
+ This file belongs to the Servoy development and deployment environment, Copyright (C) 1997-2025 Servoy BV
+
+ This program is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Affero General Public License as published by the Free
+ Software Foundation; either version 3 of the License, or (at your option) any
+ later version.
+
+ This program is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License along
+ with this program; if not, see http://www.gnu.org/licenses or write to the Free
+ Software Foundation,Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301
+*/
+
+package com.servoy.eclipse.knowledgebase.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Hierarchical Navigable Small World (HNSW) graph index for approximate nearest-neighbour search.
+ *
+ * Every vector is a node on layer 0 and, with exponentially decreasing probability, on higher layers.
+ * A search walks greedily from the top layer down and then does a best-first search on layer 0,
+ * so query cost grows roughly logarithmically with the number of vectors instead of linearly.
+ * Stores with at most {@link Settings#exactSearchThreshold()} vectors are scanned exactly instead,
+ * which is both faster and fully accurate at that size.
+ *
+ * @since 2026.3
+ */
+public class HnswVectorIndex implements IVectorIndex
+{
+	/**
+	 * Tuning of the HNSW graph.
+	 *
+	 * @param m maximum number of neighbours per node on the upper layers (layer 0 allows 2 * m)
+	 * @param efConstruction size of the candidate list while inserting; higher gives a better graph but slower inserts
+	 * @param efSearch minimum size of the candidate list while searching; higher gives better recall but slower queries
+	 * @param exactSearchThreshold stores up to this size are searched with an exact scan
+	 */
+	public record Settings(int m, int efConstruction, int efSearch, int exactSearchThreshold)
+	{
+		public static final Settings DEFAULT = new Settings(16, 200, 100, 2000);
+
+		public Settings
+		{
+			if (m < 2 || efConstruction < 1 || efSearch < 1 || exactSearchThreshold < 0)
+			{
+				throw new IllegalArgumentException("Invalid HNSW settings: " + m + ", " + efConstruction + ", " + efSearch);
+			}
+		}
+
+		/**
+		 * Read the settings from the system properties servoy.knowledgebase.hnsw.m, .efConstruction, .efSearch
+		 * and .exactSearchThreshold, using the defaults for properties that are not set.
+		 */
+		public static Settings fromSystemProperties()
+		{
+			return new Settings(
+				Integer.getInteger("servoy.knowledgebase.hnsw.m", DEFAULT.m()).intValue(),
+				Integer.getInteger("servoy.knowledgebase.hnsw.efConstruction", DEFAULT.efConstruction()).intValue(),
+				Integer.getInteger("servoy.knowledgebase.hnsw.efSearch", DEFAULT.efSearch()).intValue(),
+				Integer.getInteger("servoy.knowledgebase.hnsw.exactSearchThreshold", DEFAULT.exactSearchThreshold()).intValue());
+		}
+	}
+
+	private static final Comparator<Candidate> NEAREST_FIRST = Comparator.comparingDouble(Candidate::similarity).reversed();
+	private static final Comparator<Candidate> FURTHEST_FIRST = Comparator.comparingDouble(Candidate::similarity);
+
+	private final Settings settings;
+	private final double levelMultiplier;
+	private final Random random = new Random(42);
+
+	private final VectorStore store;
+	/** neighbours[node][layer] holds the neighbour ids of a node; its length is the node's top layer + 1 */
+	private final List<int[][]> neighbours = new ArrayList<>();
+	private int entryPoint = -1;
+	private int topLayer = -1;
+
+	public HnswVectorIndex(VectorStore store, Settings settings)
+	{
+		this.store = store;
+		this.settings = settings;
+		this.levelMultiplier = 1 / Math.log(settings.m());
+	}
+
+	@Override
+	public void add(int id)
+	{
+		if (id != neighbours.size())
+		{
+			throw new IllegalArgumentException("Rows must be added in order, expected " + neighbours.size() + " but got " + id);
+		}
+		float[] vector = store.getVector(id);
+		int level = (int)(-Math.log(1 - random.nextDouble()) * levelMultiplier);
+		int[][] nodeNeighbours = new int[level + 1][];
+		Arrays.fill(nodeNeighbours, new int[0]);
+		neighbours.add(nodeNeighbours);
+
+		if (entryPoint < 0)
+		{
+			entryPoint = id;
+			topLayer = level;
+			return;
+		}
+
+		int nearest = entryPoint;
+		for (int layer = topLayer; layer > level; layer--)
+		{
+			nearest = greedyClosest(vector, nearest, layer);
+		}
+		List<Candidate> entryPoints = List.of(new Candidate(nearest, dot(vector, nearest)));
+		for (int layer = Math.min(level, topLayer); layer >= 0; layer--)
+		{
+			List<Candidate> candidates = searchLayer(vector, entryPoints, settings.efConstruction(), layer);
+			int[] selected = selectNearest(candidates, maxNeighbours(layer));
+			nodeNeighbours[layer] = selected;
+			for (int neighbour : selected)
+			{
+				connect(neighbour, id, layer);
+			}
+			entryPoints = candidates;
+		}
+
+		if (level > topLayer)
+		{
+			entryPoint = id;
+			topLayer = level;
+		}
+	}
+
+	@Override
+	public List<Match> search(float[] query, int maxResults, double minSimilarity)
+	{
+		if (neighbours.size() <= settings.exactSearchThreshold())
+		{
+			return ExactVectorIndex.scan(store, neighbours.size(), query, maxResults, minSimilarity);
+		}
+
+		int nearest = entryPoint;
+		for (int layer = topLayer; layer > 0; layer--)
+		{
+			nearest = greedyClosest(query, nearest, layer);
+		}
+		List<Candidate> candidates = searchLayer(query, List.of(new Candidate(nearest, dot(query, nearest))),
+			Math.max(settings.efSearch(), maxResults), 0);
+
+		List<Match> matches = new ArrayList<>(maxResults);
+		for (Candidate candidate : candidates)
+		{
+			if (matches.size() == maxResults || candidate.similarity() < minSimilarity)
+			{
+				break;
+			}
+			matches.add(new Match(candidate.id(), candidate.similarity()));
+		}
+		return matches;
+	}
+
+	/**
+	 * Below the exact search threshold all queries are scored in one pass over the store, see {@link ExactVectorIndex#scanBatch};
+	 * larger indexes search the graph per query.
+	 */
+	@Override
+	public List<List<Match>> searchBatch(float[][] queries, int maxResults, double minSimilarity)
+	{
+		if (neighbours.size() <= settings.exactSearchThreshold())
+		{
+			return ExactVectorIndex.scanBatch(store, neighbours.size(), queries, maxResults, minSimilarity);
+		}
+		return IVectorIndex.super.searchBatch(queries, maxResults, minSimilarity);
+	}
+
+	@Override
+	public int size()
+	{
+		return neighbours.size();
+	}
+
+	@Override
+	public IVectorIndex copy(VectorStore storeCopy)
+	{
+		HnswVectorIndex copy = new HnswVectorIndex(storeCopy, settings);
+		// neighbour lists are never modified in place, only replaced, so copying the per-node layer arrays is enough
+		for (int[][] nodeNeighbours : neighbours)
+		{
+			copy.neighbours.add(nodeNeighbours.clone());
+		}
+		copy.entryPoint = entryPoint;
+		copy.topLayer = topLayer;
+		copy.random.setSeed(random.nextLong());
+		return copy;
+	}
+
+	/**
+	 * Walk a layer greedily towards the vector, as long as a neighbour is closer than the current node.
+	 */
+	private int greedyClosest(float[] vector, int start, int layer)
+	{
+		int current = start;
+		double currentSimilarity = dot(vector, current);
+		boolean improved = true;
+		while (improved)
+		{
+			improved = false;
+			for (int neighbour : neighbours.get(current)[layer])
+			{
+				double similarity = dot(vector, neighbour);
+				if (similarity > currentSimilarity)
+				{
+					current = neighbour;
+					currentSimilarity = similarity;
+					improved = true;
+				}
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Best-first search of one layer.
+	 *
+	 * @return up to ef nearest nodes found, nearest first
+	 */
+	private List<Candidate> searchLayer(float[] vector, List<Candidate> entryPoints, int ef, int layer)
+	{
+		BitSet visited = new BitSet(neighbours.size());
+		PriorityQueue<Candidate> toVisit = new PriorityQueue<>(NEAREST_FIRST);
+		PriorityQueue<Candidate> found = new PriorityQueue<>(FURTHEST_FIRST);
+		for (Candidate entry : entryPoints)
+		{
+			visited.set(entry.id());
+			toVisit.add(entry);
+			found.add(entry);
+		}
+		while (found.size() > ef)
+		{
+			found.poll();
+		}
+
+		while (!toVisit.isEmpty())
+		{
+			Candidate current = toVisit.poll();
+			if (found.size() >= ef && current.similarity() < found.peek().similarity())
+			{
+				break;
+			}
+			for (int neighbour : neighbours.get(current.id())[layer])
+			{
+				if (!visited.get(neighbour))
+				{
+					visited.set(neighbour);
+					double similarity = dot(vector, neighbour);
+					if (found.size() < ef || similarity > found.peek().similarity())
+					{
+						Candidate candidate = new Candidate(neighbour, similarity);
+						toVisit.add(candidate);
+						found.add(candidate);
+						if (found.size() > ef)
+						{
+							found.poll();
+						}
+					}
+				}
+			}
+		}
+
+		List<Candidate> result = new ArrayList<>(found);
+		result.sort(NEAREST_FIRST);
+		return result;
+	}
+
+	/**
+	 * Add a link from a node to a new neighbour, dropping the furthest neighbour when the node has too many.
+	 */
+	private void connect(int node, int newNeighbour, int layer)
+	{
+		int[][] nodeNeighbours = neighbours.get(node);
+		int[] current = nodeNeighbours[layer];
+		int[] extended = Arrays.copyOf(current, current.length + 1);
+		extended[current.length] = newNeighbour;
+		if (extended.length <= maxNeighbours(layer))
+		{
+			nodeNeighbours[layer] = extended;
+			return;
+		}
+		List<Candidate> candidates = new ArrayList<>(extended.length);
+		for (int neighbour : extended)
+		{
+			candidates.add(new Candidate(neighbour, store.dot(node, neighbour)));
+		}
+		candidates.sort(NEAREST_FIRST);
+		nodeNeighbours[layer] = selectNearest(candidates, maxNeighbours(layer));
+	}
+
+	private static int[] selectNearest(List<Candidate> candidatesNearestFirst, int max)
+	{
+		int count = Math.min(max, candidatesNearestFirst.size());
+		int[] selected = new int[count];
+		for (int i = 0; i < count; i++)
+		{
+			selected[i] = candidatesNearestFirst.get(i).id();
+		}
+		return selected;
+	}
+
+	private int maxNeighbours(int layer)
+	{
+		return layer == 0 ? 2 * settings.m() : settings.m();
+	}
+
+	private double dot(float[] vector, int node)
+	{
+		return store.dot(node, vector);
+	}
+
+	private record Candidate(int id, double similarity)
+	{
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ This file belongs to the Servoy development and deployment environment, Copyright (C) 1997-2025 Servoy BV
+
+ This program is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Affero General Public License as published by the Free
+ Software Foundation; either version 3 of the License, or (at your option) any
+ later version.
+
+ This program is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License along
+ with this program; if not, see http://www.gnu.org/licenses or write to the Free
+ Software Foundation,Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301
+*/
+
+package com.servoy.eclipse.knowledgebase.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Nearest-neighbour index over the rows of a {@link VectorStore}, used by {@link ServoyEmbeddingService} for similarity search.
+ * The index only holds its search structure; vectors are read from the store by row id.
+ * Implementations are not thread-safe for modification: an index is filled by one thread and only searched
+ * once it has been published (see {@link KnowledgeSnapshot}), after which searches may run concurrently.
+ * Similarity is the dot product, which equals cosine similarity for the L2-normalized vectors produced by the embedding model.
+ *
+ * @since 2026.3
+ */
+public interface IVectorIndex
+{
+	/**
+	 * Add a store row to the index. Rows must be added in store order, starting at 0.
+	 *
+	 * @param id the row id in the store
+	 */
+	void add(int id);
+
+	/**
+	 * Find the vectors most similar to the query.
+	 *
+	 * @param query the normalized query vector
+	 * @param maxResults maximum number of matches
+	 * @param minSimilarity minimum cosine similarity of a match
+	 * @return matches ordered by descending similarity
+	 */
+	List<Match> search(float[] query, int maxResults, double minSimilarity);
+
+	/**
+	 * Find the vectors most similar to each of several queries.
+	 * The default searches the queries one by one; indexes that scan the store override it to score all queries in one pass.
+	 *
+	 * @param queries the normalized query vectors
+	 * @param maxResults maximum number of matches per query
+	 * @param minSimilarity minimum cosine similarity of a match
+	 * @return per query, matches ordered by descending similarity
+	 */
+	default List<List<Match>> searchBatch(float[][] queries, int maxResults, double minSimilarity)
+	{
+		List<List<Match>> results = new ArrayList<>(queries.length);
+		for (float[] query : queries)
+		{
+			results.add(search(query, maxResults, minSimilarity));
+		}
+		return results;
+	}
+
+	/**
+	 * @return number of vectors in the index
+	 */
+	int size();
+
+	/**
+	 * Copy this index for a copy of its store, so more rows can be added to the copy
+	 * while this index keeps serving searches. Much cheaper than indexing all rows again.
+	 *
+	 * @param storeCopy a copy of this index's store, see {@link VectorStore#copy()}
+	 * @return the copied index
+	 */
+	IVectorIndex copy(VectorStore storeCopy);
+
+	/**
+	 * Called when the partition holding this index is built; no more rows are added to this index or its store.
+	 * An index that no longer needs the store's vectors on the heap can move them out, see {@link VectorStore#mapVectors(java.nio.file.Path)}.
+	 */
+	default void seal()
+	{
+	}
+
+	/**
+	 * @return approximate heap bytes held by the vectors this index keeps itself, 0 when it reads them from the store
+	 */
+	default long estimateMemoryUsage()
+	{
+		return 0;
+	}
+
+	/**
+	 * A search match.
+	 *
+	 * @param id the row id of the matching vector in the store
+	 * @param similarity cosine similarity with the query
+	 */
+	record Match(int id, double similarity)
+	{
+	}
+}
@@ -0,0 +1,375 @@
+/*
+ This file belongs to the Servoy development and deployment environment, Copyright (C) 1997-2025 Servoy BV
+
+ This program is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Affero General Public License as published by the Free
+ Software Foundation; either version 3 of the License, or (at your option) any
+ later version.
+
+ This program is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License along
+ with this program; if not, see http://www.gnu.org/licenses or write to the Free
+ Software Foundation,Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301
+*/
+
+
+package com.servoy.eclipse.knowledgebase.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Immutable segment of a {@link KnowledgeSnapshot} holding the embeddings of one knowledge-base package:
+ * its own {@link VectorStore}, {@link IVectorIndex} and {@link LexicalIndex}, searched independently of the other partitions.
+ *
+ * Rows are numbered per partition. Lines removed from a file are tombstoned, and the partition is compacted into a fresh
+ * index once too many of its rows are tombstoned; other partitions are not affected.
+ *
+ * @since 2026.3
+ */
+final class KnowledgePartition
+{
+	private static final int MIN_REMOVED_BEFORE_COMPACT = 64;
+
+	private final VectorStore store;
+	private final IVectorIndex index;
+	private final LexicalIndex lexicalIndex;
+	private final Function<VectorStore, IVectorIndex> indexFactory;
+	private final BitSet removed;
+	private final int removedCount;
+	private final Map<String, List<Integer>> rowsBySource;
+
+	private KnowledgePartition(Builder builder)
+	{
+		this.store = builder.store;
+		this.index = builder.index;
+		this.lexicalIndex = builder.lexicalIndex;
+		this.indexFactory = builder.indexFactory;
+		this.removed = builder.removed;
+		this.removedCount = builder.removed.cardinality();
+		this.rowsBySource = builder.rowsBySource;
+	}
+
+	/**
+	 * A live row of this partition found for a query.
+	 *
+	 * @param similarity cosine similarity with the query
+	 * @param lexicalScore BM25 score of the query terms, 0 for a vector match
+	 */
+	record Hit(KnowledgePartition partition, int row, double similarity, double lexicalScore)
+	{
+	}
+
+	/**
+	 * The vector matches and the BM25 matches of one query in this partition.
+	 *
+	 * @param dense rows reaching the similarity threshold, best similarity first
+	 * @param lexical rows matching query terms and reaching the similarity threshold, best BM25 score first
+	 */
+	record Candidates(List<Hit> dense, List<Hit> lexical)
+	{
+	}
+
+	/**
+	 * Find the candidates of several queries, skipping tombstoned rows.
+	 *
+	 * @param queries normalized query vectors
+	 * @param queryTerms terms per query, see {@link LexicalIndex#terms(String)}
+	 * @param candidates maximum number of vector and of lexical matches per query
+	 * @param minSimilarity minimum cosine similarity of a match
+	 * @return per query, the candidates
+	 */
+	List<Candidates> search(float[][] queries, List<List<String>> queryTerms, int candidates, double minSimilarity)
+	{
+		// tombstoned rows are still in the indexes, so ask for enough extra matches to fill up after skipping them
+		int requested = candidates + removedCount;
+		List<List<IVectorIndex.Match>> denseMatches = index.searchBatch(queries, requested, minSimilarity);
+		List<Candidates> results = new ArrayList<>(queries.length);
+		for (int q = 0; q < queries.length; q++)
+		{
+			List<Hit> dense = new ArrayList<>();
+			for (IVectorIndex.Match match : denseMatches.get(q))
+			{
+				if (!removed.get(match.id()) && dense.size() < candidates)
+				{
+					dense.add(new Hit(this, match.id(), match.similarity(), 0));
+				}
+			}
+			List<Hit> lexical = new ArrayList<>();
+			for (LexicalIndex.Hit hit : lexicalIndex.search(queryTerms.get(q), requested))
+			{
+				if (removed.get(hit.row()) || lexical.size() == candidates)
+				{
+					continue;
+				}
+				double similarity = store.dot(hit.row(), queries[q]);
+				if (similarity >= minSimilarity)
+				{
+					lexical.add(new Hit(this, hit.row(), similarity, hit.score()));
+				}
+			}
+			results.add(new Candidates(dense, lexical));
+		}
+		return results;
+	}
+
+	String getText(int row)
+	{
+		return store.getText(row);
+	}
+
+	VectorStore.Label getLabel(int row)
+	{
+		return store.getLabel(row);
+	}
+
+	/**
+	 * @return number of live embeddings
+	 */
+	int size()
+	{
+		return store.size() - removedCount;
+	}
+
+	/**
+	 * @return approximate heap memory held by the embeddings, their texts and the vector and lexical indexes, in bytes
+	 */
+	long getMemoryUsage()
+	{
+		return store.estimateMemoryUsage() + index.estimateMemoryUsage() + lexicalIndex.estimateMemoryUsage();
+	}
+
+	/**
+	 * @return number of distinct terms in the lexical index
+	 */
+	int getTermCount()
+	{
+		return lexicalIndex.termCount();
+	}
+
+	/**
+	 * Add the texts of live rows, in store order, until texts holds max texts.
+	 */
+	void sampleTexts(List<String> texts, int max)
+	{
+		for (int row = removed.nextClearBit(0); row < store.size() && texts.size() < max; row = removed.nextClearBit(row + 1))
+		{
+			texts.add(store.getText(row));
+		}
+	}
+
+	IVectorIndex getIndex()
+	{
+		return index;
+	}
+
+	/**
+	 * @return the sources that have embeddings in this partition
+	 */
+	Collection<String> getSources()
+	{
+		return new ArrayList<>(rowsBySource.keySet());
+	}
+
+	/**
+	 * The live rows of a source by text, in row order; a text occurring on several lines has several rows.
+	 */
+	Map<String, Deque<Integer>> getRowsByText(String source)
+	{
+		return rowsByText(store, rowsBySource, source);
+	}
+
+	/**
+	 * @return a copy of the vector of a row
+	 */
+	float[] getVector(int row)
+	{
+		return store.getVector(row);
+	}
+
+	private static Map<String, Deque<Integer>> rowsByText(VectorStore store, Map<String, List<Integer>> rowsBySource, String source)
+	{
+		Map<String, Deque<Integer>> rowsByText = new HashMap<>();
+		for (Integer row : rowsBySource.getOrDefault(source, List.of()))
+		{
+			rowsByText.computeIfAbsent(store.getText(row.intValue()), key -> new ArrayDeque<>()).add(row);
+		}
+		return rowsByText;
+	}
+
+	/**
+	 * Start a new partition holding all embeddings of this one, leaving this partition untouched.
+	 */
+	Builder toBuilder()
+	{
+		return new Builder(this);
+	}
+
+	/**
+	 * Collects embeddings for a new partition. Used by a single thread; discarded after {@link #build()}.
+	 */
+	static final class Builder
+	{
+		private VectorStore store;
+		private IVectorIndex index;
+		private LexicalIndex lexicalIndex;
+		private final Function<VectorStore, IVectorIndex> indexFactory;
+		private BitSet removed;
+		private Map<String, List<Integer>> rowsBySource;
+		private boolean built;
+
+		Builder(int dimension, Function<VectorStore, IVectorIndex> indexFactory)
+		{
+			this.store = new VectorStore(dimension);
+			this.index = indexFactory.apply(store);
+			this.lexicalIndex = new LexicalIndex();
+			this.indexFactory = indexFactory;
+			this.removed = new BitSet();
+			this.rowsBySource = new HashMap<>();
+		}
+
+		private Builder(KnowledgePartition partition)
+		{
+			this.store = partition.store.copy();
+			this.index = partition.index.copy(store);
+			this.lexicalIndex = partition.lexicalIndex.copy();
+			this.indexFactory = partition.indexFactory;
+			this.removed = (BitSet)partition.removed.clone();
+			this.rowsBySource = new HashMap<>();
+			partition.rowsBySource.forEach((source, rows) -> rowsBySource.put(source, new ArrayList<>(rows)));
+		}
+
+		/**
+		 * Add an embedding with its text and metadata and index both.
+		 *
+		 * @param source the file the text comes from, see {@link KnowledgeSnapshot#source(String, String)}
+		 */
+		void add(float[] embedding, String text, String metadataKey, String metadataValue, String source)
+		{
+			if (built)
+			{
+				throw new IllegalStateException("Partition already built");
+			}
+			int row = store.add(embedding, text, metadataKey, metadataValue);
+			index.add(row);
+			lexicalIndex.add(row, text);
+			rowsBySource.computeIfAbsent(source, key -> new ArrayList<>()).add(Integer.valueOf(row));
+		}
+
+		/**
+		 * @return the sources that have embeddings in this partition
+		 */
+		Collection<String> getSources()
+		{
+			return new ArrayList<>(rowsBySource.keySet());
+		}
+
+		/**
+		 * The live rows of a source by text, in row order; a text occurring on several lines has several rows.
+		 */
+		Map<String, Deque<Integer>> getRowsByText(String source)
+		{
+			return rowsByText(store, rowsBySource, source);
+		}
+
+		/**
+		 * @return a copy of the vector of a row
+		 */
+		float[] getVector(int row)
+		{
+			return store.getVector(row);
+		}
+
+		/**
+		 * Tombstone rows of a source, they are no longer returned by searches.
+		 */
+		void remove(String source, Collection<Integer> rows)
+		{
+			List<Integer> sourceRows = rowsBySource.get(source);
+			for (Integer row : rows)
+			{
+				if (!removed.get(row.intValue()))
+				{
+					lexicalIndex.remove(row.intValue(), store.getText(row.intValue()));
+				}
+				removed.set(row.intValue());
+				if (sourceRows != null)
+				{
+					sourceRows.remove(row);
+				}
+			}
+			if (sourceRows != null && sourceRows.isEmpty())
+			{
+				rowsBySource.remove(source);
+			}
+		}
+
+		/**
+		 * @return number of live embeddings
+		 */
+		int size()
+		{
+			return store.size() - removed.cardinality();
+		}
+
+		/**
+		 * @return the partition, or null when it holds no live embeddings; this builder can no longer be used
+		 */
+		KnowledgePartition build()
+		{
+			built = true;
+			int removedCount = removed.cardinality();
+			if (removedCount == store.size())
+			{
+				return null;
+			}
+			if (removedCount > Math.max(MIN_REMOVED_BEFORE_COMPACT, (store.size() - removedCount) / 4))
+			{
+				compact();
+			}
+			index.seal();
+			return new KnowledgePartition(this);
+		}
+
+		/**
+		 * Rebuild store and index from the live rows, so tombstones no longer cost search time.
+		 * Vectors are copied, not embedded again.
+		 */
+		private void compact()
+		{
+			VectorStore oldStore = store;
+			store = new VectorStore(oldStore.dimension());
+			index = indexFactory.apply(store);
+			lexicalIndex = new LexicalIndex();
+			int[] newRows = new int[oldStore.size()];
+			for (int row = removed.nextClearBit(0); row < oldStore.size(); row = removed.nextClearBit(row + 1))
+			{
+				VectorStore.Label label = oldStore.getLabel(row);
+				newRows[row] = store.add(oldStore.getVector(row), oldStore.getText(row), label.key(), label.value());
+				index.add(newRows[row]);
+				lexicalIndex.add(newRows[row], oldStore.getText(row));
+			}
+			Map<String, List<Integer>> oldRowsBySource = rowsBySource;
+			rowsBySource = new HashMap<>();
+			oldRowsBySource.forEach((source, rows) -> {
+				List<Integer> mapped = new ArrayList<>(rows.size());
+				for (Integer row : rows)
+				{
+					mapped.add(Integer.valueOf(newRows[row.intValue()]));
+				}
+				rowsBySource.put(source, mapped);
+			});
+			removed = new BitSet();
+		}
+	}
+}
@@ -0,0 +1,443 @@
+/*
+ This file belongs to the Servoy development and deployment environment, Copyright (C) 1997-2025 Servoy BV
+
+ This program is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Affero General Public License as published by the Free
+ Software Foundation; either version 3 of the License, or (at your option) any
+ later version.
+
+ This program is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License along
+ with this program; if not, see http://www.gnu.org/licenses or write to the Free
+ Software Foundation,Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301
+*/
+
+package com.servoy.eclipse.knowledgebase.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.sablo.specification.Package.IPackageReader;
+
+import com.servoy.eclipse.knowledgebase.service.ServoyEmbeddingService.SearchResult;
+
+import dev.langchain4j.store.embedding.RelevanceScore;
+
+/**
+ * Immutable view of the loaded knowledge-base embeddings, partitioned by package: every package has its own
+ * {@link KnowledgePartition} with a {@link VectorStore}, an {@link IVectorIndex} over it and a {@link LexicalIndex}
+ * over the same texts. Searches query every partition and merge the best matches.
+ *
+ * The embedding service publishes the current snapshot through a volatile field, so searches never take a lock and
+ * never see a half-loaded knowledge base. A reload fills a new snapshot through a {@link Builder} and swaps it in when
+ * complete; additive loads and incremental updates start from the current snapshot ({@link #toBuilder()}) and only copy
+ * the partitions they change, so adding, replacing or dropping a package leaves the other packages' indexes untouched.
+ *
+ * Every embedded line is identified by its source (package and file, see {@link #source(String, String)}) and its text,
+ * which stays stable across reloads. Lines removed from a file are tombstoned in their partition, see {@link KnowledgePartition}.
+ *
+ * @since 2026.3
+ */
+final class KnowledgeSnapshot
+{
+	private static final int RRF_K = 60; // reciprocal-rank fusion constant, damps the weight of the top ranks
+	private static final int MIN_FUSION_CANDIDATES = 20; // per ranking, before fusion
+	private static final int PARALLEL_SEARCH_MIN_EMBEDDINGS = 20_000; // below this, forking costs more than searching the partitions
+
+	private final int dimension;
+	private final Function<VectorStore, IVectorIndex> indexFactory;
+	private final Map<String, KnowledgePartition> partitions;
+	private final Map<String, IPackageReader> packages;
+	private final int size;
+
+	private KnowledgeSnapshot(int dimension, Function<VectorStore, IVectorIndex> indexFactory, Map<String, KnowledgePartition> partitions,
+		Map<String, IPackageReader> packages)
+	{
+		this.dimension = dimension;
+		this.indexFactory = indexFactory;
+		this.partitions = partitions;
+		this.packages = packages;
+		this.size = partitions.values().stream().mapToInt(KnowledgePartition::size).sum();
+	}
+
+	/**
+	 * @param dimension floats per vector
+	 * @param indexFactory creates the index over a new store
+	 * @return a snapshot without embeddings
+	 */
+	static KnowledgeSnapshot empty(int dimension, Function<VectorStore, IVectorIndex> indexFactory)
+	{
+		return new Builder(dimension, indexFactory).build();
+	}
+
+	/**
+	 * Stable source id of the lines of a knowledge-base file.
+	 *
+	 * @param packageName the knowledge-base package
+	 * @param path the file path in the package, e.g. "embeddings/forms.txt"
+	 */
+	static String source(String packageName, String path)
+	{
+		return packageName + ':' + path;
+	}
+
+	/**
+	 * Source of texts that do not come from a package file, e.g. added through addKnowledge.
+	 * Package names cannot contain angle brackets, so no package shares, replaces or unloads its partition.
+	 */
+	static final String ADDED_SOURCE = "<added>";
+
+	/**
+	 * The partition of a source: its package, or the whole source when it is not a package file.
+	 */
+	static String partitionOf(String source)
+	{
+		int separator = source.indexOf(':');
+		return separator >= 0 ? source.substring(0, separator) : source;
+	}
+
+	/**
+	 * Search the snapshot, safe to call from any number of threads.
+	 *
+	 * The vector ranking and the BM25 ranking of the query terms are merged with reciprocal-rank fusion: a row scores
+	 * 1 / ({@value #RRF_K} + rank) for each ranking it appears in. Rows must reach minSimilarity, or
+	 * lexicalMinSimilarity when they also match query terms, so a word match can rescue a borderline embedding match
+	 * but never returns a text the embedding considers unrelated.
+	 *
+	 * @param query normalized query vector
+	 * @param queryTerms terms of the query, see {@link LexicalIndex#terms(String)}
+	 * @param maxResults maximum number of results
+	 * @param minSimilarity minimum cosine similarity of a result without lexical match
+	 * @param lexicalMinSimilarity minimum cosine similarity of a result with lexical match, at most minSimilarity
+	 * @return the results, best fused rank first; scores are the relevance of the cosine similarity
+	 */
+	List<SearchResult> search(float[] query, List<String> queryTerms, int maxResults, double minSimilarity, double lexicalMinSimilarity)
+	{
+		return searchBatch(new float[][] { query }, List.of(queryTerms), maxResults, minSimilarity, lexicalMinSimilarity).get(0);
+	}
+
+	/**
+	 * Search several queries at once, see {@link #search(float[], List, int, double, double)}.
+	 * Every partition scores all queries together, for the exact index in a single pass over its vectors.
+	 * With many embeddings the partitions are searched in parallel.
+	 *
+	 * The candidates of all partitions are merged into one vector ranking by similarity and one lexical ranking by BM25 score
+	 * before fusion. BM25 scores use the term statistics of their own partition, which is close enough to rank candidates
+	 * that all passed the similarity threshold.
+	 *
+	 * @param queries normalized query vectors
+	 * @param queryTerms terms per query
+	 * @return per query, the results best fused rank first
+	 */
+	List<List<SearchResult>> searchBatch(float[][] queries, List<List<String>> queryTerms, int maxResults, double minSimilarity,
+		double lexicalMinSimilarity)
+	{
+		int candidates = Math.max(maxResults * 4, MIN_FUSION_CANDIDATES);
+		Stream<KnowledgePartition> stream = partitions.size() > 1 && size >= PARALLEL_SEARCH_MIN_EMBEDDINGS ? partitions.values().parallelStream()
+			: partitions.values().stream();
+		List<List<KnowledgePartition.Candidates>> partitionCandidates = stream
+			.map(partition -> partition.search(queries, queryTerms, candidates, lexicalMinSimilarity)).toList();
+
+		List<List<SearchResult>> results = new ArrayList<>(queries.length);
+		for (int q = 0; q < queries.length; q++)
+		{
+			List<KnowledgePartition.Hit> dense = new ArrayList<>();
+			List<KnowledgePartition.Hit> lexical = new ArrayList<>();
+			for (List<KnowledgePartition.Candidates> perQuery : partitionCandidates)
+			{
+				dense.addAll(perQuery.get(q).dense());
+				lexical.addAll(perQuery.get(q).lexical());
+			}
+			dense.sort(Comparator.comparingDouble(KnowledgePartition.Hit::similarity).reversed());
+			lexical.sort(Comparator.comparingDouble(KnowledgePartition.Hit::lexicalScore).reversed());
+			results.add(fuse(dense.subList(0, Math.min(candidates, dense.size())), lexical.subList(0, Math.min(candidates, lexical.size())),
+				maxResults, minSimilarity));
+		}
+		return results;
+	}
+
+	/**
+	 * Merge the vector ranking of one query with its BM25 ranking.
+	 */
+	private static List<SearchResult> fuse(List<KnowledgePartition.Hit> dense, List<KnowledgePartition.Hit> lexical, int maxResults,
+		double minSimilarity)
+	{
+		Map<RowKey, FusedMatch> fused = new HashMap<>();
+		int rank = 0;
+		for (KnowledgePartition.Hit hit : dense)
+		{
+			fused.put(new RowKey(hit.partition(), hit.row()), new FusedMatch(hit, 1.0 / (RRF_K + ++rank)));
+		}
+		rank = 0;
+		for (KnowledgePartition.Hit hit : lexical)
+		{
+			FusedMatch match = fused.computeIfAbsent(new RowKey(hit.partition(), hit.row()), key -> new FusedMatch(hit, 0));
+			match.lexical = true;
+			match.score += 1.0 / (RRF_K + ++rank);
+		}
+
+		List<FusedMatch> matches = new ArrayList<>();
+		for (FusedMatch match : fused.values())
+		{
+			if (match.hit.similarity() >= minSimilarity || match.lexical)
+			{
+				matches.add(match);
+			}
+		}
+		matches.sort((a, b) -> a.score != b.score ? Double.compare(b.score, a.score) : Double.compare(b.hit.similarity(), a.hit.similarity()));
+
+		List<SearchResult> results = new ArrayList<>(Math.min(maxResults, matches.size()));
+		for (FusedMatch match : matches.subList(0, Math.min(maxResults, matches.size())))
+		{
+			KnowledgePartition partition = match.hit.partition();
+			VectorStore.Label label = partition.getLabel(match.hit.row());
+			Map<String, String> metadata = new HashMap<>();
+			metadata.put(label.key(), label.value());
+			results.add(new SearchResult(RelevanceScore.fromCosineSimilarity(match.hit.similarity()), partition.getText(match.hit.row()), metadata));
+		}
+		return results;
+	}
+
+	/**
+	 * A row of a partition.
+	 */
+	private record RowKey(KnowledgePartition partition, int row)
+	{
+	}
+
+	/**
+	 * A row found by the vector or lexical ranking, with its fused score.
+	 */
+	private static final class FusedMatch
+	{
+		final KnowledgePartition.Hit hit;
+		double score;
+		boolean lexical;
+
+		FusedMatch(KnowledgePartition.Hit hit, double score)
+		{
+			this.hit = hit;
+			this.score = score;
+		}
+	}
+
+	/**
+	 * @return number of embeddings
+	 */
+	int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return approximate memory held by the embeddings, their texts and the lexical indexes, in bytes
+	 */
+	long getMemoryUsage()
+	{
+		return partitions.values().stream().mapToLong(KnowledgePartition::getMemoryUsage).sum();
+	}
+
+	/**
+	 * @return number of distinct terms in the lexical indexes, counted per partition
+	 */
+	int getTermCount()
+	{
+		return partitions.values().stream().mapToInt(KnowledgePartition::getTermCount).sum();
+	}
+
+	/**
+	 * @return the texts of at most max embeddings, in partition and store order
+	 */
+	List<String> sampleTexts(int max)
+	{
+		List<String> texts = new ArrayList<>(Math.min(max, size()));
+		for (KnowledgePartition partition : partitions.values())
+		{
+			partition.sampleTexts(texts, max);
+		}
+		return texts;
+	}
+
+	/**
+	 * @return the packages whose knowledge bases are loaded, by package name
+	 */
+	Map<String, IPackageReader> getPackages()
+	{
+		return Collections.unmodifiableMap(packages);
+	}
+
+	/**
+	 * @return the vector index of every partition, by partition name
+	 */
+	Map<String, IVectorIndex> getIndexes()
+	{
+		Map<String, IVectorIndex> indexes = new LinkedHashMap<>();
+		partitions.forEach((name, partition) -> indexes.put(name, partition.getIndex()));
+		return indexes;
+	}
+
+	/**
+	 * Start a new snapshot holding all embeddings of this one, leaving this snapshot untouched.
+	 * Partitions are shared until the builder changes them.
+	 */
+	Builder toBuilder()
+	{
+		return new Builder(this);
+	}
+
+	/**
+	 * Collects embeddings for a new snapshot. Used by a single thread; discarded after {@link #build()}.
+	 * A partition of the original snapshot is copied the first time the builder changes it.
+	 */
+	static final class Builder
+	{
+		private final int dimension;
+		private final Function<VectorStore, IVectorIndex> indexFactory;
+		private final Map<String, KnowledgePartition> partitions; // unchanged partitions of the original snapshot
+		private final Map<String, KnowledgePartition.Builder> changed = new LinkedHashMap<>();
+		private final Map<String, IPackageReader> packages;
+		private boolean built;
+
+		Builder(int dimension, Function<VectorStore, IVectorIndex> indexFactory)
+		{
+			this.dimension = dimension;
+			this.indexFactory = indexFactory;
+			this.partitions = new LinkedHashMap<>();
+			this.packages = new LinkedHashMap<>();
+		}
+
+		private Builder(KnowledgeSnapshot snapshot)
+		{
+			this.dimension = snapshot.dimension;
+			this.indexFactory = snapshot.indexFactory;
+			this.partitions = new LinkedHashMap<>(snapshot.partitions);
+			this.packages = new LinkedHashMap<>(snapshot.packages);
+		}
+
+		/**
+		 * The partition of a source, ready to be changed: copied from the original snapshot the first time.
+		 * Reads use the changed copy or the shared partition of the original snapshot, they never copy.
+		 */
+		private KnowledgePartition.Builder partition(String source)
+		{
+			if (built)
+			{
+				throw new IllegalStateException("Snapshot already built");
+			}
+			return changed.computeIfAbsent(partitionOf(source), name -> {
+				KnowledgePartition partition = partitions.remove(name);
+				return partition != null ? partition.toBuilder() : new KnowledgePartition.Builder(dimension, indexFactory);
+			});
+		}
+
+		/**
+		 * Add an embedding with its text and metadata and index both.
+		 *
+		 * @param source the file the text comes from, see {@link KnowledgeSnapshot#source(String, String)}
+		 */
+		void add(float[] embedding, String text, String metadataKey, String metadataValue, String source)
+		{
+			partition(source).add(embedding, text, metadataKey, metadataValue, source);
+		}
+
+		/**
+		 * Remember a package whose knowledge base is (being) loaded into this snapshot.
+		 */
+		void addPackage(IPackageReader reader)
+		{
+			packages.put(reader.getPackageName(), reader);
+		}
+
+		/**
+		 * Drop the partition of a package and forget the package, without copying or rebuilding other partitions.
+		 *
+		 * @return number of embeddings removed
+		 */
+		int removePackage(String packageName)
+		{
+			packages.remove(packageName);
+			KnowledgePartition partition = partitions.remove(packageName);
+			KnowledgePartition.Builder partitionBuilder = changed.remove(packageName);
+			if (partitionBuilder != null)
+			{
+				return partitionBuilder.size(); // counted on the builder, building it would seal (and maybe compact) an index that is dropped anyway
+			}
+			return partition != null ? partition.size() : 0;
+		}
+
+		/**
+		 * @return the sources of a package that have embeddings in this snapshot
+		 */
+		List<String> getSources(String packageName)
+		{
+			KnowledgePartition.Builder partitionBuilder = changed.get(packageName);
+			if (partitionBuilder != null)
+			{
+				return new ArrayList<>(partitionBuilder.getSources());
+			}
+			KnowledgePartition partition = partitions.get(packageName);
+			return partition != null ? new ArrayList<>(partition.getSources()) : List.of();
+		}
+
+		/**
+		 * The live rows of a source by text, in row order; a text occurring on several lines has several rows.
+		 * Rows are numbered per partition.
+		 */
+		Map<String, Deque<Integer>> getRowsByText(String source)
+		{
+			KnowledgePartition.Builder partitionBuilder = changed.get(partitionOf(source));
+			if (partitionBuilder != null)
+			{
+				return partitionBuilder.getRowsByText(source);
+			}
+			KnowledgePartition partition = partitions.get(partitionOf(source));
+			return partition != null ? partition.getRowsByText(source) : new HashMap<>();
+		}
+
+		/**
+		 * @return a copy of the vector of a row of the partition of a source
+		 */
+		float[] getVector(String source, int row)
+		{
+			KnowledgePartition.Builder partitionBuilder = changed.get(partitionOf(source));
+			return partitionBuilder != null ? partitionBuilder.getVector(row) : partitions.get(partitionOf(source)).getVector(row);
+		}
+
+		/**
+		 * Tombstone rows of a source, they are no longer returned by searches.
+		 */
+		void remove(String source, Collection<Integer> rows)
+		{
+			partition(source).remove(source, rows);
+		}
+
+		/**
+		 * @return the snapshot; this builder can no longer be used
+		 */
+		KnowledgeSnapshot build()
+		{
+			built = true;
+			Map<String, KnowledgePartition> result = new LinkedHashMap<>(partitions);
+			changed.forEach((name, partitionBuilder) -> {
+				KnowledgePartition partition = partitionBuilder.build();
+				if (partition != null)
+				{
+					result.put(name, partition);
+				}
+			});
+			return new KnowledgeSnapshot(dimension, indexFactory, Collections.unmodifiableMap(result), packages);
+		}
+	}
+}
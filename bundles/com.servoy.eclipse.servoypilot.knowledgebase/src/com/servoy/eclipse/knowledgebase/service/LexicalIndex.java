@@ -0,0 +1,301 @@
+/*
+ This file belongs to the Servoy development and deployment environment, Copyright (C) 1997-2025 Servoy BV
+
+ This program is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Affero General Public License as published by the Free
+ Software Foundation; either version 3 of the License, or (at your option) any
+ later version.
+
+ This program is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License along
+ with this program; if not, see http://www.gnu.org/licenses or write to the Free
+ Software Foundation,Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301
+*/
+
+package com.servoy.eclipse.knowledgebase.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * In-memory inverted index with BM25 scoring over the texts of a {@link VectorStore}.
+ *
+ * Complements the vector index for short queries like "add buttons", where an exact word match is a stronger signal
+ * than the embedding similarity. Terms are lower cased letter/digit runs of at least two characters without stop words,
+ * with plurals folded to their singular. Rows are added in store order; like the vector indexes, an index is filled by one thread and then
+ * searched concurrently. Tombstoned rows stay in the postings until the partition is compacted, but are left out of
+ * the document count, document frequencies and average length that BM25 scores with.
+ *
+ * @since 2026.3
+ */
+final class LexicalIndex
+{
+	private static final double K1 = 1.2;
+	private static final double B = 0.75;
+	private static final Set<String> STOP_WORDS = Set.of("a", "an", "and", "are", "as", "at", "be", "by", "can", "do", "for", "from", "how",
+		"i", "in", "into", "is", "it", "me", "my", "of", "on", "or", "please", "that", "the", "this", "to", "with", "you");
+	// singular words ending in "as", which would otherwise lose their s like "schemas" and "ideas"
+	private static final Set<String> SINGULAR_AS = Set.of("alias", "atlas", "bias", "canvas");
+
+	/**
+	 * A row matching a query.
+	 *
+	 * @param row the row in the store
+	 * @param score the BM25 score, higher is better
+	 */
+	record Hit(int row, double score)
+	{
+	}
+
+	private final Map<String, Postings> postings;
+	private int[] lengths;
+	private int size;
+	private long totalLength;
+	private int removedCount;
+	private long removedLength;
+
+	LexicalIndex()
+	{
+		this(new HashMap<>(), new int[256], 0, 0, 0, 0);
+	}
+
+	private LexicalIndex(Map<String, Postings> postings, int[] lengths, int size, long totalLength, int removedCount, long removedLength)
+	{
+		this.postings = postings;
+		this.lengths = lengths;
+		this.size = size;
+		this.totalLength = totalLength;
+		this.removedCount = removedCount;
+		this.removedLength = removedLength;
+	}
+
+	/**
+	 * Split a text into index terms.
+	 *
+	 * @return the terms in text order, including duplicates
+	 */
+	static List<String> terms(String text)
+	{
+		List<String> terms = new ArrayList<>();
+		String lower = text.toLowerCase(Locale.ROOT);
+		int start = -1;
+		for (int i = 0; i <= lower.length(); i++)
+		{
+			boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+			if (wordChar && start < 0)
+			{
+				start = i;
+			}
+			else if (!wordChar && start >= 0)
+			{
+				String term = lower.substring(start, i);
+				if (term.length() > 1 && !STOP_WORDS.contains(term))
+				{
+					terms.add(stem(term));
+				}
+				start = -1;
+			}
+		}
+		return terms;
+	}
+
+	/**
+	 * Minimal plural folding, so "buttons" matches "button". A final e is dropped after the s, from singulars too,
+	 * so the "-es" plurals meet their singular whether or not that ends in e: "aliases" and "alias" become "alias",
+	 * "classes" and "class" become "class", "caches" and "cache" become "cach".
+	 */
+	private static String stem(String term)
+	{
+		if (term.length() <= 3)
+		{
+			return term;
+		}
+		String stem = term;
+		if (stem.endsWith("ies"))
+		{
+			stem = stem.substring(0, stem.length() - 3) + 'y';
+		}
+		else if (stem.endsWith("s") && !stem.endsWith("ss") && !stem.endsWith("us") && !stem.endsWith("is") && !SINGULAR_AS.contains(stem))
+		{
+			stem = stem.substring(0, stem.length() - 1);
+		}
+		if (stem.length() > 3 && stem.endsWith("e"))
+		{
+			stem = stem.substring(0, stem.length() - 1);
+		}
+		return stem;
+	}
+
+	/**
+	 * Index the text of the next row.
+	 *
+	 * @param row the row, must be the number of rows added so far
+	 * @param text the text of the row
+	 */
+	void add(int row, String text)
+	{
+		if (row != size)
+		{
+			throw new IllegalArgumentException("Rows must be added in order, expected " + size + " but got " + row);
+		}
+		List<String> terms = terms(text);
+		Map<String, Integer> frequencies = new HashMap<>();
+		for (String term : terms)
+		{
+			frequencies.merge(term, Integer.valueOf(1), Integer::sum);
+		}
+		frequencies.forEach((term, frequency) -> postings.computeIfAbsent(term, key -> new Postings()).add(row, frequency.intValue()));
+		if (size == lengths.length)
+		{
+			lengths = Arrays.copyOf(lengths, size * 2);
+		}
+		lengths[size++] = terms.size();
+		totalLength += terms.size();
+	}
+
+	/**
+	 * Leave a tombstoned row out of the BM25 statistics; its postings stay until the partition is compacted.
+	 * Call at most once per row.
+	 *
+	 * @param row the row
+	 * @param text the text the row was added with
+	 */
+	void remove(int row, String text)
+	{
+		for (String term : new HashSet<>(terms(text)))
+		{
+			Postings termPostings = postings.get(term);
+			if (termPostings != null)
+			{
+				termPostings.removed++;
+			}
+		}
+		removedCount++;
+		removedLength += lengths[row];
+	}
+
+	/**
+	 * @return an independent copy of this index, to be filled further by a snapshot builder
+	 */
+	LexicalIndex copy()
+	{
+		Map<String, Postings> postingsCopy = new HashMap<>(postings.size() * 4 / 3 + 1);
+		postings.forEach((term, termPostings) -> postingsCopy.put(term, termPostings.copy()));
+		return new LexicalIndex(postingsCopy, lengths.clone(), size, totalLength, removedCount, removedLength);
+	}
+
+	/**
+	 * Rank the rows containing any of the query terms with BM25.
+	 *
+	 * @param queryTerms terms of the query, see {@link #terms(String)}
+	 * @param maxResults maximum number of results
+	 * @return the hits, best first
+	 */
+	List<Hit> search(List<String> queryTerms, int maxResults)
+	{
+		int liveCount = size - removedCount;
+		if (liveCount <= 0 || maxResults <= 0)
+		{
+			return List.of();
+		}
+		double averageLength = Math.max(1, (double)(totalLength - removedLength) / liveCount);
+		Map<Integer, double[]> scores = new HashMap<>();
+		for (String term : new LinkedHashSet<>(queryTerms))
+		{
+			Postings termPostings = postings.get(term);
+			if (termPostings == null)
+			{
+				continue;
+			}
+			int documentFrequency = termPostings.size - termPostings.removed;
+			double idf = Math.log(1 + (liveCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+			for (int i = 0; i < termPostings.size; i++)
+			{
+				int row = termPostings.rows[i];
+				int frequency = termPostings.frequencies[i];
+				double score = idf * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * lengths[row] / averageLength));
+				scores.computeIfAbsent(Integer.valueOf(row), key -> new double[1])[0] += score;
+			}
+		}
+		PriorityQueue<Hit> best = new PriorityQueue<>(Comparator.comparingDouble(Hit::score));
+		scores.forEach((row, score) -> {
+			if (best.size() < maxResults || score[0] > best.peek().score())
+			{
+				best.add(new Hit(row.intValue(), score[0]));
+				if (best.size() > maxResults)
+				{
+					best.poll();
+				}
+			}
+		});
+		List<Hit> hits = new ArrayList<>(best);
+		hits.sort(Comparator.comparingDouble(Hit::score).reversed());
+		return hits;
+	}
+
+	/**
+	 * @return number of distinct terms
+	 */
+	int termCount()
+	{
+		return postings.size();
+	}
+
+	/**
+	 * @return approximate memory held by the postings, in bytes
+	 */
+	long estimateMemoryUsage()
+	{
+		long bytes = (long)lengths.length * Integer.BYTES;
+		for (Map.Entry<String, Postings> entry : postings.entrySet())
+		{
+			bytes += 64 + 2L * entry.getKey().length() + 2L * entry.getValue().rows.length * Integer.BYTES;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Rows containing a term with the term frequency per row, in row order.
+	 */
+	private static final class Postings
+	{
+		int[] rows = new int[4];
+		int[] frequencies = new int[4];
+		int size;
+		int removed; // tombstoned rows among them
+
+		void add(int row, int frequency)
+		{
+			if (size == rows.length)
+			{
+				rows = Arrays.copyOf(rows, size * 2);
+				frequencies = Arrays.copyOf(frequencies, size * 2);
+			}
+			rows[size] = row;
+			frequencies[size] = frequency;
+			size++;
+		}
+
+		Postings copy()
+		{
+			Postings copy = new Postings();
+			copy.rows = Arrays.copyOf(rows, Math.max(4, size));
+			copy.frequencies = Arrays.copyOf(frequencies, Math.max(4, size));
+			copy.size = size;
+			copy.removed = removed;
+			return copy;
+		}
+	}
+}
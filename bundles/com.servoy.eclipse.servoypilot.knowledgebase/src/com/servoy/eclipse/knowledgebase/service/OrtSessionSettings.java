@@ -0,0 +1,114 @@
+/*
+ This file belongs to the Servoy development and deployment environment, Copyright (C) 1997-2025 Servoy BV
+
+ This program is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Affero General Public License as published by the Free
+ Software Foundation; either version 3 of the License, or (at your option) any
+ later version.
+
+ This program is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License along
+ with this program; if not, see http://www.gnu.org/licenses or write to the Free
+ Software Foundation,Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301
+*/
+
+package com.servoy.eclipse.knowledgebase.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import ai.onnxruntime.OrtSession.SessionOptions.ExecutionMode;
+import ai.onnxruntime.OrtSession.SessionOptions.OptLevel;
+
+/**
+ * Tuning of the ONNX Runtime sessions running the embedding model and tokenizer.
+ * Configured through the knowledge base preferences, see {@link com.servoy.eclipse.knowledgebase.preferences.KnowledgeBasePreferences}.
+ *
+ * @param intraOpThreads threads used inside one operator, 0 lets ONNX Runtime use all physical cores
+ * @param interOpThreads threads running independent operators in parallel execution mode, 0 for the ONNX Runtime default
+ * @param optimizationLevel graph optimizations applied when the session is created
+ * @param memoryPattern reuse the memory allocation pattern of previous runs with the same input shapes
+ * @param cpuArena use the arena allocator for CPU memory instead of allocating per run
+ * @param executionMode run operators one at a time or independent operators in parallel
+ *
+ * @since 2026.3
+ */
+public record OrtSessionSettings(int intraOpThreads, int interOpThreads, OptLevel optimizationLevel, boolean memoryPattern, boolean cpuArena,
+	ExecutionMode executionMode)
+{
+	/**
+	 * The ONNX Runtime defaults.
+	 */
+	public static final OrtSessionSettings DEFAULT = new OrtSessionSettings(0, 0, OptLevel.ALL_OPT, true, true, ExecutionMode.SEQUENTIAL);
+
+	/**
+	 * Create session options with these settings; the caller must close them.
+	 */
+	public OrtSession.SessionOptions toSessionOptions() throws OrtException
+	{
+		OrtSession.SessionOptions options = new OrtSession.SessionOptions();
+		try
+		{
+			if (intraOpThreads > 0)
+			{
+				options.setIntraOpNumThreads(intraOpThreads);
+			}
+			if (interOpThreads > 0)
+			{
+				options.setInterOpNumThreads(interOpThreads);
+			}
+			options.setOptimizationLevel(optimizationLevel);
+			options.setMemoryPatternOptimization(memoryPattern);
+			options.setCPUArenaAllocator(cpuArena);
+			options.setExecutionMode(executionMode);
+			return options;
+		}
+		catch (OrtException e)
+		{
+			options.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Configurations worth comparing on this machine: the given settings plus thread count, execution mode
+	 * and allocator variations of it.
+	 *
+	 * @param current the configured settings, always the first candidate
+	 * @return the distinct candidate settings
+	 */
+	public static List<OrtSessionSettings> benchmarkCandidates(OrtSessionSettings current)
+	{
+		int cores = Runtime.getRuntime().availableProcessors();
+		Set<OrtSessionSettings> candidates = new LinkedHashSet<>();
+		candidates.add(current);
+		for (int threads : new int[] { 1, 2, Math.max(1, cores / 2), cores })
+		{
+			if (threads <= cores)
+			{
+				candidates.add(new OrtSessionSettings(threads, current.interOpThreads, current.optimizationLevel, current.memoryPattern,
+					current.cpuArena, current.executionMode));
+			}
+		}
+		candidates.add(new OrtSessionSettings(current.intraOpThreads, current.interOpThreads, current.optimizationLevel, current.memoryPattern,
+			current.cpuArena, current.executionMode == ExecutionMode.SEQUENTIAL ? ExecutionMode.PARALLEL : ExecutionMode.SEQUENTIAL));
+		candidates.add(new OrtSessionSettings(current.intraOpThreads, current.interOpThreads, current.optimizationLevel, !current.memoryPattern,
+			!current.cpuArena, current.executionMode));
+		return new ArrayList<>(candidates);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "intra-op threads " + (intraOpThreads > 0 ? String.valueOf(intraOpThreads) : "auto") + ", inter-op threads " +
+			(interOpThreads > 0 ? String.valueOf(interOpThreads) : "auto") + ", " + optimizationLevel + ", " + executionMode +
+			(memoryPattern ? ", memory pattern" : "") + (cpuArena ? ", arena" : "");
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ This file belongs to the Servoy development and deployment environment, Copyright (C) 1997-2025 Servoy BV
+
+ This program is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Affero General Public License as published by the Free
+ Software Foundation; either version 3 of the License, or (at your option) any
+ later version.
+
+ This program is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License along
+ with this program; if not, see http://www.gnu.org/licenses or write to the Free
+ Software Foundation,Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301
+*/
+
+package com.servoy.eclipse.knowledgebase.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.sablo.specification.Package.IPackageReader;
+
+import com.servoy.eclipse.model.util.ServoyLog;
+
+/**
+ * Runs knowledge-base package I/O (manifest checks, list and text file reads) on a bounded pool of daemon threads,
+ * so loading many packages takes about as long as the slowest package instead of the sum of all.
+ * The pool size is the "servoy.knowledgebase.loaderThreads" system property, by default at most 4.
+ *
+ * @since 2026.3
+ */
+public final class PackageTasks
+{
+	private static final int MAX_THREADS = Math.max(1,
+		Integer.getInteger("servoy.knowledgebase.loaderThreads", Math.min(4, Runtime.getRuntime().availableProcessors())).intValue());
+
+	private PackageTasks()
+	{
+	}
+
+	/**
+	 * @param tasks number of tasks that will be submitted
+	 * @return a pool of at most {@link #MAX_THREADS} threads; the caller shuts it down
+	 */
+	static ExecutorService newExecutor(int tasks)
+	{
+		AtomicInteger threadCount = new AtomicInteger();
+		return Executors.newFixedThreadPool(Math.max(1, Math.min(tasks, MAX_THREADS)), runnable -> {
+			Thread thread = new Thread(runnable, "Knowledge base loader " + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Run a task for every package reader in parallel and wait for all of them.
+	 *
+	 * @param readers the package readers
+	 * @param task the task, run once per reader
+	 * @return the results in reader order; null for readers whose task failed
+	 */
+	public static <T> List<T> map(List<IPackageReader> readers, Function<IPackageReader, T> task)
+	{
+		ExecutorService executor = newExecutor(readers.size());
+		try
+		{
+			List<Future<T>> futures = new ArrayList<>(readers.size());
+			for (IPackageReader reader : readers)
+			{
+				futures.add(executor.submit(() -> task.apply(reader)));
+			}
+			List<T> results = new ArrayList<>(readers.size());
+			for (int i = 0; i < futures.size(); i++)
+			{
+				try
+				{
+					results.add(futures.get(i).get());
+				}
+				catch (ExecutionException e)
+				{
+					ServoyLog.logError("[PackageTasks] Task failed for package " + readers.get(i).getPackageName() + ": " + e.getCause().getMessage(),
+						e.getCause());
+					results.add(null);
+				}
+			}
+			return results;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while processing knowledge base packages", e);
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+}
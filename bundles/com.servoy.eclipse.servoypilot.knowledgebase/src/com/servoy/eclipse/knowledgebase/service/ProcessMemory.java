@@ -0,0 +1,86 @@
+/*
+ This file belongs to the Servoy development and deployment environment, Copyright (C) 1997-2025 Servoy BV
+
+ This program is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Affero General Public License as published by the Free
+ Software Foundation; either version 3 of the License, or (at your option) any
+ later version.
+
+ This program is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License along
+ with this program; if not, see http://www.gnu.org/licenses or write to the Free
+ Software Foundation,Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301
+*/
+
+package com.servoy.eclipse.knowledgebase.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Memory figures of the running IDE process for startup diagnostics.
+ *
+ * Native allocations of ONNX Runtime are not visible in the Java heap, so the resident set size (RSS) is logged as well.
+ * RSS and its peak are read from /proc/self/status and are only available on Linux.
+ *
+ * @since 2026.3
+ */
+final class ProcessMemory
+{
+	private static final Path PROC_STATUS = Path.of("/proc/self/status");
+
+	private ProcessMemory()
+	{
+	}
+
+	/**
+	 * @return e.g. "RSS 512 MB (peak 640 MB), heap 180 MB"
+	 */
+	static String describe()
+	{
+		Runtime runtime = Runtime.getRuntime();
+		long heapMB = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+		long rssKB = -1;
+		long peakKB = -1;
+		if (Files.isReadable(PROC_STATUS))
+		{
+			try
+			{
+				List<String> lines = Files.readAllLines(PROC_STATUS);
+				rssKB = statusValue(lines, "VmRSS:");
+				peakKB = statusValue(lines, "VmHWM:");
+			}
+			catch (IOException e)
+			{
+				// only diagnostics, report the heap
+			}
+		}
+		if (rssKB < 0)
+		{
+			return "heap " + heapMB + " MB";
+		}
+		return "RSS " + rssKB / 1024 + " MB (peak " + peakKB / 1024 + " MB), heap " + heapMB + " MB";
+	}
+
+	/**
+	 * Value in kB of a line like "VmRSS:	  123456 kB".
+	 */
+	private static long statusValue(List<String> lines, String key)
+	{
+		for (String line : lines)
+		{
+			if (line.startsWith(key))
+			{
+				String value = line.substring(key.length()).trim();
+				int space = value.indexOf(' ');
+				return Long.parseLong(space > 0 ? value.substring(0, space) : value);
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,415 @@
+/*
+ This file belongs to the Servoy development and deployment environment, Copyright (C) 1997-2025 Servoy BV
+
+ This program is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Affero General Public License as published by the Free
+ Software Foundation; either version 3 of the License, or (at your option) any
+ later version.
+
+ This program is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License along
+ with this program; if not, see http://www.gnu.org/licenses or write to the Free
+ Software Foundation,Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301
+*/
+
+package com.servoy.eclipse.knowledgebase.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import com.servoy.eclipse.model.util.ServoyLog;
+
+/**
+ * Exact-scan vector index over a quantized copy of the store's vectors.
+ *
+ * Each vector is kept either as int8 codes with a per-vector scale (1 byte per dimension) or as float16 values
+ * (2 bytes per dimension). A query is ranked against all quantized vectors, then the best
+ * {@code maxResults * oversampling} candidates are re-scored against the full-precision rows of the {@link VectorStore},
+ * so returned similarities are exact and only the candidate selection is approximate.
+ * The scan touches 4x (int8) or 2x (float16) fewer bytes than a float32 scan.
+ *
+ * Re-scoring reads only a few full-precision rows per query, so when the index is sealed with a vector directory
+ * the store's float32 vectors are moved into a memory-mapped file and only the quantized copy stays on the heap.
+ * Without a directory, or when the file cannot be written, the float32 vectors stay on the heap next to the quantized copy.
+ *
+ * @since 2026.3
+ */
+public class QuantizedVectorIndex implements IVectorIndex
+{
+	public enum Precision
+	{
+		INT8(Byte.BYTES), FLOAT16(Short.BYTES);
+
+		final int bytesPerValue;
+
+		Precision(int bytesPerValue)
+		{
+			this.bytesPerValue = bytesPerValue;
+		}
+	}
+
+	/**
+	 * Recall of the quantized index against an exact float32 scan.
+	 *
+	 * @param k number of results compared per query
+	 * @param queries number of queries measured
+	 * @param quantizedRecall fraction of the exact top-k found when ranking on quantized scores only
+	 * @param rescoredRecall fraction of the exact top-k found after re-scoring the oversampled candidates
+	 * @param quantizedBytes bytes held by the quantized vectors
+	 * @param floatBytes bytes the same vectors take as float32
+	 */
+	public record RecallReport(Precision precision, int k, int queries, double quantizedRecall, double rescoredRecall, long quantizedBytes,
+		long floatBytes)
+	{
+		@Override
+		public String toString()
+		{
+			return String.format(Locale.ROOT, "%s recall@%d over %d queries: quantized %.3f, rescored %.3f; vectors %d KB instead of %d KB", precision, k,
+				queries, quantizedRecall, rescoredRecall, quantizedBytes / 1024, floatBytes / 1024);
+		}
+	}
+
+	private static final int INITIAL_CAPACITY = 256;
+	private static final float[] HALF_TO_FLOAT = new float[1 << 16]; // every half precision value as float, 256 KB
+
+	static
+	{
+		for (int bits = 0; bits < HALF_TO_FLOAT.length; bits++)
+		{
+			HALF_TO_FLOAT[bits] = fromHalf((short)bits);
+		}
+	}
+
+	private final VectorStore store;
+	private final Precision precision;
+	private final int oversampling;
+	private final int dimension;
+	private final Path vectorDirectory;
+
+	private byte[] codes; // INT8
+	private float[] scales; // INT8
+	private short[] halves; // FLOAT16
+	private int size;
+
+	/**
+	 * @param vectorDirectory directory for the memory-mapped float32 vectors once the index is sealed, null to keep them on the heap
+	 */
+	public QuantizedVectorIndex(VectorStore store, Precision precision, int oversampling, Path vectorDirectory)
+	{
+		this.store = store;
+		this.precision = precision;
+		this.oversampling = Math.max(1, oversampling);
+		this.dimension = store.dimension();
+		this.vectorDirectory = vectorDirectory;
+		if (precision == Precision.INT8)
+		{
+			codes = new byte[INITIAL_CAPACITY * dimension];
+			scales = new float[INITIAL_CAPACITY];
+		}
+		else
+		{
+			halves = new short[INITIAL_CAPACITY * dimension];
+		}
+	}
+
+	@Override
+	public void add(int id)
+	{
+		if (id != size)
+		{
+			throw new IllegalArgumentException("Rows must be added in order, expected " + size + " but got " + id);
+		}
+		float[] vector = store.getVector(id);
+		int offset = id * dimension;
+		if (precision == Precision.INT8)
+		{
+			if (offset + dimension > codes.length)
+			{
+				codes = Arrays.copyOf(codes, codes.length * 2);
+				scales = Arrays.copyOf(scales, scales.length * 2);
+			}
+			scales[id] = quantize(vector, codes, offset);
+		}
+		else
+		{
+			if (offset + dimension > halves.length)
+			{
+				halves = Arrays.copyOf(halves, halves.length * 2);
+			}
+			for (int i = 0; i < dimension; i++)
+			{
+				halves[offset + i] = toHalf(vector[i]);
+			}
+		}
+		size++;
+	}
+
+	@Override
+	public List<Match> search(float[] query, int maxResults, double minSimilarity)
+	{
+		List<Match> results = new ArrayList<>();
+		for (Match candidate : approximateSearch(query, maxResults * oversampling))
+		{
+			double similarity = store.dot(candidate.id(), query);
+			if (similarity >= minSimilarity)
+			{
+				results.add(new Match(candidate.id(), similarity));
+			}
+		}
+		results.sort(Comparator.comparingDouble(Match::similarity).reversed());
+		return results.size() > maxResults ? new ArrayList<>(results.subList(0, maxResults)) : results;
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public IVectorIndex copy(VectorStore storeCopy)
+	{
+		QuantizedVectorIndex copy = new QuantizedVectorIndex(storeCopy, precision, oversampling, vectorDirectory);
+		copy.codes = codes != null ? codes.clone() : null;
+		copy.scales = scales != null ? scales.clone() : null;
+		copy.halves = halves != null ? halves.clone() : null;
+		copy.size = size;
+		return copy;
+	}
+
+	@Override
+	public void seal()
+	{
+		if (vectorDirectory != null && !store.isMapped())
+		{
+			try
+			{
+				store.mapVectors(vectorDirectory);
+			}
+			catch (IOException e)
+			{
+				ServoyLog.logError("[ServoyEmbeddings] Full-precision vectors stay on the heap, cannot map them: " + e.getMessage());
+			}
+		}
+	}
+
+	@Override
+	public long estimateMemoryUsage()
+	{
+		return precision == Precision.INT8 ? (long)codes.length + (long)scales.length * Float.BYTES : (long)halves.length * Short.BYTES;
+	}
+
+	/**
+	 * Compare this index with an exact float32 scan, using stored vectors as queries.
+	 * The query's own row is excluded from both result lists.
+	 *
+	 * @param k number of results compared per query
+	 * @param maxQueries maximum number of stored vectors used as query, spread evenly over the store
+	 */
+	public RecallReport measureRecall(int k, int maxQueries)
+	{
+		int queries = Math.min(size, maxQueries);
+		int step = queries > 0 ? size / queries : 1;
+		long expected = 0;
+		long quantizedHits = 0;
+		long rescoredHits = 0;
+		for (int q = 0; q < queries; q++)
+		{
+			int queryRow = q * step;
+			float[] query = store.getVector(queryRow);
+			Set<Integer> exact = ids(ExactVectorIndex.scan(store, size, query, k + 1, -1), queryRow, k);
+			expected += exact.size();
+			quantizedHits += count(exact, ids(approximateSearch(query, k + 1), queryRow, k));
+			rescoredHits += count(exact, ids(search(query, k + 1, -1), queryRow, k));
+		}
+		double quantizedRecall = expected > 0 ? (double)quantizedHits / expected : 1;
+		double rescoredRecall = expected > 0 ? (double)rescoredHits / expected : 1;
+		long quantizedBytes = (long)size * dimension * precision.bytesPerValue + (precision == Precision.INT8 ? (long)size * Float.BYTES : 0);
+		return new RecallReport(precision, k, queries, quantizedRecall, rescoredRecall, quantizedBytes, (long)size * dimension * Float.BYTES);
+	}
+
+	private static Set<Integer> ids(List<Match> matches, int excludedRow, int k)
+	{
+		Set<Integer> ids = new HashSet<>();
+		for (Match match : matches)
+		{
+			if (match.id() != excludedRow && ids.size() < k)
+			{
+				ids.add(Integer.valueOf(match.id()));
+			}
+		}
+		return ids;
+	}
+
+	private static int count(Set<Integer> expected, Set<Integer> found)
+	{
+		int hits = 0;
+		for (Integer id : found)
+		{
+			if (expected.contains(id))
+			{
+				hits++;
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * Rank all vectors on their quantized scores.
+	 *
+	 * @return the best candidates with approximate similarities, in no particular order
+	 */
+	private List<Match> approximateSearch(float[] query, int candidates)
+	{
+		PriorityQueue<Match> best = new PriorityQueue<>(Comparator.comparingDouble(Match::similarity));
+		if (candidates <= 0)
+		{
+			return new ArrayList<>();
+		}
+		byte[] queryCodes = null;
+		float queryScale = 0;
+		float[] decoded = null; // FLOAT16: one row at a time, reused for all rows
+		if (precision == Precision.INT8)
+		{
+			queryCodes = new byte[dimension];
+			queryScale = quantize(query, queryCodes, 0);
+		}
+		else
+		{
+			decoded = new float[dimension];
+		}
+		for (int row = 0; row < size; row++)
+		{
+			double similarity = precision == Precision.INT8 ? queryScale * scales[row] * int8Dot(queryCodes, row * dimension)
+				: float16Dot(query, row * dimension, decoded);
+			if (best.size() < candidates || similarity > best.peek().similarity())
+			{
+				best.add(new Match(row, similarity));
+				if (best.size() > candidates)
+				{
+					best.poll();
+				}
+			}
+		}
+		return new ArrayList<>(best);
+	}
+
+	private int int8Dot(byte[] queryCodes, int offset)
+	{
+		byte[] values = codes;
+		int sum = 0;
+		for (int i = 0; i < dimension; i++)
+		{
+			sum += queryCodes[i] * values[offset + i];
+		}
+		return sum;
+	}
+
+	/**
+	 * Decode a row through the lookup table, then take the dot product with the unrolled {@link VectorMath#dot}.
+	 */
+	private float float16Dot(float[] query, int offset, float[] decoded)
+	{
+		short[] values = halves;
+		float[] table = HALF_TO_FLOAT;
+		for (int i = 0; i < dimension; i++)
+		{
+			decoded[i] = table[values[offset + i] & 0xFFFF];
+		}
+		return VectorMath.dot(decoded, 0, query, 0, dimension);
+	}
+
+	/**
+	 * Symmetric int8 quantization: value = code * scale, with scale = max(|v|) / 127.
+	 *
+	 * @return the scale
+	 */
+	private static float quantize(float[] vector, byte[] target, int offset)
+	{
+		float max = 0;
+		for (float v : vector)
+		{
+			max = Math.max(max, Math.abs(v));
+		}
+		float scale = max > 0 ? max / 127f : 1f;
+		for (int i = 0; i < vector.length; i++)
+		{
+			target[offset + i] = (byte)Math.round(vector[i] / scale);
+		}
+		return scale;
+	}
+
+	/**
+	 * Convert a float to IEEE 754 half precision bits, rounding to nearest even.
+	 */
+	static short toHalf(float value)
+	{
+		int bits = Float.floatToRawIntBits(value);
+		int sign = (bits >>> 16) & 0x8000;
+		int exponent = ((bits >>> 23) & 0xFF) - 127 + 15;
+		int mantissa = bits & 0x7FFFFF;
+		if (exponent >= 0x1F)
+		{
+			// overflow, infinity or NaN
+			return (short)(sign | 0x7C00 | (((bits >>> 23) & 0xFF) == 0xFF && mantissa != 0 ? 0x200 : 0));
+		}
+		if (exponent <= 0)
+		{
+			if (exponent < -10)
+			{
+				return (short)sign;
+			}
+			// subnormal half
+			mantissa |= 0x800000;
+			int shift = 14 - exponent;
+			int half = mantissa >> shift;
+			int remainder = mantissa & ((1 << shift) - 1);
+			int halfway = 1 << (shift - 1);
+			if (remainder > halfway || (remainder == halfway && (half & 1) != 0))
+			{
+				half++;
+			}
+			return (short)(sign | half);
+		}
+		int half = (exponent << 10) | (mantissa >> 13);
+		int remainder = mantissa & 0x1FFF;
+		if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0))
+		{
+			half++; // may carry into the exponent, which is still correct rounding
+		}
+		return (short)(sign | half);
+	}
+
+	/**
+	 * Convert IEEE 754 half precision bits to a float.
+	 */
+	static float fromHalf(short half)
+	{
+		int bits = half & 0xFFFF;
+		int sign = (bits & 0x8000) << 16;
+		int exponent = (bits >>> 10) & 0x1F;
+		int mantissa = bits & 0x3FF;
+		if (exponent == 0)
+		{
+			// zero or subnormal: mantissa * 2^-24
+			float value = mantissa * 0x1p-24f;
+			return sign != 0 ? -value : value;
+		}
+		if (exponent == 0x1F)
+		{
+			return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+		}
+		return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ This file belongs to the Servoy development and deployment environment, Copyright (C) 1997-2025 Servoy BV
+
+ This program is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Affero General Public License as published by the Free
+ Software Foundation; either version 3 of the License, or (at your option) any
+ later version.
+
+ This program is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License along
+ with this program; if not, see http://www.gnu.org/licenses or write to the Free
+ Software Foundation,Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301
+*/
+
+package com.servoy.eclipse.knowledgebase.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of query text to embedding vector, so the action phrases the model keeps asking for
+ * ("create form", "add buttons") skip the tokenizer and transformer.
+ *
+ * Queries are normalized (trimmed, lower case, single spaces) before lookup; the model is uncased, so this does not change
+ * the embedding. The cache is bounded by an estimate of the memory its entries hold and belongs to one model id:
+ * {@link #reset(String, long)} with another model drops all entries.
+ *
+ * @since 2026.3
+ */
+public final class QueryEmbeddingCache
+{
+	private static final int ENTRY_OVERHEAD = 96; // map entry, key object and array headers
+
+	private final LinkedHashMap<String, float[]> entries = new LinkedHashMap<>(64, 0.75f, true);
+	private String modelId;
+	private long budgetBytes;
+	private long usedBytes;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Hit/miss statistics of the cache.
+	 */
+	public record Stats(long hits, long misses, long evictions, int size, long usedBytes, long budgetBytes)
+	{
+		public double hitRate()
+		{
+			long lookups = hits + misses;
+			return lookups == 0 ? 0 : (double)hits / lookups;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format(Locale.ROOT, "%d queries cached (%d of %d KB), hit rate %.1f%% (%d hits, %d misses, %d evictions)", size,
+				usedBytes / 1024, budgetBytes / 1024, hitRate() * 100, hits, misses, evictions);
+		}
+	}
+
+	/**
+	 * @param modelId id of the model producing the embeddings
+	 * @param budgetBytes memory the cached entries may hold; 0 disables the cache
+	 */
+	QueryEmbeddingCache(String modelId, long budgetBytes)
+	{
+		this.modelId = modelId;
+		this.budgetBytes = Math.max(0, budgetBytes);
+	}
+
+	/**
+	 * Normalize a query to its cache key.
+	 */
+	static String normalize(String query)
+	{
+		return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * @param key normalized query
+	 * @return the cached embedding, shared and not to be modified, or null
+	 */
+	synchronized float[] get(String key)
+	{
+		float[] embedding = entries.get(key);
+		if (embedding != null)
+		{
+			hits++;
+		}
+		else
+		{
+			misses++;
+		}
+		return embedding;
+	}
+
+	/**
+	 * Cache an embedding, evicting the least recently used entries beyond the budget.
+	 *
+	 * @param key normalized query
+	 * @param embedding the embedding, not modified afterwards
+	 */
+	synchronized void put(String key, float[] embedding)
+	{
+		long size = entrySize(key, embedding);
+		if (size > budgetBytes)
+		{
+			return;
+		}
+		float[] previous = entries.put(key, embedding);
+		if (previous != null)
+		{
+			usedBytes -= entrySize(key, previous);
+		}
+		usedBytes += size;
+		evictToBudget();
+	}
+
+	/**
+	 * Use the cache for another model or budget. Entries are dropped when the model changes,
+	 * and evicted down to the new budget otherwise.
+	 */
+	synchronized void reset(String newModelId, long newBudgetBytes)
+	{
+		if (!newModelId.equals(modelId))
+		{
+			entries.clear();
+			usedBytes = 0;
+			modelId = newModelId;
+		}
+		budgetBytes = Math.max(0, newBudgetBytes);
+		evictToBudget();
+	}
+
+	synchronized Stats getStats()
+	{
+		return new Stats(hits, misses, evictions, entries.size(), usedBytes, budgetBytes);
+	}
+
+	private void evictToBudget()
+	{
+		Iterator<Map.Entry<String, float[]>> eldest = entries.entrySet().iterator();
+		while (usedBytes > budgetBytes && eldest.hasNext())
+		{
+			Map.Entry<String, float[]> entry = eldest.next();
+			usedBytes -= entrySize(entry.getKey(), entry.getValue());
+			eldest.remove();
+			evictions++;
+		}
+	}
+
+	private static long entrySize(String key, float[] embedding)
+	{
+		return ENTRY_OVERHEAD + 2L * key.length() + (long)Float.BYTES * embedding.length;
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ This file belongs to the Servoy development and deployment environment, Copyright (C) 1997-2025 Servoy BV
+
+ This program is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Affero General Public License as published by the Free
+ Software Foundation; either version 3 of the License, or (at your option) any
+ later version.
+
+ This program is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License along
+ with this program; if not, see http://www.gnu.org/licenses or write to the Free
+ Software Foundation,Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301
+*/
+
+package com.servoy.eclipse.knowledgebase.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A rule body compiled into literal text and {{NAME}} placeholder segments,
+ * so rendering appends the segments instead of searching the whole markdown text for every variable.
+ *
+ * @since 2026.3
+ */
+final class RuleTemplate
+{
+	private static final String OPEN = "{{";
+	private static final String CLOSE = "}}";
+
+	private final String source;
+	private final String[] literals; // literals[i] precedes placeholders[i]; the last literal follows the last placeholder
+	private final String[] placeholders;
+	private final int literalLength;
+
+	private RuleTemplate(String source, String[] literals, String[] placeholders)
+	{
+		this.source = source;
+		this.literals = literals;
+		this.placeholders = placeholders;
+		int length = 0;
+		for (String literal : literals)
+		{
+			length += literal.length();
+		}
+		this.literalLength = length;
+	}
+
+	/**
+	 * Split a rule body into its segments. Placeholders are {{NAME}} with a name of letters, digits and underscores;
+	 * other braces are literal text.
+	 */
+	static RuleTemplate compile(String source)
+	{
+		List<String> literals = new ArrayList<>();
+		List<String> placeholders = new ArrayList<>();
+		int literalStart = 0;
+		int open = source.indexOf(OPEN);
+		while (open >= 0)
+		{
+			int close = source.indexOf(CLOSE, open + OPEN.length());
+			if (close < 0)
+			{
+				break;
+			}
+			String name = source.substring(open + OPEN.length(), close);
+			if (isPlaceholderName(name))
+			{
+				literals.add(source.substring(literalStart, open));
+				placeholders.add(name);
+				literalStart = close + CLOSE.length();
+				open = source.indexOf(OPEN, literalStart);
+			}
+			else
+			{
+				open = source.indexOf(OPEN, open + 1);
+			}
+		}
+		literals.add(source.substring(literalStart));
+		return new RuleTemplate(source, literals.toArray(new String[0]), placeholders.toArray(new String[0]));
+	}
+
+	private static boolean isPlaceholderName(String name)
+	{
+		if (name.isEmpty())
+		{
+			return false;
+		}
+		for (int i = 0; i < name.length(); i++)
+		{
+			char c = name.charAt(i);
+			if (!Character.isLetterOrDigit(c) && c != '_')
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the rule body as read, placeholders not substituted
+	 */
+	String getSource()
+	{
+		return source;
+	}
+
+	boolean hasPlaceholders()
+	{
+		return placeholders.length > 0;
+	}
+
+	/**
+	 * Substitute the placeholders; placeholders without a value are kept as they are.
+	 *
+	 * @param values placeholder values by name
+	 * @return the rendered rule body
+	 */
+	String render(Map<String, String> values)
+	{
+		if (placeholders.length == 0)
+		{
+			return source;
+		}
+		StringBuilder rendered = new StringBuilder(literalLength + placeholders.length * 16);
+		for (int i = 0; i < placeholders.length; i++)
+		{
+			rendered.append(literals[i]);
+			String value = values.get(placeholders[i]);
+			if (value != null)
+			{
+				rendered.append(value);
+			}
+			else
+			{
+				rendered.append(OPEN).append(placeholders[i]).append(CLOSE);
+			}
+		}
+		return rendered.append(literals[placeholders.length]).toString();
+	}
+}
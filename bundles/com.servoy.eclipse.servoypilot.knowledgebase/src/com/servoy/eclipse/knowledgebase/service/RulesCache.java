@@ -1,14 +1,18 @@
 package com.servoy.eclipse.knowledgebase.service;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.servoy.eclipse.model.util.ServoyLog;
 
@@ -16,10 +20,20 @@ import com.servoy.eclipse.model.util.ServoyLog;
  * Stores and manages prompt enrichment rules loaded from SPM packages.
  * Rules are loaded dynamically from knowledge base packages in the workspace.
  * See KnowledgeBaseManager for loading logic.
+ * 
+ * The rules are held in an immutable snapshot that is replaced as a whole on every change, so tool threads never
+ * see a half-loaded set of rules. The snapshot keeps the rules of every package apart: when packages define the same
+ * intent key, the package loaded last wins, and removing that package brings back the rule of the other package. Rule bodies are compiled into {@link RuleTemplate}s once when loaded,
+ * and rendered rules are cached per intent and project name in the snapshot.
  */
 public class RulesCache
 {
-	private static final Map<String, String> rulesCache = new HashMap<>();
+	private static final String RULES_LIST = "rules/rules.list";
+	private static final String PROJECT_NAME = "PROJECT_NAME";
+	private static final int MAX_RENDERED_RULES = 256;
+
+	private static final Object writeLock = new Object(); // serializes snapshot replacements; reads never take it
+	private static volatile Snapshot snapshot = new Snapshot(new LinkedHashMap<>());
 
 	/**
 	 * Get rules for a specific intent
@@ -39,19 +53,7 @@ public class RulesCache
 	 */
 	public static String getRules(String intent, String projectName)
 	{
-		String rules = rulesCache.get(intent);
-		if (rules == null)
-		{
-			return "";
-		}
-		
-		// Replace variables if project name provided
-		if (projectName != null && !projectName.isEmpty())
-		{
-			rules = rules.replace("{{PROJECT_NAME}}", projectName);
-		}
-		
-		return rules;
+		return snapshot.render(intent, projectName);
 	}
 
 	/**
@@ -59,7 +61,7 @@ public class RulesCache
 	 */
 	public static boolean hasRules(String intent)
 	{
-		return rulesCache.containsKey(intent);
+		return snapshot.rules.containsKey(intent);
 	}
 
 	/**
@@ -67,7 +69,7 @@ public class RulesCache
 	 */
 	public static int getRuleCount()
 	{
-		return rulesCache.size();
+		return snapshot.rules.size();
 	}
 
 	/**
@@ -75,19 +77,38 @@ public class RulesCache
 	 */
 	public static String[] getAvailableIntents()
 	{
-		return rulesCache.keySet().toArray(new String[0]);
+		return snapshot.rules.keySet().toArray(new String[0]);
 	}
 
 	/**
 	 * Clear all cached rules.
-	 * Used when reloading knowledge bases.
 	 */
 	public static void clear()
 	{
-		rulesCache.clear();
+		replaceAll(Map.of());
 		ServoyLog.logInfo("[RulesCache] All rules cleared");
 	}
 
+	/**
+	 * Replace all rules at once, used when reloading knowledge bases.
+	 * 
+	 * @param rulesByPackage the rule contents by intent key, per package in load order
+	 */
+	public static void replaceAll(Map<String, Map<String, String>> rulesByPackage)
+	{
+		synchronized (writeLock)
+		{
+			Map<String, Map<String, RuleTemplate>> packages = new LinkedHashMap<>();
+			rulesByPackage.forEach((packageName, rules) -> {
+				if (!rules.isEmpty())
+				{
+					packages.put(packageName, compile(rules, new LinkedHashMap<>()));
+				}
+			});
+			snapshot = new Snapshot(packages);
+		}
+	}
+
 	/**
 	 * Load rules from a package reader (workspace project).
 	 * Reads rules/rules.list to find all .md files to load.
@@ -97,83 +118,271 @@ public class RulesCache
 	 */
 	public static int loadFromPackageReader(org.sablo.specification.Package.IPackageReader reader)
 	{
-		int loadedCount = 0;
-		
+		return addRules(reader.getPackageName(), readFromPackageReader(reader));
+	}
+	
+	/**
+	 * Read the rules of a package reader without adding them, safe to call from loader threads.
+	 * Reads rules/rules.list to find all .md files to read.
+	 * 
+	 * @param reader the package reader
+	 * @return the rule contents by intent key, in list order; empty when the package has no rules
+	 */
+	public static Map<String, String> readFromPackageReader(org.sablo.specification.Package.IPackageReader reader)
+	{
+		Map<String, String> rules = new LinkedHashMap<>();
 		try
 		{
-			String packageName = reader.getPackageName();
-			
-			URL rulesListURL = reader.getUrlForPath("rules/rules.list");
-			if (rulesListURL != null)
+			List<String> ruleFiles = readRulesList(reader);
+			if (ruleFiles != null)
 			{
-				List<String> ruleFiles = new ArrayList<>();
-				try (BufferedReader reader2 = new BufferedReader(
-					new InputStreamReader(rulesListURL.openStream(), StandardCharsets.UTF_8)))
+				for (String ruleFile : ruleFiles)
 				{
-					String line;
-					while ((line = reader2.readLine()) != null)
+					String path = "rules/" + ruleFile;
+					String content = readRule(reader, path);
+					if (content != null)
 					{
-						line = line.trim();
-						if (!line.isEmpty() && !line.startsWith("#") && line.endsWith(".md"))
-						{
-							ruleFiles.add(line);
-						}
+						rules.put(intentKey(path), content);
 					}
 				}
-			
-				for (String ruleFile : ruleFiles)
+			}
+		}
+		catch (Exception e)
+		{
+			ServoyLog.logError("[RulesCache] Failed to load rules from package reader: " + e.getMessage());
+		}
+		return rules;
+	}
+	
+	/**
+	 * Add rules read by {@link #readFromPackageReader(org.sablo.specification.Package.IPackageReader)},
+	 * replacing the rules the package added before. The package becomes the last loaded package,
+	 * so its rules overwrite rules with the same intent key of other packages.
+	 * 
+	 * @param packageName the package the rules were read from
+	 * @param rules the rule contents by intent key
+	 * @return number of rules added
+	 */
+	public static int addRules(String packageName, Map<String, String> rules)
+	{
+		synchronized (writeLock)
+		{
+			Map<String, Map<String, RuleTemplate>> packages = new LinkedHashMap<>(snapshot.packages);
+			boolean replaced = packages.remove(packageName) != null;
+			if (!rules.isEmpty())
+			{
+				packages.put(packageName, compile(rules, new LinkedHashMap<>()));
+			}
+			if (replaced || !rules.isEmpty())
+			{
+				snapshot = new Snapshot(packages);
+			}
+		}
+		if (!rules.isEmpty())
+		{
+			ServoyLog.logInfo("[RulesCache] Loaded " + rules.size() + " rules from package: " + packageName);
+		}
+		return rules.size();
+	}
+	
+	/**
+	 * Remove the rules that a package added. Intent keys that another package also defines get that package's rule back.
+	 * 
+	 * @param packageName the package the rules were read from
+	 * @return number of rules removed
+	 */
+	public static int removeRules(String packageName)
+	{
+		int removedCount = 0;
+		synchronized (writeLock)
+		{
+			Map<String, Map<String, RuleTemplate>> packages = new LinkedHashMap<>(snapshot.packages);
+			Map<String, RuleTemplate> removed = packages.remove(packageName);
+			if (removed != null)
+			{
+				removedCount = removed.size();
+				snapshot = new Snapshot(packages);
+			}
+		}
+		ServoyLog.logInfo("[RulesCache] Removed " + removedCount + " rules of package: " + packageName);
+		return removedCount;
+	}
+	
+	/**
+	 * Apply changed rule files of a loaded package: changed rules are read again, deleted or unlisted rules are removed.
+	 * When rules/rules.list changed, all rules of the package are read again.
+	 * 
+	 * @param reader the package reader
+	 * @param changedPaths changed, added or deleted package paths, e.g. "rules/forms.md"; paths outside rules/ are ignored
+	 * @return number of rules read
+	 */
+	public static int updateFromPackageReader(org.sablo.specification.Package.IPackageReader reader, Collection<String> changedPaths)
+	{
+		if (changedPaths.contains(RULES_LIST))
+		{
+			return loadFromPackageReader(reader);
+		}
+		
+		int loadedCount = 0;
+		try
+		{
+			List<String> ruleFiles = readRulesList(reader);
+			synchronized (writeLock)
+			{
+				Map<String, Map<String, RuleTemplate>> packages = new LinkedHashMap<>(snapshot.packages);
+				Map<String, RuleTemplate> rules = new LinkedHashMap<>(packages.getOrDefault(reader.getPackageName(), Map.of()));
+				for (String path : changedPaths)
 				{
-					String path = "rules/" + ruleFile;
-					
-					if (loadRuleFromReader(reader, path))
+					if (!path.startsWith("rules/") || !path.endsWith(".md"))
+					{
+						continue;
+					}
+					String content = ruleFiles != null && ruleFiles.contains(path.substring("rules/".length())) ? readRule(reader, path) : null;
+					if (content != null)
 					{
+						rules.put(intentKey(path), RuleTemplate.compile(content));
 						loadedCount++;
 					}
+					else if (rules.remove(intentKey(path)) != null)
+					{
+						ServoyLog.logInfo("[RulesCache] Removed rule " + path + " of package: " + reader.getPackageName());
+					}
 				}
-			
-				ServoyLog.logInfo("[RulesCache] Loaded " + loadedCount + " rules from package: " + packageName);
+				if (rules.isEmpty())
+				{
+					packages.remove(reader.getPackageName());
+				}
+				else
+				{
+					packages.put(reader.getPackageName(), rules); // keeps the package's load order when it was loaded before
+				}
+				snapshot = new Snapshot(packages);
 			}
 		}
 		catch (Exception e)
 		{
-			ServoyLog.logError("[RulesCache] Failed to load rules from package reader: " + e.getMessage());
+			ServoyLog.logError("[RulesCache] Failed to update rules from package reader: " + e.getMessage());
 		}
-		
 		return loadedCount;
 	}
 	
 	/**
-	 * Load a single rule from a package reader.
+	 * Read the .md file names listed in rules/rules.list of a package.
 	 * 
-	 * @param reader the package reader
-	 * @param path the path to the rule file (e.g., "rules/forms.md")
-	 * @return true if loaded successfully
+	 * @return the file names, relative to the rules folder, or null when the package has no rules list
+	 */
+	private static List<String> readRulesList(org.sablo.specification.Package.IPackageReader reader) throws IOException
+	{
+		URL rulesListURL = reader.getUrlForPath(RULES_LIST);
+		if (rulesListURL == null)
+		{
+			return null;
+		}
+		List<String> ruleFiles = new ArrayList<>();
+		try (BufferedReader reader2 = new BufferedReader(
+			new InputStreamReader(rulesListURL.openStream(), StandardCharsets.UTF_8)))
+		{
+			String line;
+			while ((line = reader2.readLine()) != null)
+			{
+				line = line.trim();
+				if (!line.isEmpty() && !line.startsWith("#") && line.endsWith(".md"))
+				{
+					ruleFiles.add(line);
+				}
+			}
+		}
+		return ruleFiles;
+	}
+	
+	/**
+	 * Intent key of a rule file: the upper cased file name without extension, e.g. "rules/forms.md" -> "FORMS".
 	 */
-	private static boolean loadRuleFromReader(org.sablo.specification.Package.IPackageReader reader, String path)
+	private static String intentKey(String path)
+	{
+		String filename = path.substring(path.lastIndexOf('/') + 1);
+		String baseName = filename.substring(0, filename.lastIndexOf('.'));
+		return baseName.toUpperCase();
+	}
+	
+	/**
+	 * Compile rule contents into templates, overwriting templates with the same intent key.
+	 * 
+	 * @param rules the rule contents by intent key
+	 * @param templates receives the compiled rules
+	 * @return templates
+	 */
+	private static Map<String, RuleTemplate> compile(Map<String, String> rules, Map<String, RuleTemplate> templates)
+	{
+		rules.forEach((intent, content) -> templates.put(intent, RuleTemplate.compile(content)));
+		return templates;
+	}
+	
+	/**
+	 * Read a single rule file from a package reader.
+	 * 
+	 * @return the rule content, or null when the file does not exist or cannot be read
+	 */
+	private static String readRule(org.sablo.specification.Package.IPackageReader reader, String path)
 	{
 		try
 		{
 			URL fileURL = reader.getUrlForPath(path);
 			if (fileURL == null)
 			{
-				return false;
+				return null;
 			}
 			
-			String filename = path.substring(path.lastIndexOf('/') + 1);
-			String baseName = filename.substring(0, filename.lastIndexOf('.'));
-			String intentKey = baseName.toUpperCase();
-			
 			try (InputStream is = fileURL.openStream())
 			{
-				String content = new String(is.readAllBytes(), StandardCharsets.UTF_8);
-				rulesCache.put(intentKey, content); // Overwrites if key exists
-				return true;
+				return new String(is.readAllBytes(), StandardCharsets.UTF_8);
 			}
 		}
 		catch (Exception e)
 		{
 			ServoyLog.logError("[RulesCache] Failed to load rule from " + path + ": " + e.getMessage(), e);
 		}
-		return false;
+		return null;
+	}
+	
+	/**
+	 * Immutable set of compiled rules, with a cache of rendered rules that lives as long as the snapshot.
+	 */
+	private static final class Snapshot
+	{
+		final Map<String, Map<String, RuleTemplate>> packages; // the rules of each package, in load order
+		final Map<String, RuleTemplate> rules; // by intent key, the package loaded last wins
+		private final Map<RenderKey, String> rendered = new ConcurrentHashMap<>();
+
+		Snapshot(Map<String, Map<String, RuleTemplate>> packages)
+		{
+			this.packages = Collections.unmodifiableMap(packages);
+			Map<String, RuleTemplate> rules = new LinkedHashMap<>();
+			packages.values().forEach(rules::putAll);
+			this.rules = Collections.unmodifiableMap(rules);
+		}
+
+		String render(String intent, String projectName)
+		{
+			RuleTemplate template = rules.get(intent);
+			if (template == null)
+			{
+				return "";
+			}
+			// Replace variables if project name provided
+			if (projectName == null || projectName.isEmpty() || !template.hasPlaceholders())
+			{
+				return template.getSource();
+			}
+			if (rendered.size() >= MAX_RENDERED_RULES)
+			{
+				rendered.clear(); // project names change rarely, only many renamed projects get here
+			}
+			return rendered.computeIfAbsent(new RenderKey(intent, projectName), key -> template.render(Map.of(PROJECT_NAME, projectName)));
+		}
+	}
+
+	private record RenderKey(String intent, String projectName)
+	{
 	}
 }
@@ -1,19 +1,42 @@
 package com.servoy.eclipse.knowledgebase.service;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
 
+import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.URIUtil;
 import org.osgi.framework.Bundle;
 import org.sablo.specification.Package.IPackageReader;
 
+import com.servoy.eclipse.knowledgebase.Activator;
+import com.servoy.eclipse.knowledgebase.preferences.KnowledgeBasePreferences;
 import com.servoy.eclipse.model.util.ServoyLog;
 
 import ai.onnxruntime.OnnxTensor;
@@ -21,32 +44,86 @@ import ai.onnxruntime.OrtEnvironment;
 import ai.onnxruntime.OrtException;
 import ai.onnxruntime.OrtSession;
 import ai.onnxruntime.extensions.OrtxPackage;
-import dev.langchain4j.data.document.Metadata;
-import dev.langchain4j.data.embedding.Embedding;
-import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.store.embedding.EmbeddingMatch;
-import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
 
 /**
  * Main service for managing embeddings and semantic search for Servoy context.
- * Uses local ONNX-based embedding model (BGE-small-en-v1.5) with ONNX tokenizer.
+ * Uses local ONNX-based embedding model (BGE-small-en-v1.5). Texts are tokenized in-process by a WordPiece tokenizer
+ * when it matches the ONNX tokenizer model, otherwise by that ONNX tokenizer.
  */
 public class ServoyEmbeddingService
 {
 
 	private static ServoyEmbeddingService instance;
+	private static final String MODEL_ID = "bge-small-en-v1.5";
+	private static final String RERANKER_BUNDLE = "onnx-models-ms-marco-minilm";
+	private static final String RERANKER_DIR = "models/ms-marco-MiniLM-L-6-v2/";
+	private static final int EMBEDDING_DIMENSION = 384;
 	private static final double SCORE_THRESHOLD = 0.8; // Minimum similarity score percentage
+	private static final double LEXICAL_SCORE_THRESHOLD = 0.7; // Minimum similarity score percentage of results that also match query words
+	private static final int DEFAULT_BATCH_SIZE = 32; // Texts per model run when loading knowledge bases
+	private static final String EMBEDDINGS_LIST = "embeddings/embeddings.list";
+	private static final int MAX_TOKENS = 512; // model context length, including [CLS] and [SEP]
+	private static final long[] ATTENTION_ALL = filled(MAX_TOKENS, 1);
+	private static final long[] TOKEN_TYPE_FIRST = new long[MAX_TOKENS];
+	private static final String[] TOKENIZER_PARITY_TEXTS = { "create form", "Add buttons to the form's header!",
+		"create a relation between orders and order_lines", "Style the component (primary color) with CSS/LESS", "Café naïve résumé",
+		"onAction -> foundset.newRecord(); databaseManager.saveData()", "  multiple   spaces\tand\ttabs  ",
+		"unbelievably longIdentifierNamesWithCamelCaseAndNumbers12345" };
+	private static final int MAX_POOLED_QUERY_TENSORS = 4; // per padded length
+	private static final int BENCHMARK_TEXTS = 256;
+	private static final int BENCHMARK_RUNS = 3;
+	private static final String[] BENCHMARK_PHRASES = { "create a form with a table of customers", "add a button that saves the record",
+		"create a relation between orders and order lines", "style the component with a primary color", "show a dialog when validation fails" };
 
 	private OrtEnvironment env;
 	private OrtSession modelSession;
 	private OrtSession tokenizerSession;
-	private final InMemoryEmbeddingStore<TextSegment> embeddingStore;
-	private int embeddingCount = 0;
+	private String modelFile;
+	private volatile WordPieceTokenizer wordPieceTokenizer; // null: tokenize with the ONNX tokenizer session
+	private volatile CrossEncoderReranker reranker; // null: no cross-encoder installed or reranking disabled
+	private int rerankCandidates;
+	private int rerankBudgetMillis;
+	// per padded length, tensors for single-text runs; at most one in use per concurrently embedding thread
+	private final Map<Integer, BlockingQueue<EmbeddingTensors>> queryTensorPool = new ConcurrentHashMap<>();
+	private final Object writeLock = new Object(); // serializes snapshot rebuilds; searches never take it
+	private volatile KnowledgeSnapshot snapshot;
+	private EmbeddingCache embeddingCache;
+	private Path vectorDirectory; // memory-mapped float32 vectors of quantized indexes, null without a workspace
+	private final QueryEmbeddingCache queryCache = new QueryEmbeddingCache(MODEL_ID, 0);
+	private int batchSize = Integer.getInteger("servoy.knowledgebase.embeddingBatchSize", DEFAULT_BATCH_SIZE).intValue();
 
 	public ServoyEmbeddingService()
 	{
-		this.embeddingStore = new InMemoryEmbeddingStore<>();
+		this.snapshot = KnowledgeSnapshot.empty(EMBEDDING_DIMENSION, this::createVectorIndex);
+	}
+
+	private static long[] filled(int length, long value)
+	{
+		long[] array = new long[length];
+		Arrays.fill(array, value);
+		return array;
+	}
+
+	/**
+	 * Create the vector index. By default an HNSW graph over the float32 vectors; with the system property
+	 * servoy.knowledgebase.quantization set to "int8" or "float16" a quantized scan with full-precision re-scoring
+	 * (oversampling factor from servoy.knowledgebase.quantization.oversampling, default 4), which keeps the float32 vectors
+	 * in memory-mapped files once the workspace state location is known.
+	 * Setting servoy.knowledgebase.quantization.recall to true logs the recall of the quantized indexes after each reload.
+	 */
+	private IVectorIndex createVectorIndex(VectorStore store)
+	{
+		String quantization = System.getProperty("servoy.knowledgebase.quantization", "none");
+		for (QuantizedVectorIndex.Precision precision : QuantizedVectorIndex.Precision.values())
+		{
+			if (precision.name().equalsIgnoreCase(quantization))
+			{
+				ServoyLog.logInfo("[ServoyEmbeddings] Using " + precision + " quantized vector index");
+				return new QuantizedVectorIndex(store, precision, Integer.getInteger("servoy.knowledgebase.quantization.oversampling", 4).intValue(),
+					vectorDirectory);
+			}
+		}
+		return new HnswVectorIndex(store, HnswVectorIndex.Settings.fromSystemProperties());
 	}
 
 	/**
@@ -56,10 +133,12 @@ public class ServoyEmbeddingService
 	 */
 	private void initialize()
 	{
-		ServoyLog.logInfo("[ServoyEmbeddings] Initializing ONNX embedding service with ONNX tokenizer...");
+		ServoyLog.logInfo("[ServoyEmbeddings] Initializing ONNX embedding service...");
 
 		try
 		{
+			long start = System.nanoTime();
+			ServoyLog.logInfo("[ServoyEmbeddings] Memory before loading models: " + ProcessMemory.describe());
 			env = OrtEnvironment.getEnvironment();
 
 			ServoyLog.logInfo("[ServoyEmbeddings] Loading ONNX embedding model from bundle...");
@@ -69,31 +148,31 @@ public class ServoyEmbeddingService
 				throw new RuntimeException("Models bundle not found: onnx-models-bge-small-en");
 			}
 
-			URL modelURL = modelsBundle.getEntry("models/bge-small-en-v1.5/model.onnx");
-			if (modelURL == null)
+			// sessions are created from file paths, so ONNX Runtime reads the models itself instead of getting a copy from the Java heap
+			modelFile = resolveModelFile(modelsBundle, "models/bge-small-en-v1.5/model.onnx");
+			OrtSessionSettings sessionSettings = KnowledgeBasePreferences.getSessionSettings();
+			ServoyLog.logInfo("[ServoyEmbeddings] ONNX session settings: " + sessionSettings);
+			try (OrtSession.SessionOptions modelOptions = sessionSettings.toSessionOptions())
 			{
-				throw new RuntimeException("Model file not found in bundle");
+				modelSession = env.createSession(modelFile, modelOptions);
 			}
-			InputStream modelStream = modelURL.openStream();
-			byte[] modelBytes = modelStream.readAllBytes();
-			modelStream.close();
 
-			modelSession = env.createSession(modelBytes);
-			URL tokenizerURL = modelsBundle.getEntry("models/bge-small-en-v1.5/tokenizer.onnx");
-			if (tokenizerURL == null)
-			{
-				throw new RuntimeException("Tokenizer file not found in bundle");
-			}
-			InputStream tokenizerStream = tokenizerURL.openStream();
-			byte[] tokenizerBytes = tokenizerStream.readAllBytes();
-			tokenizerStream.close();
-
-			OrtSession.SessionOptions sessionOptions = new OrtSession.SessionOptions();
+			// not closed: closing the options would unload the custom op library the tokenizer needs
+			OrtSession.SessionOptions sessionOptions = sessionSettings.toSessionOptions();
 			sessionOptions.registerCustomOpLibrary(OrtxPackage.getLibraryPath());
-			tokenizerSession = env.createSession(tokenizerBytes, sessionOptions);
-			ServoyLog.logInfo("[ServoyEmbeddings] ONNX model and tokenizer loaded successfully");
+			tokenizerSession = env.createSession(resolveModelFile(modelsBundle, "models/bge-small-en-v1.5/tokenizer.onnx"), sessionOptions);
+			ServoyLog.logInfo("[ServoyEmbeddings] ONNX model and tokenizer loaded successfully in " + (System.nanoTime() - start) / 1_000_000 +
+				" ms, memory after loading models: " + ProcessMemory.describe());
+
+			initializeJavaTokenizer(modelsBundle);
+			initializeReranker(sessionSettings);
+			// a replaced model file (same name, different weights) must not reuse vectors of the old one
+			String modelFingerprint = MODEL_ID + '@' + Files.size(Path.of(modelFile)) + '-' + Files.getLastModifiedTime(Path.of(modelFile)).toMillis();
+			initializeCache(modelFingerprint);
+			queryCache.reset(modelFingerprint, KnowledgeBasePreferences.getQueryCacheBudget());
 			
-			ServoyLog.logInfo("[ServoyEmbeddings] Embedding service ready! Knowledge bases will be loaded from workspace packages.");
+			ServoyLog.logInfo("[ServoyEmbeddings] Embedding service ready, using the " +
+				(wordPieceTokenizer != null ? "in-process WordPiece" : "ONNX") + " tokenizer! Knowledge bases will be loaded from workspace packages.");
 		}
 		catch (Throwable e)
 		{
@@ -102,6 +181,143 @@ public class ServoyEmbeddingService
 		}
 	}
 
+	/**
+	 * Load the in-process WordPiece tokenizer when enabled and the models bundle ships a vocab.txt.
+	 * It is only used when it produces exactly the ids of the ONNX tokenizer for a set of sample texts;
+	 * otherwise every text keeps going through the ONNX tokenizer session.
+	 */
+	private void initializeJavaTokenizer(Bundle modelsBundle)
+	{
+		if (!KnowledgeBasePreferences.isJavaTokenizerEnabled())
+		{
+			return;
+		}
+		URL vocabURL = modelsBundle.getEntry("models/bge-small-en-v1.5/vocab.txt");
+		if (vocabURL == null)
+		{
+			ServoyLog.logInfo("[ServoyEmbeddings] No vocab.txt in models bundle, using the ONNX tokenizer");
+			return;
+		}
+		try
+		{
+			WordPieceTokenizer tokenizer;
+			try (InputStream is = vocabURL.openStream())
+			{
+				tokenizer = WordPieceTokenizer.load(is, MAX_TOKENS);
+			}
+
+			for (String text : TOKENIZER_PARITY_TEXTS)
+			{
+				long[] expected = tokenizeWithOnnx(text).inputIds();
+				long[] actual = tokenizer.encode(text);
+				if (!Arrays.equals(expected, actual))
+				{
+					ServoyLog.logInfo("[ServoyEmbeddings] In-process tokenizer differs from the ONNX tokenizer for \"" + text + "\": " +
+						Arrays.toString(actual) + " instead of " + Arrays.toString(expected) + ", using the ONNX tokenizer");
+					return;
+				}
+			}
+			wordPieceTokenizer = tokenizer;
+		}
+		catch (Exception e)
+		{
+			ServoyLog.logError("[ServoyEmbeddings] Failed to load in-process tokenizer, using the ONNX tokenizer: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Load the cross-encoder reranker when enabled and its models bundle is installed. The bundle is optional,
+	 * without it searches return the bi-encoder ranking.
+	 */
+	private void initializeReranker(OrtSessionSettings sessionSettings)
+	{
+		if (!KnowledgeBasePreferences.isRerankerEnabled())
+		{
+			return;
+		}
+		Bundle rerankerBundle = Platform.getBundle(RERANKER_BUNDLE);
+		if (rerankerBundle == null)
+		{
+			ServoyLog.logInfo("[ServoyEmbeddings] No cross-encoder bundle " + RERANKER_BUNDLE + " installed, search results are not reranked");
+			return;
+		}
+		try
+		{
+			long start = System.nanoTime();
+			URL vocabURL = rerankerBundle.getEntry(RERANKER_DIR + "vocab.txt");
+			if (vocabURL == null)
+			{
+				throw new IOException("Model file not found in bundle: " + RERANKER_DIR + "vocab.txt");
+			}
+			WordPieceTokenizer tokenizer;
+			try (InputStream is = vocabURL.openStream())
+			{
+				tokenizer = WordPieceTokenizer.load(is, MAX_TOKENS);
+			}
+			OrtSession session;
+			try (OrtSession.SessionOptions options = sessionSettings.toSessionOptions())
+			{
+				session = env.createSession(resolveModelFile(rerankerBundle, RERANKER_DIR + "model.onnx"), options);
+			}
+			CrossEncoderReranker crossEncoder = new CrossEncoderReranker(env, session, tokenizer);
+			crossEncoder.warmUp();
+			rerankCandidates = KnowledgeBasePreferences.getRerankCandidates();
+			rerankBudgetMillis = KnowledgeBasePreferences.getRerankBudgetMillis();
+			reranker = crossEncoder;
+			ServoyLog.logInfo("[ServoyEmbeddings] Cross-encoder reranker loaded in " + (System.nanoTime() - start) / 1_000_000 + " ms, reranking " +
+				rerankCandidates + " candidates within " + rerankBudgetMillis + " ms: " + crossEncoder.getStats());
+		}
+		catch (Exception e)
+		{
+			ServoyLog.logError("[ServoyEmbeddings] Failed to load cross-encoder reranker, search results are not reranked: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Resolve a model file inside the models bundle to a path on disk.
+	 * When the bundle is a jar the entry is extracted once to the OSGi bundle cache.
+	 *
+	 * @param bundle the models bundle
+	 * @param entry path of the model file in the bundle
+	 * @return absolute path of the model file
+	 */
+	private static String resolveModelFile(Bundle bundle, String entry) throws IOException, URISyntaxException
+	{
+		URL entryURL = bundle.getEntry(entry);
+		if (entryURL == null)
+		{
+			throw new RuntimeException("Model file not found in bundle: " + entry);
+		}
+		return URIUtil.toFile(URIUtil.toURI(FileLocator.toFileURL(entryURL))).getAbsolutePath();
+	}
+
+	/**
+	 * Create the persistent embedding cache in the plugin's workspace metadata area.
+	 * Without a workspace (or when the state location cannot be created) knowledge bases are always embedded from scratch.
+	 * Also sets the directory for the memory-mapped vectors and removes the files a previous session left behind.
+	 *
+	 * @param modelFingerprint the model name with the size and modification time of the model file, cached vectors of any other model are not used
+	 */
+	private void initializeCache(String modelFingerprint)
+	{
+		try
+		{
+			Bundle bundle = Platform.getBundle(Activator.PLUGIN_ID);
+			if (bundle != null)
+			{
+				Path cacheDir = Platform.getStateLocation(bundle).append("embeddings").toPath();
+				embeddingCache = new EmbeddingCache(cacheDir, modelFingerprint);
+				embeddingCache.prune();
+				vectorDirectory = Platform.getStateLocation(bundle).append("vectors").toPath();
+				VectorStore.deleteMappedFiles(vectorDirectory);
+			}
+		}
+		catch (Exception e)
+		{
+			ServoyLog.logError("[ServoyEmbeddings] Embedding cache disabled: " + e.getMessage());
+		}
+	}
+
 	/**
 	 * Get singleton instance (lazy initialization).
 	 * Models are initialized on first call.
@@ -127,19 +343,82 @@ public class ServoyEmbeddingService
 		try
 		{
 			float[] embeddingArray = generateEmbedding(text);
-			Embedding embedding = new Embedding(embeddingArray);
 
-			Metadata metadata = Metadata.from(metadataKey, metadataValue);
-			TextSegment segment = TextSegment.from(text, metadata);
-			embeddingStore.add(embedding, segment);
-			embeddingCount++;
+			synchronized (writeLock)
+			{
+				KnowledgeSnapshot.Builder builder = snapshot.toBuilder();
+				builder.add(embeddingArray, text, metadataKey, metadataValue, KnowledgeSnapshot.ADDED_SOURCE);
+				snapshot = builder.build();
+			}
 		}
 		catch (Exception e)
 		{
 			ServoyLog.logError("[ServoyEmbeddings] Failed to embed text: " + e.getMessage());
 		}
 	}
-	
+
+	/**
+	 * Compute embeddings for a list of texts, running the model over padded mini-batches.
+	 * When a batch fails, its texts are retried one by one so a single bad line does not drop the whole batch.
+	 *
+	 * @param texts the texts to embed
+	 * @return the embeddings in text order; entries are null for texts that could not be embedded
+	 */
+	private float[][] computeEmbeddings(List<String> texts)
+	{
+		float[][] embeddings = new float[texts.size()][];
+		for (int start = 0; start < texts.size(); start += batchSize)
+		{
+			List<String> batch = texts.subList(start, Math.min(start + batchSize, texts.size()));
+			try
+			{
+				System.arraycopy(generateEmbeddings(batch), 0, embeddings, start, batch.size());
+			}
+			catch (Exception e)
+			{
+				ServoyLog.logError("[ServoyEmbeddings] Failed to embed batch, falling back to single texts: " + e.getMessage());
+				for (int i = 0; i < batch.size(); i++)
+				{
+					try
+					{
+						embeddings[start + i] = generateEmbedding(batch.get(i));
+					}
+					catch (Exception ex)
+					{
+						ServoyLog.logError("[ServoyEmbeddings] Failed to embed text: " + ex.getMessage());
+					}
+				}
+			}
+		}
+		return embeddings;
+	}
+
+	/**
+	 * Add precomputed embeddings to a new snapshot, all with the same metadata.
+	 *
+	 * @param builder the snapshot being built
+	 * @param source the file the texts come from, see {@link KnowledgeSnapshot#source(String, String)}
+	 * @param texts the embedded texts
+	 * @param embeddings the embeddings in text order; null entries are skipped
+	 * @param metadataKey the metadata key stored with every text
+	 * @param metadataValue the metadata value stored with every text
+	 * @return number of texts added
+	 */
+	private static int addEmbeddings(KnowledgeSnapshot.Builder builder, String source, List<String> texts, float[][] embeddings,
+		String metadataKey, String metadataValue)
+	{
+		int count = 0;
+		for (int i = 0; i < texts.size(); i++)
+		{
+			if (embeddings[i] != null)
+			{
+				builder.add(embeddings[i], texts.get(i), metadataKey, metadataValue, source);
+				count++;
+			}
+		}
+		return count;
+	}
+
 	/**
 	 * Extract category/intent key from file path.
 	 * E.g., "embeddings/forms.txt" -> "FORMS"
@@ -155,145 +434,324 @@ public class ServoyEmbeddingService
 	}
 
 	/**
-	 * Generate embedding for text using ONNX model with ONNX tokenizer
+	 * Generate embedding for text using the ONNX model, tokenized by {@link #tokenize(String)}.
 	 */
 	private float[] generateEmbedding(String text) throws OrtException
 	{
-		Map<String, OnnxTensor> tokenizerInputs = new HashMap<>();
-		String[] textArray = new String[] { text };
-		OnnxTensor textTensor = OnnxTensor.createTensor(env, textArray);
-		tokenizerInputs.put("text", textTensor);
-
-		OrtSession.Result tokenizerResults = tokenizerSession.run(tokenizerInputs);
-
-		long[] inputIds = (long[])tokenizerResults.get(0).getValue();
-		long[] attentionMask = (long[])tokenizerResults.get(2).getValue();
-		long[] tokenTypeIds = (long[])tokenizerResults.get(1).getValue();
-		textTensor.close();
-		tokenizerResults.close();
-
-		long[][] inputIdsArray = new long[][] { inputIds };
-		long[][] attentionMaskArray = new long[][] { attentionMask };
-		long[][] tokenTypeIdsArray = new long[][] { tokenTypeIds };
-
-		OnnxTensor inputIdsTensor = OnnxTensor.createTensor(env, inputIdsArray);
-		OnnxTensor attentionMaskTensor = OnnxTensor.createTensor(env, attentionMaskArray);
-		OnnxTensor tokenTypeIdsTensor = OnnxTensor.createTensor(env, tokenTypeIdsArray);
-
-		Map<String, OnnxTensor> modelInputs = new HashMap<>();
-		modelInputs.put("input_ids", inputIdsTensor);
-		modelInputs.put("attention_mask", attentionMaskTensor);
-		modelInputs.put("token_type_ids", tokenTypeIdsTensor);
-
-		OrtSession.Result modelResults = modelSession.run(modelInputs);
-
-		float[][][] output = (float[][][])modelResults.get(0).getValue();
-
-		float[] embedding = meanPooling(output[0], attentionMask);
-
-		normalize(embedding);
-
-		inputIdsTensor.close();
-		attentionMaskTensor.close();
-		tokenTypeIdsTensor.close();
-		modelResults.close();
+		return generateEmbeddings(List.of(text))[0];
+	}
 
-		return embedding;
+	private float[][] generateEmbeddings(List<String> texts) throws OrtException
+	{
+		return generateEmbeddings(modelSession, texts);
 	}
 
 	/**
-	 * Mean pooling with attention mask
+	 * Generate embeddings for a batch of texts in one model run.
+	 * Every text is tokenized separately (the ONNX tokenizer produces flat, unpadded output),
+	 * then all token sequences are right-padded so the model sees a single [batch, length] input.
+	 * Padding positions have attention mask 0 and are ignored by mean pooling.
+	 * 
+	 * Single texts (search queries) are padded to a length bucket and run on pooled {@link EmbeddingTensors},
+	 * so repeated queries reuse the same direct buffers; batches are padded to their longest text and use tensors for one run.
 	 */
-	private float[] meanPooling(float[][] tokenEmbeddings, long[] attentionMask)
+	private float[][] generateEmbeddings(OrtSession session, List<String> texts) throws OrtException
 	{
-		int embeddingDim = tokenEmbeddings[0].length;
-		float[] result = new float[embeddingDim];
-		int count = 0;
+		int batch = texts.size();
+		TokenizedText[] tokenized = new TokenizedText[batch];
+		int maxLength = 0;
+		for (int i = 0; i < batch; i++)
+		{
+			tokenized[i] = tokenize(texts.get(i));
+			maxLength = Math.max(maxLength, tokenized[i].inputIds().length);
+		}
 
-		for (int i = 0; i < tokenEmbeddings.length && i < attentionMask.length; i++)
+		EmbeddingTensors tensors = batch == 1 ? acquireQueryTensors(EmbeddingTensors.bucketLength(maxLength))
+			: new EmbeddingTensors(env, batch, maxLength, EMBEDDING_DIMENSION);
+		try
 		{
-			if (attentionMask[i] == 1)
+			for (int i = 0; i < batch; i++)
 			{
-				for (int j = 0; j < embeddingDim; j++)
-				{
-					result[j] += tokenEmbeddings[i][j];
-				}
-				count++;
+				TokenizedText tokens = tokenized[i];
+				tensors.setRow(i, tokens.inputIds(), tokens.attentionMask(), tokens.tokenTypeIds());
 			}
-		}
+			tensors.run(session);
 
-		if (count > 0)
+			float[][] embeddings = new float[batch][];
+			for (int i = 0; i < batch; i++)
+			{
+				embeddings[i] = tensors.meanPooling(i);
+				VectorMath.normalize(embeddings[i]);
+			}
+			return embeddings;
+		}
+		finally
 		{
-			for (int j = 0; j < embeddingDim; j++)
+			if (batch == 1)
+			{
+				releaseQueryTensors(tensors);
+			}
+			else
 			{
-				result[j] /= count;
+				tensors.close();
 			}
 		}
+	}
+
+	/**
+	 * Take single-text tensors of the given padded length from the pool, or create them when none is free.
+	 */
+	private EmbeddingTensors acquireQueryTensors(int length) throws OrtException
+	{
+		EmbeddingTensors tensors = queryTensorPool.computeIfAbsent(Integer.valueOf(length), key -> new ArrayBlockingQueue<>(MAX_POOLED_QUERY_TENSORS))
+			.poll();
+		return tensors != null ? tensors : new EmbeddingTensors(env, 1, length, EMBEDDING_DIMENSION);
+	}
 
-		return result;
+	/**
+	 * Return single-text tensors to the pool; closed when enough tensors of that length are pooled already.
+	 */
+	private void releaseQueryTensors(EmbeddingTensors tensors)
+	{
+		if (!queryTensorPool.get(Integer.valueOf(tensors.length)).offer(tensors))
+		{
+			tensors.close();
+		}
 	}
 
 	/**
-	 * Normalize embedding vector
+	 * Tokenize a single text, in-process when the WordPiece tokenizer is available.
 	 */
-	private void normalize(float[] embedding)
+	private TokenizedText tokenize(String text) throws OrtException
 	{
-		float norm = 0;
-		for (float v : embedding)
+		WordPieceTokenizer tokenizer = wordPieceTokenizer;
+		if (tokenizer != null)
 		{
-			norm += v * v;
+			return new TokenizedText(tokenizer.encode(text), ATTENTION_ALL, TOKEN_TYPE_FIRST);
 		}
-		norm = (float)Math.sqrt(norm);
-		if (norm > 0)
+		return tokenizeWithOnnx(text);
+	}
+
+	/**
+	 * Run the ONNX tokenizer for a single text.
+	 */
+	private TokenizedText tokenizeWithOnnx(String text) throws OrtException
+	{
+		Map<String, OnnxTensor> tokenizerInputs = new HashMap<>();
+		String[] textArray = new String[] { text };
+		try (OnnxTensor textTensor = OnnxTensor.createTensor(env, textArray))
 		{
-			for (int i = 0; i < embedding.length; i++)
+			tokenizerInputs.put("text", textTensor);
+			try (OrtSession.Result tokenizerResults = tokenizerSession.run(tokenizerInputs))
 			{
-				embedding[i] /= norm;
+				long[] inputIds = (long[])tokenizerResults.get(0).getValue();
+				long[] tokenTypeIds = (long[])tokenizerResults.get(1).getValue();
+				long[] attentionMask = (long[])tokenizerResults.get(2).getValue();
+				return new TokenizedText(inputIds, attentionMask, tokenTypeIds);
 			}
 		}
 	}
 
 	/**
-	 * Search for similar text segments
+	 * Tokenizer output for one text. The attention mask and token types may be longer than the input ids
+	 * (shared constant arrays); only the first inputIds.length entries apply.
+	 */
+	private record TokenizedText(long[] inputIds, long[] attentionMask, long[] tokenTypeIds)
+	{
+	}
+
+	/**
+	 * Search for similar text segments, combining embedding similarity with BM25 word matches.
 	 */
 	public List<SearchResult> search(String query, int maxResults)
 	{
 		try
 		{
-			float[] queryEmbeddingArray = generateEmbedding(query);
-			Embedding queryEmbedding = new Embedding(queryEmbeddingArray);
+			float[] queryEmbeddingArray = embedQuery(query);
 
-			EmbeddingSearchRequest searchRequest = EmbeddingSearchRequest.builder()
-				.queryEmbedding(queryEmbedding)
-				.maxResults(maxResults)
-				.minScore(SCORE_THRESHOLD) // Only return >70% similarity
-				.build();
-
-			List<EmbeddingMatch<TextSegment>> matches = embeddingStore.search(searchRequest).matches();
+			// scores are relevance scores in [0..1], (cosine + 1) / 2, so convert the thresholds to cosine similarities
+			double minSimilarity = 2 * SCORE_THRESHOLD - 1;
+			double lexicalMinSimilarity = 2 * LEXICAL_SCORE_THRESHOLD - 1;
+			// lock-free: the snapshot is immutable, a concurrent reload publishes a new one
+			List<SearchResult> candidates = snapshot.search(queryEmbeddingArray, LexicalIndex.terms(query), candidateCount(maxResults),
+				minSimilarity, lexicalMinSimilarity);
+			return rerank(List.of(query), List.of(candidates), maxResults).get(0);
+		}
+		catch (Exception e)
+		{
+			return new ArrayList<>();
+		}
+	}
 
-			// Convert to SearchResult format
-			List<SearchResult> results = new ArrayList<>();
-			for (EmbeddingMatch<TextSegment> match : matches)
+	/**
+	 * Search for several queries at once, e.g. all actions of one tool call.
+	 * Queries that are not in the query cache are embedded in a single model run, and all queries are scored
+	 * together against the store (see {@link IVectorIndex#searchBatch(float[][], int, double)}).
+	 *
+	 * @param queries the queries
+	 * @param maxResults maximum number of results per query
+	 * @return per query, in query order, the results as {@link #search(String, int)} returns them
+	 */
+	public List<List<SearchResult>> searchBatch(List<String> queries, int maxResults)
+	{
+		try
+		{
+			float[][] queryEmbeddings = embedQueries(queries);
+			List<List<String>> queryTerms = new ArrayList<>(queries.size());
+			for (String query : queries)
 			{
-				TextSegment segment = match.embedded();
-				String matchText = segment.text();
+				queryTerms.add(LexicalIndex.terms(query));
+			}
+
+			double minSimilarity = 2 * SCORE_THRESHOLD - 1;
+			double lexicalMinSimilarity = 2 * LEXICAL_SCORE_THRESHOLD - 1;
+			return rerank(queries, snapshot.searchBatch(queryEmbeddings, queryTerms, candidateCount(maxResults), minSimilarity, lexicalMinSimilarity),
+				maxResults);
+		}
+		catch (Exception e)
+		{
+			List<List<SearchResult>> empty = new ArrayList<>(queries.size());
+			queries.forEach(query -> empty.add(new ArrayList<>()));
+			return empty;
+		}
+	}
+
+	/**
+	 * Number of bi-encoder results to fetch per query: more than asked for when they are reranked.
+	 */
+	private int candidateCount(int maxResults)
+	{
+		return reranker != null ? Math.max(maxResults, rerankCandidates) : maxResults;
+	}
 
-				Map<String, String> metadata = new HashMap<>();
-				for (Map.Entry<String, Object> entry : segment.metadata().toMap().entrySet())
+	/**
+	 * Order the candidates of every query by cross-encoder relevance and keep the best maxResults. The candidates of all
+	 * queries are scored in one model run. Scores stay the bi-encoder relevance, so they remain comparable with those of
+	 * searches that were not reranked. Without reranker, or when the run would exceed the latency budget, the bi-encoder
+	 * order is kept.
+	 *
+	 * @param queries the queries
+	 * @param candidates per query, the bi-encoder results in descending score order
+	 * @param maxResults maximum number of results per query
+	 * @return per query, at most maxResults results
+	 */
+	private List<List<SearchResult>> rerank(List<String> queries, List<List<SearchResult>> candidates, int maxResults)
+	{
+		CrossEncoderReranker crossEncoder = reranker;
+		if (crossEncoder != null && candidates.stream().anyMatch(results -> results.size() > 1))
+		{
+			List<String> pairQueries = new ArrayList<>();
+			List<String> pairTexts = new ArrayList<>();
+			for (int q = 0; q < queries.size(); q++)
+			{
+				for (SearchResult result : candidates.get(q))
 				{
-					metadata.put(entry.getKey(), entry.getValue() != null ? entry.getValue().toString() : null);
+					pairQueries.add(queries.get(q));
+					pairTexts.add(result.text);
+				}
+			}
+			try
+			{
+				float[] relevance = crossEncoder.score(pairQueries, pairTexts, rerankBudgetMillis);
+				if (relevance != null)
+				{
+					List<List<SearchResult>> reranked = new ArrayList<>(candidates.size());
+					int pair = 0;
+					for (List<SearchResult> results : candidates)
+					{
+						Integer[] order = new Integer[results.size()];
+						for (int i = 0; i < order.length; i++)
+						{
+							order[i] = Integer.valueOf(i);
+						}
+						int offset = pair;
+						Arrays.sort(order, (a, b) -> Float.compare(relevance[offset + b.intValue()], relevance[offset + a.intValue()]));
+						List<SearchResult> sorted = new ArrayList<>(results.size());
+						for (Integer i : order)
+						{
+							sorted.add(results.get(i.intValue()));
+						}
+						reranked.add(sorted);
+						pair += results.size();
+					}
+					candidates = reranked;
 				}
-
-				double score = match.score();
-				results.add(new SearchResult(score, matchText, metadata));
 			}
+			catch (OrtException e)
+			{
+				ServoyLog.logError("[ServoyEmbeddings] Reranking failed, keeping the bi-encoder order: " + e.getMessage());
+			}
+		}
+		List<List<SearchResult>> results = new ArrayList<>(candidates.size());
+		for (List<SearchResult> queryResults : candidates)
+		{
+			results.add(queryResults.size() > maxResults ? new ArrayList<>(queryResults.subList(0, maxResults)) : queryResults);
+		}
+		return results;
+	}
 
-			return results;
+	/**
+	 * Embeddings of search queries; queries missing from the query cache are embedded together in one model run.
+	 */
+	private float[][] embedQueries(List<String> queries) throws OrtException
+	{
+		float[][] embeddings = new float[queries.size()][];
+		Map<String, List<Integer>> missing = new LinkedHashMap<>();
+		for (int i = 0; i < queries.size(); i++)
+		{
+			String key = QueryEmbeddingCache.normalize(queries.get(i));
+			embeddings[i] = queryCache.get(key);
+			if (embeddings[i] == null)
+			{
+				missing.computeIfAbsent(key, k -> new ArrayList<>()).add(Integer.valueOf(i));
+			}
 		}
-		catch (Exception e)
+		if (!missing.isEmpty())
 		{
-			return new ArrayList<>();
+			List<String> keys = new ArrayList<>(missing.keySet());
+			float[][] generated = generateEmbeddings(keys);
+			for (int k = 0; k < keys.size(); k++)
+			{
+				queryCache.put(keys.get(k), generated[k]);
+				for (Integer i : missing.get(keys.get(k)))
+				{
+					embeddings[i.intValue()] = generated[k];
+				}
+			}
+		}
+		return embeddings;
+	}
+
+	/**
+	 * Embedding of a search query, from the query cache when the same query was embedded before.
+	 */
+	private float[] embedQuery(String query) throws OrtException
+	{
+		String key = QueryEmbeddingCache.normalize(query);
+		float[] embedding = queryCache.get(key);
+		if (embedding == null)
+		{
+			embedding = generateEmbedding(key);
+			queryCache.put(key, embedding);
 		}
+		return embedding;
+	}
+
+	/**
+	 * Get the hit/miss statistics of the query embedding cache
+	 */
+	public QueryEmbeddingCache.Stats getQueryCacheStats()
+	{
+		return queryCache.getStats();
+	}
+
+	/**
+	 * Get the statistics of the cross-encoder reranker, or null when search results are not reranked
+	 */
+	public CrossEncoderReranker.Stats getRerankerStats()
+	{
+		CrossEncoderReranker crossEncoder = reranker;
+		return crossEncoder != null ? crossEncoder.getStats() : null;
 	}
 
 	/**
@@ -313,12 +771,103 @@ public class ServoyEmbeddingService
 		}
 	}
 
+	/**
+	 * Get the approximate memory held by the stored embeddings and their texts, in bytes
+	 */
+	public long getMemoryUsage()
+	{
+		return snapshot.getMemoryUsage();
+	}
+
+	/**
+	 * Get the number of texts embedded per model run when loading knowledge bases
+	 */
+	public int getBatchSize()
+	{
+		return batchSize;
+	}
+
+	/**
+	 * Set the number of texts embedded per model run when loading knowledge bases.
+	 * Can also be configured at startup with the system property servoy.knowledgebase.embeddingBatchSize.
+	 */
+	public void setBatchSize(int batchSize)
+	{
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * Measure embedding throughput of the model with different ONNX Runtime session settings.
+	 * Every configuration gets its own session over the same model file and embeds the same sample texts
+	 * (texts of the loaded knowledge bases, or built-in phrases when none are loaded) in batches of {@link #getBatchSize()},
+	 * after a warm-up pass. The service's own session is not affected.
+	 *
+	 * @param candidates the settings to measure, e.g. {@link OrtSessionSettings#benchmarkCandidates(OrtSessionSettings)}
+	 * @return one result per configuration that could be measured, in candidate order
+	 */
+	public List<BenchmarkResult> benchmarkSessionSettings(List<OrtSessionSettings> candidates)
+	{
+		List<String> texts = snapshot.sampleTexts(BENCHMARK_TEXTS);
+		if (texts.isEmpty())
+		{
+			texts = new ArrayList<>();
+			for (int i = 0; i < BENCHMARK_TEXTS; i++)
+			{
+				texts.add(BENCHMARK_PHRASES[i % BENCHMARK_PHRASES.length] + " " + i);
+			}
+		}
+
+		List<BenchmarkResult> results = new ArrayList<>();
+		for (OrtSessionSettings settings : candidates)
+		{
+			try (OrtSession.SessionOptions options = settings.toSessionOptions();
+				OrtSession session = env.createSession(modelFile, options))
+			{
+				embedAll(session, texts);
+				long start = System.nanoTime();
+				for (int run = 0; run < BENCHMARK_RUNS; run++)
+				{
+					embedAll(session, texts);
+				}
+				double seconds = (System.nanoTime() - start) / 1e9;
+				BenchmarkResult result = new BenchmarkResult(settings, BENCHMARK_RUNS * texts.size() / seconds);
+				ServoyLog.logInfo("[ServoyEmbeddings] Benchmark: " + result);
+				results.add(result);
+			}
+			catch (Exception e)
+			{
+				ServoyLog.logError("[ServoyEmbeddings] Benchmark failed for " + settings + ": " + e.getMessage());
+			}
+		}
+		return results;
+	}
+
+	private void embedAll(OrtSession session, List<String> texts) throws OrtException
+	{
+		for (int start = 0; start < texts.size(); start += batchSize)
+		{
+			generateEmbeddings(session, texts.subList(start, Math.min(start + batchSize, texts.size())));
+		}
+	}
+
+	/**
+	 * Throughput of one session configuration, see {@link ServoyEmbeddingService#benchmarkSessionSettings(List)}.
+	 */
+	public record BenchmarkResult(OrtSessionSettings settings, double embeddingsPerSecond)
+	{
+		@Override
+		public String toString()
+		{
+			return String.format(Locale.ROOT, "%.1f embeddings/s with %s", embeddingsPerSecond, settings);
+		}
+	}
+
 	/**
 	 * Get the number of embeddings in the store
 	 */
 	public int getEmbeddingCount()
 	{
-		return embeddingCount;
+		return snapshot.size();
 	}
 
 	/**
@@ -331,7 +880,10 @@ public class ServoyEmbeddingService
 	
 	/**
 	 * Reload all knowledge bases from package readers (workspace projects).
-	 * Clears all embeddings and rules, then reloads from scratch.
+	 * Embeddings are loaded into a new snapshot that replaces the current one when complete,
+	 * so searches running during the reload keep using the previous knowledge bases.
+	 * The rules of the packages replace all rules at the same time.
+	 * Packages are read in parallel, see {@link #loadPackages(KnowledgeSnapshot.Builder, IPackageReader[], Map)}.
 	 * 
 	 * @param packageReaders array of package readers to load from
 	 */
@@ -339,32 +891,39 @@ public class ServoyEmbeddingService
 	{
 		ServoyLog.logInfo("[ServoyEmbeddings] Reloading all knowledge bases from package readers...");
 		
-		this.embeddingStore.removeAll();
-		this.embeddingCount = 0;
-		
-		RulesCache.clear();
+		int totalEmbeddings;
+		KnowledgeSnapshot loaded;
+		Map<String, Map<String, String>> rules = new LinkedHashMap<>();
 		
-		int totalEmbeddings = 0;
-		int totalRules = 0;
-		
-		for (IPackageReader reader : packageReaders)
+		synchronized (writeLock)
 		{
-			String packageName = reader.getPackageName();
-			
-			int embeddingCount = loadKnowledgeBaseFromReader(reader);
-			totalEmbeddings += embeddingCount;
-			
-			int ruleCount = RulesCache.loadFromPackageReader(reader);
-			totalRules += ruleCount;
+			KnowledgeSnapshot.Builder builder = new KnowledgeSnapshot.Builder(EMBEDDING_DIMENSION, this::createVectorIndex);
+			totalEmbeddings = loadPackages(builder, packageReaders, rules);
+			loaded = builder.build();
+			snapshot = loaded;
+			RulesCache.replaceAll(rules);
 		}
 		
-		ServoyLog.logInfo("[ServoyEmbeddings] Reload complete - Total: " + totalEmbeddings + " embeddings, " + 
-			totalRules + " rules from " + packageReaders.length + " package(s)");
+		ServoyLog.logInfo("[ServoyEmbeddings] Reload complete - Total: " + totalEmbeddings + " embeddings (" + loaded.getMemoryUsage() / 1024 +
+			" KB, " + loaded.getTermCount() + " terms), " + RulesCache.getRuleCount() + " rules from " + packageReaders.length + " package(s)");
+
+		ServoyLog.logInfo("[ServoyEmbeddings] Query cache: " + queryCache.getStats());
+
+		if (Boolean.getBoolean("servoy.knowledgebase.quantization.recall"))
+		{
+			// diagnostic only: scans every partition up to 200 times at full precision
+			loaded.getIndexes().forEach((partition, index) -> {
+				if (index instanceof QuantizedVectorIndex quantizedIndex)
+				{
+					ServoyLog.logInfo("[ServoyEmbeddings] Quantization accuracy of " + partition + ": " + quantizedIndex.measureRecall(3, 200));
+				}
+			});
+		}
 	}
 	
 	/**
 	 * Load knowledge base from a single package reader (workspace project).
-	 * This is an ADDITIVE load - does NOT clear existing embeddings.
+	 * This is an ADDITIVE load - does NOT clear existing embeddings of other packages.
 	 * Reads embeddings/embeddings.list to find all .txt files to load.
 	 * 
 	 * @param reader the package reader
@@ -372,91 +931,556 @@ public class ServoyEmbeddingService
 	 */
 	public int loadKnowledgeBaseFromReader(IPackageReader reader)
 	{
+		synchronized (writeLock)
+		{
+			KnowledgeSnapshot.Builder builder = snapshot.toBuilder();
+			int loadedCount = loadPackages(builder, new IPackageReader[] { reader }, null);
+			snapshot = builder.build();
+			return loadedCount;
+		}
+	}
+
+	/**
+	 * Unload the knowledge base of a single package, leaving the embeddings and rules of other packages in place.
+	 * The package's partition is dropped as a whole, nothing is copied or embedded again.
+	 * Its rules are removed in the same step, see {@link RulesCache#removeRules(String)}.
+	 * 
+	 * @param packageName the package name
+	 * @return number of embeddings removed
+	 */
+	public int unloadKnowledgeBase(String packageName)
+	{
+		synchronized (writeLock)
+		{
+			KnowledgeSnapshot.Builder builder = snapshot.toBuilder();
+			int removed = builder.removePackage(packageName);
+			snapshot = builder.build();
+			RulesCache.removeRules(packageName);
+			return removed;
+		}
+	}
+
+	/**
+	 * Load the knowledge bases of package readers into a snapshot being built,
+	 * replacing the embeddings the snapshot already holds for those packages.
+	 * 
+	 * Packages are read on a bounded pool ({@link PackageTasks}): list and text files, precomputed vectors and cache entries.
+	 * As each package completes, its lines without vectors are appended to one embedding queue that this thread runs
+	 * in full batches across file and package boundaries, overlapping inference with the reads of the other packages.
+	 * Embeddings are added in package order, so the snapshot does not depend on which package was read first.
+	 * 
+	 * @param builder the snapshot being built
+	 * @param packageReaders the packages to load
+	 * @param rules receives the rules of each package by intent key, in package order; null to skip rules
+	 * @return number of embeddings loaded
+	 */
+	private int loadPackages(KnowledgeSnapshot.Builder builder, IPackageReader[] packageReaders, Map<String, Map<String, String>> rules)
+	{
+		long start = System.nanoTime();
+		PackageContents[] contents = new PackageContents[packageReaders.length];
+		EmbeddingQueue queue = new EmbeddingQueue();
+		ExecutorService executor = PackageTasks.newExecutor(packageReaders.length);
+		try
+		{
+			CompletionService<PackageContents> completion = new ExecutorCompletionService<>(executor);
+			for (int i = 0; i < packageReaders.length; i++)
+			{
+				int index = i;
+				completion.submit(() -> readPackage(index, packageReaders[index], rules != null));
+			}
+			for (int i = 0; i < packageReaders.length; i++)
+			{
+				try
+				{
+					PackageContents packageContents = completion.take().get();
+					contents[packageContents.index] = packageContents;
+					queue.addAll(packageContents);
+					queue.embed(false);
+				}
+				catch (ExecutionException e)
+				{
+					ServoyLog.logError("[ServoyEmbeddings] Failed to read knowledge base package: " + e.getCause().getMessage(), e.getCause());
+				}
+			}
+			queue.embed(true);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			ServoyLog.logError("[ServoyEmbeddings] Interrupted while loading knowledge bases");
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+
 		int loadedCount = 0;
-		
+		long readNanos = 0;
+		for (PackageContents packageContents : contents)
+		{
+			if (packageContents == null)
+			{
+				continue;
+			}
+			String packageName = packageContents.reader.getPackageName();
+			builder.removePackage(packageName);
+			builder.addPackage(packageContents.reader);
+			int count = 0;
+			for (EmbeddingsFile file : packageContents.files)
+			{
+				count += addEmbeddings(builder, KnowledgeSnapshot.source(packageName, file.path), file.lines, file.embeddings, "intent",
+					extractCategoryFromPath(file.path));
+			}
+			int ruleCount = packageContents.rules.size();
+			if (rules != null)
+			{
+				rules.put(packageName, packageContents.rules);
+			}
+			loadedCount += count;
+			readNanos += packageContents.readNanos;
+			ServoyLog.logInfo(String.format(Locale.ROOT,
+				"[ServoyEmbeddings] Package %s: %d embeddings (%d embedded) from %d file(s), %d rules; read %d ms, embedding %d ms", packageName,
+				Integer.valueOf(count), Integer.valueOf(packageContents.embeddedLines), Integer.valueOf(packageContents.files.size()), Integer.valueOf(ruleCount),
+				Long.valueOf(packageContents.readNanos / 1_000_000), Long.valueOf(packageContents.embedNanos / 1_000_000)));
+		}
+		if (packageReaders.length > 0)
+		{
+			ServoyLog.logInfo(String.format(Locale.ROOT,
+				"[ServoyEmbeddings] Loaded %d package(s) in %d ms (reads %d ms in total, %d line(s) embedded in %d ms)",
+				Integer.valueOf(packageReaders.length), Long.valueOf((System.nanoTime() - start) / 1_000_000), Long.valueOf(readNanos / 1_000_000),
+				Integer.valueOf(queue.embeddedLines), Long.valueOf(queue.embedNanos / 1_000_000)));
+		}
+		return loadedCount;
+	}
+
+	/**
+	 * Read the embeddings files (and optionally rules) of a package, on a loader thread.
+	 * Vectors are taken from precomputed vector files or the embedding cache; lines without vectors are left for the embedding queue.
+	 */
+	private PackageContents readPackage(int index, IPackageReader reader, boolean readRules)
+	{
+		long start = System.nanoTime();
+		PackageContents contents = new PackageContents(index, reader);
 		try
 		{
-			String packageName = reader.getPackageName();
-			
-			URL embeddingsListURL = reader.getUrlForPath("embeddings/embeddings.list");
+			URL embeddingsListURL = reader.getUrlForPath(EMBEDDINGS_LIST);
 			if (embeddingsListURL == null)
 			{
-				ServoyLog.logInfo("[ServoyEmbeddings] No embeddings/embeddings.list found in package: " + packageName);
-				return 0;
+				ServoyLog.logInfo("[ServoyEmbeddings] No embeddings/embeddings.list found in package: " + reader.getPackageName());
 			}
-			
-			List<String> embeddingFiles = new ArrayList<>();
-			try (BufferedReader reader2 = new BufferedReader(
-				new InputStreamReader(embeddingsListURL.openStream(), StandardCharsets.UTF_8)))
+			else
 			{
-				String line;
-				while ((line = reader2.readLine()) != null)
+				for (String embeddingFile : readLines(embeddingsListURL))
 				{
-					line = line.trim();
-					if (!line.isEmpty() && !line.startsWith("#"))
+					String path = "embeddings/" + embeddingFile;
+					try
+					{
+						URL fileURL = reader.getUrlForPath(path);
+						if (fileURL != null)
+						{
+							List<String> lines = readLines(fileURL);
+							float[][] embeddings = loadPrecomputedEmbeddings(reader, path, lines);
+							if (embeddings == null && embeddingCache != null)
+							{
+								embeddings = embeddingCache.get(VectorFile.checksum(lines), lines.size());
+							}
+							contents.files.add(new EmbeddingsFile(contents, path, lines, embeddings));
+						}
+					}
+					catch (Exception e)
 					{
-						embeddingFiles.add(line);
+						ServoyLog.logError("[ServoyEmbeddings] Failed to load embeddings from " + path + ": " + e.getMessage(), e);
 					}
 				}
 			}
-			
-			for (String embeddingFile : embeddingFiles)
-			{
-				String path = "embeddings/" + embeddingFile;
-				int count = loadEmbeddingsFromReader(reader, path);
-				loadedCount += count;
-			}
 		}
 		catch (Exception e)
 		{
 			ServoyLog.logError("[ServoyEmbeddings] Failed to load knowledge base from package reader: " + 
 				e.getMessage(), e);
 		}
-		
-		return loadedCount;
+		if (readRules)
+		{
+			contents.rules = RulesCache.readFromPackageReader(reader);
+		}
+		contents.readNanos = System.nanoTime() - start;
+		return contents;
 	}
-	
+
 	/**
-	 * Load embeddings from a specific file in a package reader.
-	 * 
+	 * The embeddings files and rules read from one package.
+	 */
+	private static final class PackageContents
+	{
+		final int index; // position in the packages being loaded
+		final IPackageReader reader;
+		final List<EmbeddingsFile> files = new ArrayList<>();
+		Map<String, String> rules = Map.of();
+		long readNanos;
+		long embedNanos; // this package's share of the embedding queue time
+		int embeddedLines;
+
+		PackageContents(int index, IPackageReader reader)
+		{
+			this.index = index;
+			this.reader = reader;
+		}
+	}
+
+	/**
+	 * The lines of one embeddings text file and their vectors.
+	 */
+	private static final class EmbeddingsFile
+	{
+		final PackageContents owner;
+		final String path;
+		final List<String> lines;
+		final float[][] embeddings; // null entries are waiting in the embedding queue or failed
+		final boolean computed; // vectors come from the embedding queue and are written to the cache when complete
+		int pending;
+
+		EmbeddingsFile(PackageContents owner, String path, List<String> lines, float[][] embeddings)
+		{
+			this.owner = owner;
+			this.path = path;
+			this.lines = lines;
+			this.computed = embeddings == null;
+			this.embeddings = embeddings != null ? embeddings : new float[lines.size()][];
+			this.pending = computed ? lines.size() : 0;
+		}
+	}
+
+	/**
+	 * Lines of all packages being loaded that need the model, embedded in full batches as they arrive.
+	 */
+	private final class EmbeddingQueue
+	{
+		private final List<EmbeddingsFile> files = new ArrayList<>();
+		private final List<Integer> lines = new ArrayList<>();
+		private int next;
+		int embeddedLines;
+		long embedNanos;
+
+		void addAll(PackageContents contents)
+		{
+			for (EmbeddingsFile file : contents.files)
+			{
+				if (file.computed)
+				{
+					for (int i = 0; i < file.lines.size(); i++)
+					{
+						files.add(file);
+						lines.add(Integer.valueOf(i));
+					}
+				}
+			}
+		}
+
+		/**
+		 * @param all also embed the last, partial batch
+		 */
+		void embed(boolean all)
+		{
+			while (files.size() - next >= batchSize || (all && next < files.size()))
+			{
+				int end = Math.min(next + batchSize, files.size());
+				List<String> texts = new ArrayList<>(end - next);
+				for (int i = next; i < end; i++)
+				{
+					texts.add(files.get(i).lines.get(lines.get(i).intValue()));
+				}
+				long start = System.nanoTime();
+				float[][] embeddings = computeEmbeddings(texts);
+				long nanos = System.nanoTime() - start;
+				embedNanos += nanos;
+				embeddedLines += texts.size();
+				for (int i = next; i < end; i++)
+				{
+					EmbeddingsFile file = files.get(i);
+					file.embeddings[lines.get(i).intValue()] = embeddings[i - next];
+					file.owner.embedNanos += nanos / texts.size();
+					file.owner.embeddedLines++;
+					if (--file.pending == 0 && embeddingCache != null && Arrays.stream(file.embeddings).allMatch(Objects::nonNull))
+					{
+						embeddingCache.put(VectorFile.checksum(file.lines), file.embeddings);
+					}
+				}
+				next = end;
+			}
+		}
+	}
+
+	/**
+	 * Apply changed knowledge-base files of a loaded package to the current snapshot, without reloading the package.
+	 * Lines are identified by package, file and text: only lines that were added to a file are embedded,
+	 * the rows of removed lines are tombstoned and unchanged lines keep their vectors.
+	 * When embeddings/embeddings.list changed, all listed files are synced and files no longer listed are removed.
+	 *
 	 * @param reader the package reader
-	 * @param path the path to the embeddings file (e.g., "embeddings/forms.txt")
-	 * @return number of embeddings loaded
+	 * @param changedPaths changed, added or deleted package paths, e.g. "embeddings/forms.txt"; paths outside embeddings/ are ignored
+	 * @return number of lines embedded
 	 */
-	private int loadEmbeddingsFromReader(IPackageReader reader, String path)
+	public int updateKnowledgeBaseFiles(IPackageReader reader, Collection<String> changedPaths)
 	{
-		int count = 0;
-		
+		String packageName = reader.getPackageName();
+		int embedded = 0;
+		int removed = 0;
+		synchronized (writeLock)
+		{
+			try
+			{
+				URL embeddingsListURL = reader.getUrlForPath(EMBEDDINGS_LIST);
+				Set<String> listed = new LinkedHashSet<>();
+				if (embeddingsListURL != null)
+				{
+					readLines(embeddingsListURL).forEach(file -> listed.add("embeddings/" + file));
+				}
+
+				KnowledgeSnapshot.Builder builder = snapshot.toBuilder();
+				builder.addPackage(reader);
+				Set<String> paths = new LinkedHashSet<>();
+				if (changedPaths.contains(EMBEDDINGS_LIST))
+				{
+					String prefix = KnowledgeSnapshot.source(packageName, "");
+					builder.getSources(packageName).forEach(source -> paths.add(source.substring(prefix.length())));
+					paths.addAll(listed);
+				}
+				for (String path : changedPaths)
+				{
+					if (path.startsWith("embeddings/") && path.endsWith(".txt"))
+					{
+						paths.add(path);
+					}
+				}
+
+				for (String path : paths)
+				{
+					URL fileURL = listed.contains(path) ? reader.getUrlForPath(path) : null;
+					List<String> lines = fileURL != null ? readLines(fileURL) : List.of();
+					int[] counts = updateEmbeddings(builder, KnowledgeSnapshot.source(packageName, path), path, lines);
+					embedded += counts[0];
+					removed += counts[1];
+				}
+				snapshot = builder.build();
+				ServoyLog.logInfo("[ServoyEmbeddings] Updated " + paths.size() + " file(s) of package " + packageName + ": " + embedded +
+					" line(s) embedded, " + removed + " removed, " + snapshot.size() + " embeddings total");
+			}
+			catch (Exception e)
+			{
+				ServoyLog.logError("[ServoyEmbeddings] Failed to update knowledge base of package " + packageName + ": " + e.getMessage(), e);
+			}
+		}
+		return embedded;
+	}
+
+	/**
+	 * Sync the rows of one text file with its current lines.
+	 *
+	 * @param builder the snapshot being built
+	 * @param source the file the lines come from
+	 * @param path the file path in the package
+	 * @param lines the current lines of the file, empty when the file was deleted or is no longer listed
+	 * @return the number of lines embedded and the number of rows removed
+	 */
+	private int[] updateEmbeddings(KnowledgeSnapshot.Builder builder, String source, String path, List<String> lines)
+	{
+		Map<String, Deque<Integer>> existing = builder.getRowsByText(source);
+		float[][] vectors = new float[lines.size()][];
+		List<Integer> added = new ArrayList<>();
+		for (int i = 0; i < lines.size(); i++)
+		{
+			Deque<Integer> rows = existing.get(lines.get(i));
+			Integer row = rows != null ? rows.poll() : null;
+			if (row != null)
+			{
+				vectors[i] = builder.getVector(source, row.intValue());
+			}
+			else
+			{
+				added.add(Integer.valueOf(i));
+			}
+		}
+
+		List<Integer> removedRows = new ArrayList<>();
+		existing.values().forEach(removedRows::addAll);
+		builder.remove(source, removedRows);
+
+		if (!added.isEmpty())
+		{
+			String checksum = VectorFile.checksum(lines);
+			float[][] cached = embeddingCache != null ? embeddingCache.get(checksum, lines.size()) : null;
+			float[][] computed = null;
+			if (cached == null)
+			{
+				List<String> addedLines = new ArrayList<>(added.size());
+				added.forEach(i -> addedLines.add(lines.get(i.intValue())));
+				computed = computeEmbeddings(addedLines);
+			}
+			String category = extractCategoryFromPath(path);
+			for (int j = 0; j < added.size(); j++)
+			{
+				int i = added.get(j).intValue();
+				vectors[i] = cached != null ? cached[i] : computed[j];
+				if (vectors[i] != null)
+				{
+					builder.add(vectors[i], lines.get(i), "intent", category, source);
+				}
+			}
+			if (cached == null && embeddingCache != null && Arrays.stream(vectors).allMatch(Objects::nonNull))
+			{
+				// a full reload of the file finds its vectors in the cache
+				embeddingCache.put(checksum, vectors);
+			}
+		}
+		return new int[] { added.size(), removedRows.size() };
+	}
+
+	/**
+	 * @return the packages whose knowledge bases are loaded
+	 */
+	public Collection<IPackageReader> getLoadedPackages()
+	{
+		return snapshot.getPackages().values();
+	}
+
+	/**
+	 * Get the embeddings for the lines of a knowledge-base text file from the persistent cache,
+	 * or compute them and store them in the cache when the file was not embedded before.
+	 */
+	private float[][] getOrComputeEmbeddings(List<String> lines)
+	{
+		if (embeddingCache == null)
+		{
+			return computeEmbeddings(lines);
+		}
+
+		String checksum = VectorFile.checksum(lines);
+		float[][] embeddings = embeddingCache.get(checksum, lines.size());
+		if (embeddings == null)
+		{
+			embeddings = computeEmbeddings(lines);
+			if (Arrays.stream(embeddings).allMatch(Objects::nonNull))
+			{
+				embeddingCache.put(checksum, embeddings);
+			}
+		}
+		return embeddings;
+	}
+
+	/**
+	 * Load the vectors shipped inside a knowledge-base package next to a text file,
+	 * e.g. "embeddings/forms.vec" for "embeddings/forms.txt".
+	 * The vectors are only used when they were produced by the loaded model for exactly the current lines.
+	 *
+	 * @return the vectors in line order, or null when missing or stale
+	 */
+	private float[][] loadPrecomputedEmbeddings(IPackageReader reader, String path, List<String> lines)
+	{
+		String vectorPath = vectorFilePath(path);
 		try
 		{
-			URL fileURL = reader.getUrlForPath(path);
-			if (fileURL == null)
+			URL vectorURL = reader.getUrlForPath(vectorPath);
+			if (vectorURL == null)
+			{
+				return null;
+			}
+			VectorFile vectorFile;
+			try (InputStream is = vectorURL.openStream())
+			{
+				vectorFile = VectorFile.read(is);
+			}
+			if (!MODEL_ID.equals(vectorFile.modelId) || vectorFile.dimension != EMBEDDING_DIMENSION ||
+				vectorFile.vectors.length != lines.size() || !VectorFile.checksum(lines).equals(vectorFile.checksum))
+			{
+				ServoyLog.logInfo("[ServoyEmbeddings] Ignoring stale precomputed embeddings " + vectorPath + " in package " +
+					reader.getPackageName() + " (model " + vectorFile.modelId + ", " + vectorFile.vectors.length + " vectors)");
+				return null;
+			}
+			return vectorFile.vectors;
+		}
+		catch (Exception e)
+		{
+			ServoyLog.logError("[ServoyEmbeddings] Failed to read precomputed embeddings " + vectorPath + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Write precomputed vector files for all text files listed in a package's embeddings/embeddings.list.
+	 * Meant to be run when packaging a knowledge base, so developer workstations can skip inference entirely.
+	 *
+	 * @param reader the package reader
+	 * @param embeddingsDir the directory receiving the .vec files, normally the package's embeddings folder
+	 * @return number of vector files written
+	 */
+	public int writePrecomputedEmbeddings(IPackageReader reader, Path embeddingsDir)
+	{
+		int written = 0;
+		try
+		{
+			URL embeddingsListURL = reader.getUrlForPath(EMBEDDINGS_LIST);
+			if (embeddingsListURL == null)
 			{
 				return 0;
 			}
-			
-			String category = extractCategoryFromPath(path);
-			
-			try (BufferedReader bufferedReader = new BufferedReader(
-				new InputStreamReader(fileURL.openStream(), StandardCharsets.UTF_8)))
+			Files.createDirectories(embeddingsDir);
+			for (String embeddingFile : readLines(embeddingsListURL))
 			{
-				String line;
-				while ((line = bufferedReader.readLine()) != null)
+				String path = "embeddings/" + embeddingFile;
+				URL fileURL = reader.getUrlForPath(path);
+				if (fileURL == null)
 				{
-					line = line.trim();
-					if (!line.isEmpty() && !line.startsWith("#"))
-					{
-						embed(line, "intent", category);
-						count++;
-					}
+					continue;
+				}
+				List<String> lines = readLines(fileURL);
+				float[][] embeddings = getOrComputeEmbeddings(lines);
+				if (Arrays.stream(embeddings).anyMatch(Objects::isNull))
+				{
+					ServoyLog.logError("[ServoyEmbeddings] Not all lines of " + path + " could be embedded, skipping vector file");
+					continue;
 				}
+				String vectorPath = vectorFilePath(path);
+				VectorFile.write(embeddingsDir.resolve(vectorPath.substring(vectorPath.lastIndexOf('/') + 1)), MODEL_ID,
+					VectorFile.checksum(lines), embeddings);
+				written++;
 			}
+			ServoyLog.logInfo("[ServoyEmbeddings] Wrote " + written + " precomputed vector file(s) for package " + reader.getPackageName());
 		}
 		catch (Exception e)
 		{
-			ServoyLog.logError("[ServoyEmbeddings] Failed to load embeddings from " + path + ": " + e.getMessage(), e);
+			ServoyLog.logError("[ServoyEmbeddings] Failed to write precomputed embeddings: " + e.getMessage(), e);
 		}
-		
-		return count;
+		return written;
+	}
+
+	/**
+	 * Path of the precomputed vector file belonging to a text file: same name with a .vec extension.
+	 */
+	private static String vectorFilePath(String path)
+	{
+		int dot = path.lastIndexOf('.');
+		return (dot > path.lastIndexOf('/') ? path.substring(0, dot) : path) + ".vec";
+	}
+
+	/**
+	 * Read the trimmed, non-empty, non-comment lines of a package file.
+	 */
+	private static List<String> readLines(URL url) throws IOException
+	{
+		List<String> lines = new ArrayList<>();
+		try (BufferedReader bufferedReader = new BufferedReader(
+			new InputStreamReader(url.openStream(), StandardCharsets.UTF_8)))
+		{
+			String line;
+			while ((line = bufferedReader.readLine()) != null)
+			{
+				line = line.trim();
+				if (!line.isEmpty() && !line.startsWith("#"))
+				{
+					lines.add(line);
+				}
+			}
+		}
+		return lines;
 	}
 }
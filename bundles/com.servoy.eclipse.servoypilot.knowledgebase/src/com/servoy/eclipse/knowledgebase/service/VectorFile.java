@@ -0,0 +1,218 @@
+/*
+ This file belongs to the Servoy development and deployment environment, Copyright (C) 1997-2025 Servoy BV
+
+ This program is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Affero General Public License as published by the Free
+ Software Foundation; either version 3 of the License, or (at your option) any
+ later version.
+
+ This program is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License along
+ with this program; if not, see http://www.gnu.org/licenses or write to the Free
+ Software Foundation,Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301
+*/
+
+package com.servoy.eclipse.knowledgebase.service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Compact binary file holding the embedding vectors of one knowledge-base text file.
+ *
+ * Layout (big-endian):
+ * <pre>
+ * int    magic      0x53564543 ("SVEC")
+ * int    version    1
+ * UTF    modelId    model that produced the vectors, e.g. "bge-small-en-v1.5"
+ * UTF    checksum   checksum of the source lines, see {@link #checksum(List)}
+ * int    dimension  floats per vector
+ * int    count      number of vectors, one per source line in file order
+ * float  vectors    count * dimension values, row-major
+ * </pre>
+ *
+ * @since 2026.3
+ */
+public final class VectorFile
+{
+	public static final int MAGIC = 0x53564543;
+	public static final int VERSION = 1;
+
+	public final String modelId;
+	public final String checksum;
+	public final int dimension;
+	public final float[][] vectors;
+
+	private VectorFile(String modelId, String checksum, int dimension, float[][] vectors)
+	{
+		this.modelId = modelId;
+		this.checksum = checksum;
+		this.dimension = dimension;
+		this.vectors = vectors;
+	}
+
+	/**
+	 * Checksum of the embedded lines of a knowledge-base text file.
+	 * SHA-256 over the trimmed lines joined with '\n', so comments and blank lines do not invalidate vectors.
+	 *
+	 * @param lines the lines that are embedded, in file order
+	 * @return lower case hex string
+	 */
+	public static String checksum(List<String> lines)
+	{
+		try
+		{
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (String line : lines)
+			{
+				digest.update(line.getBytes(StandardCharsets.UTF_8));
+				digest.update((byte)'\n');
+			}
+			return HexFormat.of().formatHex(digest.digest());
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException("SHA-256 not available", e);
+		}
+	}
+
+	/**
+	 * Read a vector file by memory-mapping it.
+	 *
+	 * @param file the file to read
+	 * @return the file contents
+	 * @throws IOException when the file cannot be read or is not a valid vector file
+	 */
+	public static VectorFile read(Path file) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Read a vector file from a stream, e.g. a precomputed file inside a knowledge-base package.
+	 *
+	 * @param in the stream to read, not closed by this method
+	 * @return the file contents
+	 * @throws IOException when the stream cannot be read or is not a valid vector file
+	 */
+	public static VectorFile read(InputStream in) throws IOException
+	{
+		return parse(ByteBuffer.wrap(in.readAllBytes()));
+	}
+
+	/**
+	 * Write a vector file. The file is written next to the target and then moved in place,
+	 * so concurrent readers never see a partially written file.
+	 *
+	 * @param file the target file
+	 * @param modelId the model that produced the vectors
+	 * @param checksum checksum of the source lines
+	 * @param vectors the vectors, all of the same dimension
+	 * @throws IOException when the file cannot be written
+	 */
+	public static void write(Path file, String modelId, String checksum, float[][] vectors) throws IOException
+	{
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (OutputStream os = Files.newOutputStream(tmp))
+		{
+			write(os, modelId, checksum, vectors);
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Write vector file contents to a stream.
+	 */
+	public static void write(OutputStream os, String modelId, String checksum, float[][] vectors) throws IOException
+	{
+		int dimension = vectors.length > 0 ? vectors[0].length : 0;
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeUTF(modelId);
+		out.writeUTF(checksum);
+		out.writeInt(dimension);
+		out.writeInt(vectors.length);
+		for (float[] vector : vectors)
+		{
+			if (vector.length != dimension)
+			{
+				throw new IOException("Vector dimension mismatch: " + vector.length + " != " + dimension);
+			}
+			for (float v : vector)
+			{
+				out.writeFloat(v);
+			}
+		}
+		out.flush();
+	}
+
+	private static VectorFile parse(ByteBuffer buffer) throws IOException
+	{
+		try
+		{
+			if (buffer.getInt() != MAGIC)
+			{
+				throw new IOException("Not a vector file");
+			}
+			int version = buffer.getInt();
+			if (version != VERSION)
+			{
+				throw new IOException("Unsupported vector file version: " + version);
+			}
+			String modelId = readUTF(buffer);
+			String checksum = readUTF(buffer);
+			int dimension = buffer.getInt();
+			int count = buffer.getInt();
+			if (dimension < 0 || count < 0 || (long)dimension * count * Float.BYTES > buffer.remaining())
+			{
+				throw new IOException("Corrupt vector file: " + count + " x " + dimension);
+			}
+			float[][] vectors = new float[count][dimension];
+			FloatBuffer floats = buffer.asFloatBuffer();
+			for (float[] vector : vectors)
+			{
+				floats.get(vector);
+			}
+			return new VectorFile(modelId, checksum, dimension, vectors);
+		}
+		catch (BufferUnderflowException e)
+		{
+			throw new IOException("Truncated vector file", e);
+		}
+	}
+
+	/**
+	 * Read a string written by {@link DataOutputStream#writeUTF(String)}.
+	 * Only the modified UTF-8 of plain ids and hex checksums is expected here, which is standard UTF-8.
+	 */
+	private static String readUTF(ByteBuffer buffer)
+	{
+		int length = buffer.getShort() & 0xFFFF;
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ This file belongs to the Servoy development and deployment environment, Copyright (C) 1997-2025 Servoy BV
+
+ This program is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Affero General Public License as published by the Free
+ Software Foundation; either version 3 of the License, or (at your option) any
+ later version.
+
+ This program is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License along
+ with this program; if not, see http://www.gnu.org/licenses or write to the Free
+ Software Foundation,Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301
+*/
+
+package com.servoy.eclipse.knowledgebase.service;
+
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Numeric kernels for embedding vectors: masked mean pooling, L2 normalization and dot-product scoring.
+ *
+ * The loops are written so the JIT can use SIMD instructions: element-wise loops (pooling, scaling) are plain
+ * array loops that C2 auto-vectorizes, and reductions (dot products) use several independent accumulators,
+ * because a single float accumulator forces strictly sequential additions.
+ *
+ * @since 2026.3
+ */
+public final class VectorMath
+{
+	private VectorMath()
+	{
+	}
+
+	/**
+	 * Dot product of two vector slices.
+	 */
+	public static float dot(float[] a, int aOffset, float[] b, int bOffset, int length)
+	{
+		float s0 = 0, s1 = 0, s2 = 0, s3 = 0, s4 = 0, s5 = 0, s6 = 0, s7 = 0;
+		int i = 0;
+		for (int bound = length - 7; i < bound; i += 8)
+		{
+			int ai = aOffset + i;
+			int bi = bOffset + i;
+			s0 += a[ai] * b[bi];
+			s1 += a[ai + 1] * b[bi + 1];
+			s2 += a[ai + 2] * b[bi + 2];
+			s3 += a[ai + 3] * b[bi + 3];
+			s4 += a[ai + 4] * b[bi + 4];
+			s5 += a[ai + 5] * b[bi + 5];
+			s6 += a[ai + 6] * b[bi + 6];
+			s7 += a[ai + 7] * b[bi + 7];
+		}
+		for (; i < length; i++)
+		{
+			s0 += a[aOffset + i] * b[bOffset + i];
+		}
+		return ((s0 + s1) + (s2 + s3)) + ((s4 + s5) + (s6 + s7));
+	}
+
+	/**
+	 * Score a query against every row of a row-major matrix.
+	 *
+	 * @param matrix row-major vectors, row r at [r * dimension, (r + 1) * dimension)
+	 * @param rows number of rows to score
+	 * @param dimension vector dimension
+	 * @param query the query vector
+	 * @param scores receives the dot product of each row with the query, length at least rows
+	 */
+	public static void dotAll(float[] matrix, int rows, int dimension, float[] query, float[] scores)
+	{
+		for (int row = 0, offset = 0; row < rows; row++, offset += dimension)
+		{
+			scores[row] = dot(matrix, offset, query, 0, dimension);
+		}
+	}
+
+	/**
+	 * Score several queries against every row of a row-major matrix in one pass: each row is read from memory once
+	 * and scored against all queries while it is in cache, instead of streaming the whole matrix once per query.
+	 *
+	 * @param matrix row-major vectors, row r at [r * dimension, (r + 1) * dimension)
+	 * @param rows number of rows to score
+	 * @param dimension vector dimension
+	 * @param queries the query vectors
+	 * @param scores receives the dot product of each row with query q in scores[q], each of length at least rows
+	 */
+	public static void dotAll(float[] matrix, int rows, int dimension, float[][] queries, float[][] scores)
+	{
+		for (int row = 0, offset = 0; row < rows; row++, offset += dimension)
+		{
+			for (int q = 0; q < queries.length; q++)
+			{
+				scores[q][row] = dot(matrix, offset, queries[q], 0, dimension);
+			}
+		}
+	}
+
+	/**
+	 * Mean of the token vectors whose attention mask is 1, read in place from the model's output buffer.
+	 * The buffers are read with absolute gets, so a direct buffer is not copied to the heap first; copying turned out slower
+	 * than the pooling itself.
+	 *
+	 * @param tokenVectors row-major token vectors, token t of the text at [offset + t * dimension, offset + (t + 1) * dimension)
+	 * @param offset index of the first token vector of the text
+	 * @param attentionMask mask per token; padding tokens have 0
+	 * @param maskOffset index of the mask of the first token of the text
+	 * @param tokens number of tokens of the text, including padding
+	 * @param dimension vector dimension
+	 * @return the pooled (not normalized) vector
+	 */
+	public static float[] meanPooling(FloatBuffer tokenVectors, int offset, LongBuffer attentionMask, int maskOffset, int tokens, int dimension)
+	{
+		float[] result = new float[dimension];
+		int count = 0;
+		for (int t = 0, tokenOffset = offset; t < tokens; t++, tokenOffset += dimension)
+		{
+			if (attentionMask.get(maskOffset + t) == 1)
+			{
+				for (int j = 0; j < dimension; j++)
+				{
+					result[j] += tokenVectors.get(tokenOffset + j);
+				}
+				count++;
+			}
+		}
+		if (count > 0)
+		{
+			float inverse = 1f / count;
+			for (int j = 0; j < dimension; j++)
+			{
+				result[j] *= inverse;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Scale a vector in place to unit L2 length; zero vectors are left unchanged.
+	 */
+	public static void normalize(float[] vector)
+	{
+		float norm = (float)Math.sqrt(dot(vector, 0, vector, 0, vector.length));
+		if (norm > 0)
+		{
+			float inverse = 1 / norm;
+			for (int i = 0; i < vector.length; i++)
+			{
+				vector[i] *= inverse;
+			}
+		}
+	}
+}
@@ -0,0 +1,350 @@
+/*
+ This file belongs to the Servoy development and deployment environment, Copyright (C) 1997-2025 Servoy BV
+
+ This program is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Affero General Public License as published by the Free
+ Software Foundation; either version 3 of the License, or (at your option) any
+ later version.
+
+ This program is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License along
+ with this program; if not, see http://www.gnu.org/licenses or write to the Free
+ Software Foundation,Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301
+*/
+
+package com.servoy.eclipse.knowledgebase.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact store for knowledge embeddings.
+ *
+ * All vectors live in one row-major float[] (row i occupies [i * dimension, (i + 1) * dimension)),
+ * next to a String[] of texts and an int[] of label ids. Labels (the metadata key/value pair of an entry, like intent=FORMS)
+ * are interned, so the thousands of lines of a knowledge base share a handful of label objects instead of
+ * each carrying an Embedding, a TextSegment and a Metadata map.
+ *
+ * Rows are identified by insertion order and are used as ids by the {@link IVectorIndex} implementations.
+ * A store is filled by one thread and then only read; new rows are added to a {@link #copy()}.
+ * An index that keeps its own compact copy of the vectors can move the vectors of a filled store out of the heap
+ * into a memory-mapped file, see {@link #mapVectors(Path)}.
+ *
+ * @since 2026.3
+ */
+public final class VectorStore
+{
+	private static final int INITIAL_CAPACITY = 256;
+	private static final int WRITE_CHUNK_FLOATS = 16 * 1024;
+	private static final String MAPPED_FILE_PREFIX = "vectors-";
+	private static final String MAPPED_FILE_SUFFIX = ".f32";
+
+	/**
+	 * Metadata key/value pair shared by all entries of one category.
+	 */
+	public record Label(String key, String value)
+	{
+	}
+
+	private final int dimension;
+	private float[] data; // null once the vectors are mapped
+	private FloatBuffer mappedData; // the vectors in a memory-mapped file, see #mapVectors(Path)
+	private String[] texts;
+	private int[] labelIds;
+	private int size;
+
+	private final List<Label> labels = new ArrayList<>();
+	private final Map<Label, Integer> labelLookup = new HashMap<>();
+
+	public VectorStore(int dimension)
+	{
+		this.dimension = dimension;
+		this.data = new float[INITIAL_CAPACITY * dimension];
+		this.texts = new String[INITIAL_CAPACITY];
+		this.labelIds = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Append an entry.
+	 *
+	 * @param vector the normalized embedding, copied into the store
+	 * @param text the embedded text
+	 * @param key the metadata key
+	 * @param value the metadata value
+	 * @return the row id of the entry
+	 */
+	public int add(float[] vector, String text, String key, String value)
+	{
+		if (data == null)
+		{
+			throw new IllegalStateException("Vectors are mapped, add to a copy of the store");
+		}
+		if (vector.length != dimension)
+		{
+			throw new IllegalArgumentException("Expected vector of dimension " + dimension + " but got " + vector.length);
+		}
+		if (size == texts.length)
+		{
+			int capacity = texts.length * 2;
+			data = Arrays.copyOf(data, capacity * dimension);
+			texts = Arrays.copyOf(texts, capacity);
+			labelIds = Arrays.copyOf(labelIds, capacity);
+		}
+		int row = size;
+		System.arraycopy(vector, 0, data, row * dimension, dimension);
+		texts[row] = text;
+		labelIds[row] = internLabel(new Label(key, value));
+		size++;
+		return row;
+	}
+
+	private int internLabel(Label label)
+	{
+		Integer id = labelLookup.get(label);
+		if (id == null)
+		{
+			id = Integer.valueOf(labels.size());
+			labels.add(label);
+			labelLookup.put(label, id);
+		}
+		return id.intValue();
+	}
+
+	/**
+	 * Dot product of a stored row with a vector; the cosine similarity for normalized vectors.
+	 */
+	public float dot(int row, float[] vector)
+	{
+		float[] values = data;
+		return values != null ? VectorMath.dot(values, row * dimension, vector, 0, dimension) : VectorMath.dot(readRow(row), 0, vector, 0, dimension);
+	}
+
+	/**
+	 * Dot product of two stored rows.
+	 */
+	public float dot(int row, int otherRow)
+	{
+		float[] values = data;
+		if (values == null)
+		{
+			return VectorMath.dot(readRow(row), 0, readRow(otherRow), 0, dimension);
+		}
+		return VectorMath.dot(values, row * dimension, values, otherRow * dimension, dimension);
+	}
+
+	/**
+	 * Score a vector against the first rows of the store in one pass over the contiguous data.
+	 *
+	 * @param vector the query vector
+	 * @param rows number of rows to score
+	 * @param scores receives the dot product per row
+	 */
+	public void dotAll(float[] vector, int rows, float[] scores)
+	{
+		float[] values = data;
+		if (values == null)
+		{
+			for (int row = 0; row < rows; row++)
+			{
+				scores[row] = dot(row, vector);
+			}
+			return;
+		}
+		VectorMath.dotAll(values, rows, dimension, vector, scores);
+	}
+
+	/**
+	 * Score several vectors against the first rows of the store in one pass over the contiguous data.
+	 *
+	 * @param vectors the query vectors
+	 * @param rows number of rows to score
+	 * @param scores receives the dot products of vector q per row in scores[q]
+	 */
+	public void dotAll(float[][] vectors, int rows, float[][] scores)
+	{
+		float[] values = data;
+		if (values == null)
+		{
+			for (int row = 0; row < rows; row++)
+			{
+				float[] rowValues = readRow(row);
+				for (int q = 0; q < vectors.length; q++)
+				{
+					scores[q][row] = VectorMath.dot(rowValues, 0, vectors[q], 0, dimension);
+				}
+			}
+			return;
+		}
+		VectorMath.dotAll(values, rows, dimension, vectors, scores);
+	}
+
+	/**
+	 * Copy of a stored row.
+	 */
+	public float[] getVector(int row)
+	{
+		float[] values = data;
+		return values != null ? Arrays.copyOfRange(values, row * dimension, (row + 1) * dimension) : readRow(row);
+	}
+
+	public String getText(int row)
+	{
+		return texts[row];
+	}
+
+	public Label getLabel(int row)
+	{
+		return labels.get(labelIds[row]);
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public int dimension()
+	{
+		return dimension;
+	}
+
+	/**
+	 * Copy of this store that can be appended to without affecting this store.
+	 */
+	public VectorStore copy()
+	{
+		VectorStore copy = new VectorStore(dimension);
+		if (data != null)
+		{
+			copy.data = data.clone();
+		}
+		else
+		{
+			copy.data = new float[texts.length * dimension];
+			mappedData.get(0, copy.data, 0, size * dimension);
+		}
+		copy.texts = texts.clone();
+		copy.labelIds = labelIds.clone();
+		copy.size = size;
+		copy.labels.addAll(labels);
+		copy.labelLookup.putAll(labelLookup);
+		return copy;
+	}
+
+	/**
+	 * Move the vectors out of the heap into a memory-mapped file. Searches then only page in the rows they read,
+	 * which suits an index that scans its own compact copy of the vectors and re-scores a few rows at full precision.
+	 * This store can no longer be added to, its {@link #copy()} can.
+	 *
+	 * The file is deleted right away; where a mapped file cannot be deleted it is deleted on exit,
+	 * and left-overs of a crash are removed by the next {@link #deleteMappedFiles(Path)}.
+	 *
+	 * @param directory directory for the file, created when needed
+	 * @throws IOException when the file cannot be written, the vectors then stay on the heap
+	 */
+	public void mapVectors(Path directory) throws IOException
+	{
+		if (data == null || size == 0)
+		{
+			return;
+		}
+		Files.createDirectories(directory);
+		Path file = Files.createTempFile(directory, MAPPED_FILE_PREFIX, MAPPED_FILE_SUFFIX);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE))
+		{
+			int floats = size * dimension;
+			ByteBuffer chunk = ByteBuffer.allocate(WRITE_CHUNK_FLOATS * Float.BYTES).order(ByteOrder.nativeOrder());
+			long position = 0;
+			for (int offset = 0; offset < floats; offset += WRITE_CHUNK_FLOATS)
+			{
+				int count = Math.min(WRITE_CHUNK_FLOATS, floats - offset);
+				chunk.clear();
+				chunk.asFloatBuffer().put(data, offset, count);
+				chunk.limit(count * Float.BYTES);
+				while (chunk.hasRemaining())
+				{
+					position += channel.write(chunk, position);
+				}
+			}
+			mappedData = channel.map(FileChannel.MapMode.READ_ONLY, 0, (long)floats * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		}
+		catch (IOException e)
+		{
+			Files.deleteIfExists(file);
+			throw e;
+		}
+		data = null;
+		try
+		{
+			Files.delete(file);
+		}
+		catch (IOException e)
+		{
+			file.toFile().deleteOnExit();
+		}
+	}
+
+	/**
+	 * Delete the files left behind by {@link #mapVectors(Path)}, e.g. after a crash. Only call this before any store is mapped.
+	 */
+	public static void deleteMappedFiles(Path directory)
+	{
+		if (!Files.isDirectory(directory))
+		{
+			return;
+		}
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, MAPPED_FILE_PREFIX + "*" + MAPPED_FILE_SUFFIX))
+		{
+			for (Path file : files)
+			{
+				Files.deleteIfExists(file);
+			}
+		}
+		catch (IOException e)
+		{
+			// still mapped by another workbench on the same workspace, or not writable; cleaned up on a later start
+		}
+	}
+
+	/**
+	 * @return true when the vectors are in a memory-mapped file instead of on the heap
+	 */
+	public boolean isMapped()
+	{
+		return data == null;
+	}
+
+	private float[] readRow(int row)
+	{
+		float[] values = new float[dimension];
+		mappedData.get(row * dimension, values);
+		return values;
+	}
+
+	/**
+	 * @return approximate number of heap bytes held by the vectors, texts and labels of this store; mapped vectors are not counted
+	 */
+	public long estimateMemoryUsage()
+	{
+		long bytes = (data != null ? (long)data.length * Float.BYTES : 0) + (long)labelIds.length * Integer.BYTES + (long)texts.length * 8;
+		for (int i = 0; i < size; i++)
+		{
+			bytes += 40 + 2L * texts[i].length();
+		}
+		return bytes;
+	}
+}
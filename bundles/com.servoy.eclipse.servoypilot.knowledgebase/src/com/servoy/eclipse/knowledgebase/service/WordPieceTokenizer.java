@@ -0,0 +1,390 @@
+/*
+ This file belongs to the Servoy development and deployment environment, Copyright (C) 1997-2025 Servoy BV
+
+ This program is free software; you can redistribute it and/or modify it under
+ the terms of the GNU Affero General Public License as published by the Free
+ Software Foundation; either version 3 of the License, or (at your option) any
+ later version.
+
+ This program is distributed in the hope that it will be useful, but WITHOUT
+ ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License along
+ with this program; if not, see http://www.gnu.org/licenses or write to the Free
+ Software Foundation,Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301
+*/
+
+package com.servoy.eclipse.knowledgebase.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.Arrays;
+
+/**
+ * In-process BERT WordPiece tokenizer (uncased), driven by the model's vocab.txt.
+ *
+ * Produces the same input ids as the tokenizer.onnx of the BGE model without a second ONNX session, JNI call or string tensor:
+ * basic tokenization (clean up, lower case, strip accents, split on whitespace, punctuation and CJK characters), then
+ * greedy longest-match-first WordPiece over a character trie, wrapped in [CLS] ... [SEP].
+ *
+ * Instances are immutable and thread-safe.
+ *
+ * @since 2026.3
+ */
+public final class WordPieceTokenizer
+{
+	private static final int MAX_CHARS_PER_WORD = 100;
+	private static final String CONTINUATION_PREFIX = "##";
+
+	private final Trie wordStarts;
+	private final Trie continuations;
+	private final int clsId;
+	private final int sepId;
+	private final int unkId;
+	private final int maxLength;
+
+	private WordPieceTokenizer(Trie wordStarts, Trie continuations, int clsId, int sepId, int unkId, int maxLength)
+	{
+		this.wordStarts = wordStarts;
+		this.continuations = continuations;
+		this.clsId = clsId;
+		this.sepId = sepId;
+		this.unkId = unkId;
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Load a tokenizer from a vocab.txt: one token per line, the line number being the token id.
+	 *
+	 * @param vocab the vocabulary stream, not closed by this method
+	 * @param maxLength maximum number of ids per text including [CLS] and [SEP], e.g. 512
+	 * @return the tokenizer
+	 * @throws IOException when the vocabulary cannot be read or lacks the special tokens
+	 */
+	public static WordPieceTokenizer load(InputStream vocab, int maxLength) throws IOException
+	{
+		Trie wordStarts = new Trie();
+		Trie continuations = new Trie();
+		int clsId = -1, sepId = -1, unkId = -1;
+		BufferedReader reader = new BufferedReader(new InputStreamReader(vocab, StandardCharsets.UTF_8));
+		String token;
+		int id = 0;
+		while ((token = reader.readLine()) != null)
+		{
+			switch (token)
+			{
+				case "[CLS]" -> clsId = id;
+				case "[SEP]" -> sepId = id;
+				case "[UNK]" -> unkId = id;
+				default ->
+				{
+					if (token.startsWith(CONTINUATION_PREFIX) && token.length() > CONTINUATION_PREFIX.length())
+					{
+						continuations.add(token, CONTINUATION_PREFIX.length(), id);
+					}
+					else if (!token.isEmpty())
+					{
+						wordStarts.add(token, 0, id);
+					}
+				}
+			}
+			id++;
+		}
+		if (clsId < 0 || sepId < 0 || unkId < 0)
+		{
+			throw new IOException("Vocabulary lacks [CLS], [SEP] or [UNK]");
+		}
+		return new WordPieceTokenizer(wordStarts, continuations, clsId, sepId, unkId, maxLength);
+	}
+
+	/**
+	 * Tokenize a text. The attention mask of the result is 1 and the token type 0 for every id.
+	 *
+	 * @param text the text
+	 * @return the input ids, starting with [CLS] and ending with [SEP]
+	 */
+	public long[] encode(String text)
+	{
+		String cleaned = clean(text);
+		// every word piece consumes at least one character, so this is enough
+		long[] ids = new long[Math.min(maxLength, cleaned.length() + 2)];
+		int count = 0;
+		ids[count++] = clsId;
+		int limit = ids.length - 1; // room for [SEP]
+		int length = cleaned.length();
+		int i = 0;
+		while (i < length && count < limit)
+		{
+			char c = cleaned.charAt(i);
+			if (c == ' ')
+			{
+				i++;
+				continue;
+			}
+			int end = i + 1;
+			if (!isPunctuation(c) && !isCjk(c))
+			{
+				while (end < length && cleaned.charAt(end) != ' ' && !isPunctuation(cleaned.charAt(end)) && !isCjk(cleaned.charAt(end)))
+				{
+					end++;
+				}
+			}
+			count = wordPiece(cleaned, i, end, ids, count, limit);
+			i = end;
+		}
+		ids[count++] = sepId;
+		return count == ids.length ? ids : Arrays.copyOf(ids, count);
+	}
+
+	/**
+	 * Greedy longest-match-first WordPiece of one word; the whole word becomes [UNK] when a piece cannot be matched.
+	 *
+	 * @return the new number of ids
+	 */
+	private int wordPiece(String text, int start, int end, long[] ids, int count, int limit)
+	{
+		if (end - start > MAX_CHARS_PER_WORD)
+		{
+			ids[count] = unkId;
+			return count + 1;
+		}
+		int newCount = count;
+		int position = start;
+		while (position < end)
+		{
+			Trie trie = position == start ? wordStarts : continuations;
+			int node = 0;
+			int matchId = -1;
+			int matchEnd = -1;
+			for (int i = position; i < end; i++)
+			{
+				node = trie.child(node, text.charAt(i));
+				if (node < 0)
+				{
+					break;
+				}
+				int tokenId = trie.tokenId(node);
+				if (tokenId >= 0)
+				{
+					matchId = tokenId;
+					matchEnd = i + 1;
+				}
+			}
+			if (matchId < 0 || newCount >= limit)
+			{
+				if (matchId < 0)
+				{
+					ids[count] = unkId;
+					return count + 1;
+				}
+				return newCount;
+			}
+			ids[newCount++] = matchId;
+			position = matchEnd;
+		}
+		return newCount;
+	}
+
+	/**
+	 * BERT basic tokenizer normalization: drop control characters, map whitespace to spaces, lower case
+	 * and strip accents (NFD, then drop combining marks).
+	 */
+	private static String clean(String text)
+	{
+		StringBuilder sb = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			if (c == 0 || c == 0xFFFD)
+			{
+				continue;
+			}
+			if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || Character.getType(c) == Character.SPACE_SEPARATOR)
+			{
+				sb.append(' ');
+			}
+			else if (!isControl(c))
+			{
+				sb.append(Character.toLowerCase(c));
+			}
+		}
+		String lowered = sb.toString();
+		for (int i = 0; i < lowered.length(); i++)
+		{
+			if (lowered.charAt(i) >= 0x80)
+			{
+				String decomposed = Normalizer.normalize(lowered, Normalizer.Form.NFD);
+				StringBuilder stripped = new StringBuilder(decomposed.length());
+				for (int j = 0; j < decomposed.length(); j++)
+				{
+					char c = decomposed.charAt(j);
+					if (Character.getType(c) != Character.NON_SPACING_MARK)
+					{
+						stripped.append(c);
+					}
+				}
+				return stripped.toString();
+			}
+		}
+		return lowered;
+	}
+
+	private static boolean isControl(char c)
+	{
+		int type = Character.getType(c);
+		return type == Character.CONTROL || type == Character.FORMAT;
+	}
+
+	private static boolean isPunctuation(char c)
+	{
+		if ((c >= 33 && c <= 47) || (c >= 58 && c <= 64) || (c >= 91 && c <= 96) || (c >= 123 && c <= 126))
+		{
+			return true;
+		}
+		if (c < 0x80)
+		{
+			return false;
+		}
+		return switch (Character.getType(c))
+		{
+			case Character.CONNECTOR_PUNCTUATION, Character.DASH_PUNCTUATION, Character.START_PUNCTUATION, Character.END_PUNCTUATION,
+				Character.INITIAL_QUOTE_PUNCTUATION, Character.FINAL_QUOTE_PUNCTUATION, Character.OTHER_PUNCTUATION -> true;
+			default -> false;
+		};
+	}
+
+	private static boolean isCjk(char c)
+	{
+		return (c >= 0x4E00 && c <= 0x9FFF) || (c >= 0x3400 && c <= 0x4DBF) || (c >= 0xF900 && c <= 0xFAFF);
+	}
+
+	/**
+	 * Character trie over primitive arrays: edges live in one open-addressing hash table keyed by (node, char),
+	 * so a vocabulary of 30k tokens needs no per-node objects.
+	 */
+	private static final class Trie
+	{
+		private int[] tokenIds = new int[1024];
+		private int nodeCount = 1; // node 0 is the root
+
+		private long[] edgeKeys = new long[4096];
+		private int[] edgeTargets = new int[4096];
+		private int edgeCount;
+
+		Trie()
+		{
+			Arrays.fill(tokenIds, -1);
+			Arrays.fill(edgeKeys, -1);
+		}
+
+		void add(String token, int from, int id)
+		{
+			int node = 0;
+			for (int i = from; i < token.length(); i++)
+			{
+				int next = child(node, token.charAt(i));
+				if (next < 0)
+				{
+					next = newNode();
+					putEdge(node, token.charAt(i), next);
+				}
+				node = next;
+			}
+			if (tokenIds[node] < 0)
+			{
+				tokenIds[node] = id;
+			}
+		}
+
+		int tokenId(int node)
+		{
+			return tokenIds[node];
+		}
+
+		/**
+		 * @return the child node for the character, or -1
+		 */
+		int child(int node, char c)
+		{
+			long key = edgeKey(node, c);
+			int mask = edgeKeys.length - 1;
+			for (int slot = hash(key) & mask;; slot = (slot + 1) & mask)
+			{
+				long k = edgeKeys[slot];
+				if (k == key)
+				{
+					return edgeTargets[slot];
+				}
+				if (k == -1)
+				{
+					return -1;
+				}
+			}
+		}
+
+		private int newNode()
+		{
+			if (nodeCount == tokenIds.length)
+			{
+				int oldLength = tokenIds.length;
+				tokenIds = Arrays.copyOf(tokenIds, oldLength * 2);
+				Arrays.fill(tokenIds, oldLength, tokenIds.length, -1);
+			}
+			return nodeCount++;
+		}
+
+		private void putEdge(int node, char c, int target)
+		{
+			if ((edgeCount + 1) * 2 > edgeKeys.length)
+			{
+				rehash(edgeKeys.length * 2);
+			}
+			insert(edgeKey(node, c), target);
+			edgeCount++;
+		}
+
+		private void insert(long key, int target)
+		{
+			int mask = edgeKeys.length - 1;
+			int slot = hash(key) & mask;
+			while (edgeKeys[slot] != -1)
+			{
+				slot = (slot + 1) & mask;
+			}
+			edgeKeys[slot] = key;
+			edgeTargets[slot] = target;
+		}
+
+		private void rehash(int capacity)
+		{
+			long[] oldKeys = edgeKeys;
+			int[] oldTargets = edgeTargets;
+			edgeKeys = new long[capacity];
+			edgeTargets = new int[capacity];
+			Arrays.fill(edgeKeys, -1);
+			for (int i = 0; i < oldKeys.length; i++)
+			{
+				if (oldKeys[i] != -1)
+				{
+					insert(oldKeys[i], oldTargets[i]);
+				}
+			}
+		}
+
+		private static long edgeKey(int node, char c)
+		{
+			return ((long)node << 16) | c;
+		}
+
+		private static int hash(long key)
+		{
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int)(h ^ (h >>> 32));
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package com.servoy.eclipse.servoypilot.ai;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.Content;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.TextContent;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.TokenCountEstimator;
+
+/**
+ * Local token count estimate that works for every chat model: about 4 characters per token, plus a small overhead per message.
+ *
+ * It needs no model specific tokenizer and no call to the provider, which is good enough to keep the chat memory
+ * within a budget; it is not exact enough to bill by.
+ */
+public class ApproximateTokenCountEstimator implements TokenCountEstimator
+{
+	private static final int CHARS_PER_TOKEN = 4;
+	private static final int TOKENS_PER_MESSAGE = 4; // role and separators
+	private static final int TOKENS_PER_NON_TEXT_CONTENT = 256; // images and other media, a rough average
+
+	@Override
+	public int estimateTokenCountInText(String text)
+	{
+		return text != null ? (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN : 0;
+	}
+
+	@Override
+	public int estimateTokenCountInMessage(ChatMessage message)
+	{
+		int tokens = TOKENS_PER_MESSAGE;
+		if (message instanceof SystemMessage systemMessage)
+		{
+			tokens += estimateTokenCountInText(systemMessage.text());
+		}
+		else if (message instanceof UserMessage userMessage)
+		{
+			for (Content content : userMessage.contents())
+			{
+				tokens += content instanceof TextContent textContent ? estimateTokenCountInText(textContent.text()) : TOKENS_PER_NON_TEXT_CONTENT;
+			}
+		}
+		else if (message instanceof AiMessage aiMessage)
+		{
+			tokens += estimateTokenCountInText(aiMessage.text());
+			if (aiMessage.hasToolExecutionRequests())
+			{
+				for (ToolExecutionRequest request : aiMessage.toolExecutionRequests())
+				{
+					tokens += TOKENS_PER_MESSAGE + estimateTokenCountInText(request.name()) + estimateTokenCountInText(request.arguments());
+				}
+			}
+		}
+		else if (message instanceof ToolExecutionResultMessage toolResult)
+		{
+			tokens += estimateTokenCountInText(toolResult.toolName()) + estimateTokenCountInText(toolResult.text());
+		}
+		return tokens;
+	}
+
+	@Override
+	public int estimateTokenCountInMessages(Iterable<ChatMessage> messages)
+	{
+		int tokens = 0;
+		for (ChatMessage message : messages)
+		{
+			tokens += estimateTokenCountInMessage(message);
+		}
+		return tokens;
+	}
+}
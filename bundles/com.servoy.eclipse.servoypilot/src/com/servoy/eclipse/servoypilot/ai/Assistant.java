@@ -3,8 +3,13 @@ package com.servoy.eclipse.servoypilot.ai;
 import dev.langchain4j.service.MemoryId;
 import dev.langchain4j.service.TokenStream;
 import dev.langchain4j.service.UserMessage;
+import dev.langchain4j.service.memory.ChatMemoryAccess;
 
-public interface Assistant
+/**
+ * The chat assistant. Every memory id (one per solution) has its own chat memory;
+ * {@link ChatMemoryAccess} lets the model drop the memory of a conversation that is cleared or evicted.
+ */
+public interface Assistant extends ChatMemoryAccess
 {
 	TokenStream chat(@MemoryId String memoryId, @UserMessage String userMessage);
 }
\ No newline at end of file
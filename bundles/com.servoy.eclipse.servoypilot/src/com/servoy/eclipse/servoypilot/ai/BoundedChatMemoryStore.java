@@ -0,0 +1,295 @@
+package com.servoy.eclipse.servoypilot.ai;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.Content;
+import dev.langchain4j.data.message.ImageContent;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.TextContent;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+
+/**
+ * In-memory {@link ChatMemoryStore} with a bound on the number of conversations, on the total size of their messages
+ * and on how long a conversation may stay unused.
+ * 
+ * Conversations are kept in least-recently-used order. When a bound is exceeded, or a conversation has not been read
+ * or written for the idle time, the conversation is evicted and the eviction listener is told, so the chat memory
+ * objects of the AI service can be dropped as well. The conversation being written is never evicted for size.
+ * 
+ * With a backing store, this store is a cache in front of it: updates and deletes are written through, and a conversation
+ * that is not resident is read from the backing store. Evicting a conversation then only drops it from the heap.
+ */
+public class BoundedChatMemoryStore implements ChatMemoryStore
+{
+	/**
+	 * Resident conversations and eviction counts.
+	 * 
+	 * @param conversations conversations in the store
+	 * @param messages messages of all conversations
+	 * @param messageBytes estimated size of all messages, from the lengths of their texts
+	 * @param evictedForSize conversations evicted for the conversation or byte bound
+	 * @param evictedIdle conversations evicted because they were idle
+	 */
+	public record Stats(int conversations, int messages, long messageBytes, long evictedForSize, long evictedIdle)
+	{
+		@Override
+		public String toString()
+		{
+			return String.format(Locale.ROOT, "%d conversation(s), %d message(s), %d KB; evicted %d for size, %d idle", Integer.valueOf(conversations),
+				Integer.valueOf(messages), Long.valueOf(messageBytes / 1024), Long.valueOf(evictedForSize), Long.valueOf(evictedIdle));
+		}
+	}
+
+	private static final int MESSAGE_OVERHEAD_BYTES = 64; // message object, its content list and ids
+
+	private static final class Conversation
+	{
+		final List<ChatMessage> messages;
+		final long bytes;
+		long lastAccess;
+
+		Conversation(List<ChatMessage> messages, long bytes, long lastAccess)
+		{
+			this.messages = messages;
+			this.bytes = bytes;
+			this.lastAccess = lastAccess;
+		}
+	}
+
+	private final int maxConversations;
+	private final long maxBytes;
+	private final long maxIdleNanos;
+	private final Consumer<Object> evictionListener;
+	private final ChatMemoryStore backingStore;
+	private final LinkedHashMap<Object, Conversation> conversations = new LinkedHashMap<>(16, 0.75f, true); // access order
+	private long bytes;
+	private long evictedForSize;
+	private long evictedIdle;
+
+	/**
+	 * @param maxConversations maximum number of conversations kept
+	 * @param maxBytes maximum estimated size of the messages of all conversations
+	 * @param maxIdle time after which an unused conversation is evicted
+	 * @param evictionListener called with the memory id of every evicted conversation, outside of the store's lock
+	 */
+	public BoundedChatMemoryStore(int maxConversations, long maxBytes, Duration maxIdle, Consumer<Object> evictionListener)
+	{
+		this(maxConversations, maxBytes, maxIdle, evictionListener, null);
+	}
+
+	/**
+	 * @param maxConversations maximum number of conversations kept
+	 * @param maxBytes maximum estimated size of the messages of all conversations
+	 * @param maxIdle time after which an unused conversation is evicted
+	 * @param evictionListener called with the memory id of every evicted conversation, outside of the store's lock
+	 * @param backingStore store that keeps all conversations, can be null
+	 */
+	public BoundedChatMemoryStore(int maxConversations, long maxBytes, Duration maxIdle, Consumer<Object> evictionListener, ChatMemoryStore backingStore)
+	{
+		this.maxConversations = Math.max(1, maxConversations);
+		this.maxBytes = maxBytes;
+		this.maxIdleNanos = maxIdle.toNanos();
+		this.evictionListener = evictionListener;
+		this.backingStore = backingStore;
+	}
+
+	@Override
+	public List<ChatMessage> getMessages(Object memoryId)
+	{
+		List<Object> evicted = new ArrayList<>();
+		List<ChatMessage> messages;
+		synchronized (this)
+		{
+			long now = System.nanoTime();
+			evictIdle(now, evicted);
+			Conversation conversation = conversations.get(memoryId);
+			if (conversation != null)
+			{
+				conversation.lastAccess = now;
+			}
+			messages = conversation != null ? conversation.messages : null;
+		}
+		if (messages == null && backingStore != null)
+		{
+			// not resident, read it outside of the lock; updates of the same conversation come from the same chat memory
+			messages = backingStore.getMessages(memoryId);
+			synchronized (this)
+			{
+				if (!conversations.containsKey(memoryId))
+				{
+					put(memoryId, messages, evicted);
+				}
+			}
+		}
+		notifyEvicted(evicted);
+		return messages != null ? new ArrayList<>(messages) : new ArrayList<>();
+	}
+
+	@Override
+	public void updateMessages(Object memoryId, List<ChatMessage> messages)
+	{
+		List<Object> evicted = new ArrayList<>();
+		synchronized (this)
+		{
+			put(memoryId, messages, evicted);
+		}
+		if (backingStore != null)
+		{
+			backingStore.updateMessages(memoryId, messages);
+		}
+		notifyEvicted(evicted);
+	}
+
+	@Override
+	public void deleteMessages(Object memoryId)
+	{
+		synchronized (this)
+		{
+			Conversation removed = conversations.remove(memoryId);
+			if (removed != null)
+			{
+				bytes -= removed.bytes;
+			}
+		}
+		if (backingStore != null)
+		{
+			backingStore.deleteMessages(memoryId);
+		}
+	}
+
+	/**
+	 * @return the current number of conversations, messages and bytes, and how many conversations were evicted
+	 */
+	public synchronized Stats getStats()
+	{
+		int messages = 0;
+		for (Conversation conversation : conversations.values())
+		{
+			messages += conversation.messages.size();
+		}
+		return new Stats(conversations.size(), messages, bytes, evictedForSize, evictedIdle);
+	}
+
+	/**
+	 * Make messages the resident messages of a conversation, then evict conversations over the bounds.
+	 */
+	private void put(Object memoryId, List<ChatMessage> messages, List<Object> evicted)
+	{
+		long now = System.nanoTime();
+		Conversation previous = conversations.remove(memoryId);
+		if (previous != null)
+		{
+			bytes -= previous.bytes;
+		}
+		long conversationBytes = 0;
+		for (ChatMessage message : messages)
+		{
+			conversationBytes += estimateBytes(message);
+		}
+		conversations.put(memoryId, new Conversation(List.copyOf(messages), conversationBytes, now));
+		bytes += conversationBytes;
+		evictIdle(now, evicted);
+		evictForSize(memoryId, evicted);
+	}
+
+	private void evictIdle(long now, List<Object> evicted)
+	{
+		Iterator<Map.Entry<Object, Conversation>> it = conversations.entrySet().iterator();
+		while (it.hasNext())
+		{
+			Map.Entry<Object, Conversation> entry = it.next();
+			if (now - entry.getValue().lastAccess <= maxIdleNanos)
+			{
+				break; // access order: all later conversations were used more recently
+			}
+			it.remove();
+			bytes -= entry.getValue().bytes;
+			evicted.add(entry.getKey());
+			evictedIdle++;
+		}
+	}
+
+	private void evictForSize(Object keep, List<Object> evicted)
+	{
+		Iterator<Map.Entry<Object, Conversation>> it = conversations.entrySet().iterator();
+		while ((conversations.size() > maxConversations || bytes > maxBytes) && it.hasNext())
+		{
+			Map.Entry<Object, Conversation> entry = it.next();
+			if (entry.getKey().equals(keep))
+			{
+				continue;
+			}
+			it.remove();
+			bytes -= entry.getValue().bytes;
+			evicted.add(entry.getKey());
+			evictedForSize++;
+		}
+	}
+
+	private void notifyEvicted(List<Object> evicted)
+	{
+		if (evictionListener != null)
+		{
+			evicted.forEach(evictionListener);
+		}
+	}
+
+	/**
+	 * Estimate the heap size of a message from the lengths of its strings, without serializing it.
+	 */
+	private static long estimateBytes(ChatMessage message)
+	{
+		long chars = 0;
+		if (message instanceof SystemMessage systemMessage)
+		{
+			chars += length(systemMessage.text());
+		}
+		else if (message instanceof UserMessage userMessage)
+		{
+			for (Content content : userMessage.contents())
+			{
+				if (content instanceof TextContent textContent)
+				{
+					chars += length(textContent.text());
+				}
+				else if (content instanceof ImageContent imageContent)
+				{
+					chars += length(imageContent.image().base64Data()) + (imageContent.image().url() != null ? imageContent.image().url().toString().length() : 0);
+				}
+			}
+		}
+		else if (message instanceof AiMessage aiMessage)
+		{
+			chars += length(aiMessage.text());
+			if (aiMessage.hasToolExecutionRequests())
+			{
+				for (ToolExecutionRequest request : aiMessage.toolExecutionRequests())
+				{
+					chars += length(request.id()) + length(request.name()) + length(request.arguments());
+				}
+			}
+		}
+		else if (message instanceof ToolExecutionResultMessage toolResult)
+		{
+			chars += length(toolResult.id()) + length(toolResult.toolName()) + length(toolResult.text());
+		}
+		return MESSAGE_OVERHEAD_BYTES + chars * Character.BYTES;
+	}
+
+	private static int length(String text)
+	{
+		return text != null ? text.length() : 0;
+	}
+}
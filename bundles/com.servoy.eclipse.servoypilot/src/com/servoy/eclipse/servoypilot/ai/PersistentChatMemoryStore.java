@@ -0,0 +1,461 @@
+package com.servoy.eclipse.servoypilot.ai;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.eclipse.core.runtime.ILog;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageDeserializer;
+import dev.langchain4j.data.message.ChatMessageSerializer;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+
+/**
+ * {@link ChatMemoryStore} that keeps every conversation in an append-only log file, one file per memory id (solution).
+ *
+ * An update only appends the messages that were added; when earlier messages changed (a stubbed tool result, a summary)
+ * a truncate record is appended first. When the log holds more dead than live records it is compacted by copying
+ * the live records to a new file, without parsing them. Torn records at the end of a log, e.g. after a crash, are cut off.
+ *
+ * Only the offsets of the live records are kept in memory; messages are read and parsed when they are asked for,
+ * all of them by {@link #getMessages(Object)} or a page by {@link #getMessages(Object, int, int)}.
+ *
+ * Layout (big-endian):
+ * <pre>
+ * int    magic      0x53434854 ("SCHT")
+ * int    version    1
+ * record*           int length, int crc32 of type and payload, byte type, payload of length bytes
+ * </pre>
+ * An APPEND record holds one message as JSON in UTF-8, a TRUNCATE record the int number of live messages that remain.
+ */
+public class PersistentChatMemoryStore implements ChatMemoryStore
+{
+	private static final ILog logger = ILog.of(PersistentChatMemoryStore.class);
+
+	public static final int MAGIC = 0x53434854;
+	public static final int VERSION = 1;
+	private static final String EXTENSION = ".chatlog";
+	private static final int FILE_HEADER_BYTES = 2 * Integer.BYTES;
+	private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES + 1;
+	private static final byte APPEND = 1;
+	private static final byte TRUNCATE = 2;
+	private static final int MAX_RECORD_BYTES = 64 * 1024 * 1024;
+	private static final long MIN_COMPACT_BYTES = 64 * 1024; // small logs are not worth rewriting
+
+	/**
+	 * The live records of one log file.
+	 */
+	private static final class Log
+	{
+		final Path file;
+		long[] offsets = new long[16]; // of the record headers
+		int[] lengths = new int[16]; // of the JSON payloads
+		int[] hashes = new int[16]; // of the JSON payloads, a changed message mostly differs in length or hash
+		List<WeakReference<ChatMessage>> messages = new ArrayList<>(); // last read or written, to skip serializing unchanged messages
+		int size;
+		int deadRecords;
+		long length;
+
+		Log(Path file)
+		{
+			this.file = file;
+		}
+
+		void add(long offset, byte[] payload, ChatMessage message)
+		{
+			if (size == offsets.length)
+			{
+				offsets = Arrays.copyOf(offsets, size * 2);
+				lengths = Arrays.copyOf(lengths, size * 2);
+				hashes = Arrays.copyOf(hashes, size * 2);
+			}
+			offsets[size] = offset;
+			lengths[size] = payload.length;
+			hashes[size] = hash(payload);
+			if (messages.size() > size)
+			{
+				messages.set(size, new WeakReference<>(message));
+			}
+			else
+			{
+				messages.add(new WeakReference<>(message));
+			}
+			size++;
+		}
+
+		void truncate(int newSize)
+		{
+			deadRecords += size - newSize + 1;
+			size = newSize;
+			messages.subList(Math.min(newSize, messages.size()), messages.size()).clear();
+		}
+
+		boolean isSame(int index, ChatMessage message)
+		{
+			return index < messages.size() && messages.get(index).get() == message;
+		}
+	}
+
+	private final Path directory;
+	private final Map<Object, Log> logs = new HashMap<>();
+
+	/**
+	 * @param directory the directory that holds the log files, created when needed
+	 */
+	public PersistentChatMemoryStore(Path directory)
+	{
+		this.directory = directory;
+	}
+
+	@Override
+	public synchronized List<ChatMessage> getMessages(Object memoryId)
+	{
+		Log log = open(memoryId);
+		return log != null ? read(log, 0, log.size) : new ArrayList<>();
+	}
+
+	/**
+	 * Read a page of a conversation, e.g. the latest messages to show when a solution is activated again.
+	 *
+	 * @param from index of the first message, inclusive
+	 * @param to index of the last message, exclusive; clamped to the number of messages
+	 * @return the messages, empty when there are none in the range
+	 */
+	public synchronized List<ChatMessage> getMessages(Object memoryId, int from, int to)
+	{
+		Log log = open(memoryId);
+		return log != null ? read(log, Math.max(0, from), Math.min(to, log.size)) : new ArrayList<>();
+	}
+
+	/**
+	 * @return the number of messages of a conversation, without reading them
+	 */
+	public synchronized int size(Object memoryId)
+	{
+		Log log = open(memoryId);
+		return log != null ? log.size : 0;
+	}
+
+	@Override
+	public synchronized void updateMessages(Object memoryId, List<ChatMessage> messages)
+	{
+		Log log = open(memoryId);
+		if (log == null)
+		{
+			log = new Log(file(memoryId));
+		}
+
+		// keep the longest unchanged prefix, append the rest
+		int common = 0;
+		List<byte[]> payloads = new ArrayList<>();
+		while (common < Math.min(log.size, messages.size()))
+		{
+			ChatMessage message = messages.get(common);
+			if (!log.isSame(common, message))
+			{
+				byte[] payload = ChatMessageSerializer.messageToJson(message).getBytes(StandardCharsets.UTF_8);
+				if (!isStored(log, common, payload))
+				{
+					payloads.add(payload);
+					break;
+				}
+				log.messages.set(common, new WeakReference<>(message));
+			}
+			common++;
+		}
+		if (common == log.size && common == messages.size())
+		{
+			return;
+		}
+		for (int i = common + payloads.size(); i < messages.size(); i++)
+		{
+			payloads.add(ChatMessageSerializer.messageToJson(messages.get(i)).getBytes(StandardCharsets.UTF_8));
+		}
+
+		try
+		{
+			boolean create = log.length == 0;
+			int bytes = (create ? FILE_HEADER_BYTES : 0) + (common < log.size ? RECORD_HEADER_BYTES + Integer.BYTES : 0);
+			for (byte[] payload : payloads)
+			{
+				bytes += RECORD_HEADER_BYTES + payload.length;
+			}
+			ByteBuffer buffer = ByteBuffer.allocate(bytes);
+			if (create)
+			{
+				buffer.putInt(MAGIC).putInt(VERSION);
+			}
+			if (common < log.size)
+			{
+				putRecord(buffer, TRUNCATE, ByteBuffer.allocate(Integer.BYTES).putInt(common).array());
+				log.truncate(common);
+			}
+			long offset = (create ? 0 : log.length) + buffer.position();
+			for (int i = 0; i < payloads.size(); i++)
+			{
+				byte[] payload = payloads.get(i);
+				putRecord(buffer, APPEND, payload);
+				log.add(offset, payload, messages.get(common + i));
+				offset += RECORD_HEADER_BYTES + payload.length;
+			}
+			buffer.flip();
+			if (create)
+			{
+				Files.createDirectories(directory);
+			}
+			try (FileChannel channel = FileChannel.open(log.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE))
+			{
+				long position = create ? 0 : log.length;
+				while (buffer.hasRemaining())
+				{
+					position += channel.write(buffer, position);
+				}
+				log.length = position;
+			}
+			logs.put(memoryId, log);
+			if (log.deadRecords > log.size && log.length > MIN_COMPACT_BYTES)
+			{
+				compact(log);
+			}
+		}
+		catch (IOException e)
+		{
+			logger.error("Could not write the chat history of " + memoryId + " to " + log.file, e);
+			logs.remove(memoryId); // read again from what was written
+		}
+	}
+
+	@Override
+	public synchronized void deleteMessages(Object memoryId)
+	{
+		logs.remove(memoryId);
+		try
+		{
+			Files.deleteIfExists(file(memoryId));
+		}
+		catch (IOException e)
+		{
+			logger.error("Could not delete the chat history of " + memoryId, e);
+		}
+	}
+
+	/**
+	 * Get the log of a conversation, reading the offsets of its live records when it was not opened before.
+	 *
+	 * @return the log, or null when the conversation has no log file (or it cannot be read)
+	 */
+	private Log open(Object memoryId)
+	{
+		Log log = logs.get(memoryId);
+		if (log != null)
+		{
+			return log;
+		}
+		Path file = file(memoryId);
+		if (!Files.exists(file))
+		{
+			return null;
+		}
+		log = new Log(file);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE))
+		{
+			long fileLength = channel.size();
+			ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+			if (fileLength < FILE_HEADER_BYTES || readFully(channel, header.limit(FILE_HEADER_BYTES), 0).getInt() != MAGIC || header.getInt() != VERSION)
+			{
+				logger.warn("Ignoring chat history " + file + ", it is not a chat log of version " + VERSION);
+				Files.delete(file);
+				return null;
+			}
+			long position = FILE_HEADER_BYTES;
+			while (position + RECORD_HEADER_BYTES <= fileLength)
+			{
+				readFully(channel, header.clear(), position);
+				int length = header.getInt();
+				int crc = header.getInt();
+				byte type = header.get();
+				if (length < 0 || length > MAX_RECORD_BYTES || position + RECORD_HEADER_BYTES + length > fileLength)
+				{
+					break;
+				}
+				byte[] payload = readFully(channel, ByteBuffer.allocate(length), position + RECORD_HEADER_BYTES).array();
+				if (crc(type, payload) != crc)
+				{
+					break;
+				}
+				if (type == APPEND)
+				{
+					log.add(position, payload, null);
+				}
+				else if (type == TRUNCATE)
+				{
+					log.truncate(Math.min(ByteBuffer.wrap(payload).getInt(), log.size));
+				}
+				position += RECORD_HEADER_BYTES + length;
+			}
+			if (position < fileLength)
+			{
+				logger.warn("Cutting off " + (fileLength - position) + " unreadable bytes at the end of chat history " + file);
+				channel.truncate(position);
+			}
+			log.length = position;
+		}
+		catch (IOException e)
+		{
+			logger.error("Could not read chat history " + file, e);
+			return null;
+		}
+		logs.put(memoryId, log);
+		return log;
+	}
+
+	private List<ChatMessage> read(Log log, int from, int to)
+	{
+		List<ChatMessage> messages = new ArrayList<>(Math.max(0, to - from));
+		if (from >= to)
+		{
+			return messages;
+		}
+		try (FileChannel channel = FileChannel.open(log.file, StandardOpenOption.READ))
+		{
+			ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+			for (int i = from; i < to; i++)
+			{
+				ChatMessage message = log.messages.get(i).get();
+				if (message == null)
+				{
+					int length = readFully(channel, header.clear(), log.offsets[i]).getInt();
+					byte[] payload = readFully(channel, ByteBuffer.allocate(length), log.offsets[i] + RECORD_HEADER_BYTES).array();
+					message = ChatMessageDeserializer.messageFromJson(new String(payload, StandardCharsets.UTF_8));
+					log.messages.set(i, new WeakReference<>(message));
+				}
+				messages.add(message);
+			}
+		}
+		catch (IOException | RuntimeException e)
+		{
+			logger.error("Could not read chat history " + log.file, e);
+			return new ArrayList<>();
+		}
+		return messages;
+	}
+
+	/**
+	 * Rewrite a log with only its live records. The new file is written next to the log and then moved in place.
+	 */
+	private void compact(Log log) throws IOException
+	{
+		Path tmp = log.file.resolveSibling(log.file.getFileName() + ".tmp");
+		long oldLength = log.length;
+		long[] offsets = new long[log.size];
+		long position = FILE_HEADER_BYTES;
+		try (FileChannel in = FileChannel.open(log.file, StandardOpenOption.READ);
+			FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+		{
+			ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_BYTES).putInt(MAGIC).putInt(VERSION).flip();
+			while (fileHeader.hasRemaining())
+			{
+				out.write(fileHeader, fileHeader.position());
+			}
+			ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+			for (int i = 0; i < log.size; i++)
+			{
+				long recordLength = RECORD_HEADER_BYTES + readFully(in, header.clear(), log.offsets[i]).getInt();
+				long copied = 0;
+				while (copied < recordLength)
+				{
+					long transferred = in.transferTo(log.offsets[i] + copied, recordLength - copied, out.position(position + copied));
+					if (transferred <= 0)
+					{
+						throw new IOException("Unexpected end of chat history");
+					}
+					copied += transferred;
+				}
+				offsets[i] = position;
+				position += recordLength;
+			}
+		}
+		Files.move(tmp, log.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		System.arraycopy(offsets, 0, log.offsets, 0, offsets.length);
+		log.length = position;
+		log.deadRecords = 0;
+		logger.info("Compacted chat history " + log.file.getFileName() + " from " + oldLength / 1024 + " KB to " + position / 1024 + " KB");
+	}
+
+	/**
+	 * @return the log file of a memory id; characters that are not safe in file names are replaced and a hash keeps the name unique
+	 */
+	private Path file(Object memoryId)
+	{
+		String id = String.valueOf(memoryId);
+		String name = id.replaceAll("[^A-Za-z0-9._-]", "_");
+		if (!name.equals(id))
+		{
+			name += "-" + Integer.toHexString(id.hashCode());
+		}
+		return directory.resolve(name + EXTENSION);
+	}
+
+	private static void putRecord(ByteBuffer buffer, byte type, byte[] payload)
+	{
+		buffer.putInt(payload.length).putInt(crc(type, payload)).put(type).put(payload);
+	}
+
+	private static ByteBuffer readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			if (channel.read(buffer, position + buffer.position()) < 0)
+			{
+				throw new IOException("Unexpected end of chat history");
+			}
+		}
+		return buffer.flip();
+	}
+
+	/**
+	 * @return true when the live record at index holds this payload: same length and hash, confirmed by the bytes on disk
+	 */
+	private boolean isStored(Log log, int index, byte[] payload)
+	{
+		if (payload.length != log.lengths[index] || hash(payload) != log.hashes[index])
+		{
+			return false;
+		}
+		try (FileChannel channel = FileChannel.open(log.file, StandardOpenOption.READ))
+		{
+			return Arrays.equals(payload, readFully(channel, ByteBuffer.allocate(payload.length), log.offsets[index] + RECORD_HEADER_BYTES).array());
+		}
+		catch (IOException e)
+		{
+			logger.warn("Could not compare with the chat history " + log.file + ": " + e.getMessage());
+			return false; // written again
+		}
+	}
+
+	private static int crc(byte type, byte[] payload)
+	{
+		CRC32 crc = new CRC32();
+		crc.update(type);
+		crc.update(payload);
+		return (int)crc.getValue();
+	}
+
+	private static int hash(byte[] payload)
+	{
+		return Arrays.hashCode(payload);
+	}
+}
@@ -3,6 +3,14 @@ package com.servoy.eclipse.servoypilot.ai;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.ILog;
+import org.eclipse.core.runtime.Platform;
+import org.osgi.framework.FrameworkUtil;
 
 import com.servoy.eclipse.servoypilot.preferences.AiConfiguration;
 import com.servoy.eclipse.servoypilot.tools.EclipseTools;
@@ -16,8 +24,9 @@ import com.servoy.eclipse.servoypilot.tools.utility.ContextTools;
 import com.servoy.eclipse.servoypilot.tools.utility.DatabaseTools;
 import com.servoy.eclipse.servoypilot.tools.utility.KnowledgeTools;
 
-import dev.langchain4j.memory.ChatMemory;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
 import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
@@ -25,37 +34,47 @@ import dev.langchain4j.model.googleai.GoogleAiGeminiStreamingChatModel;
 import dev.langchain4j.model.openai.OpenAiChatModel;
 import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
 import dev.langchain4j.service.AiServices;
-import dev.langchain4j.store.memory.chat.ChatMemoryStore;
-import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
 
 public class ServoyAiModel
 {
+	private static final ILog logger = ILog.of(ServoyAiModel.class);
+	private static final int MAX_MEMORY_TOKENS = 24000; // per conversation, older turns are summarized beyond this
+	private static final int MAX_CONVERSATIONS = 16;
+	private static final long MAX_MEMORY_BYTES = 16 * 1024 * 1024;
+	private static final Duration MAX_IDLE = Duration.ofHours(4);
+	private static final String CHAT_HISTORY_DIRECTORY = "chat-history";
+
 	private final Assistant assistant;
-	private final ChatMemoryStore chatMemoryStore;
+	private final BoundedChatMemoryStore chatMemoryStore;
+	private final PersistentChatMemoryStore chatHistoryStore;
 	private final CompletionAssistent completionAssistant;
+	private final SummarizingChatMemory.Metrics tokenMetrics = new SummarizingChatMemory.Metrics();
 
 	public ServoyAiModel(AiConfiguration conf)
 	{
 		String apiKey = conf.getApiKey();
 		String model = conf.getModel();
-		// Create chat memory store
-		this.chatMemoryStore = new InMemoryChatMemoryStore();
+		// Create chat memory store, conversations of solutions that are no longer used are evicted from the heap but kept in the chat history
+		this.chatHistoryStore = createChatHistoryStore();
+		this.chatMemoryStore = new BoundedChatMemoryStore(MAX_CONVERSATIONS, MAX_MEMORY_BYTES, MAX_IDLE, this::onConversationEvicted, chatHistoryStore);
 		
 		// create the models if there is an api key and model name
 		if (apiKey != null && !apiKey.isEmpty() && model != null && !model.isEmpty())
 		{
+			// the fast completion model also summarizes old turns of the chat memory
+			ChatModel completionModel = switch (conf.getSelectedModel())
+				{
+					case OPENAI -> createOpenAICompletionModel(conf);
+					case GEMINI -> createGeminiCompletionModel(conf);
+					case NONE -> null;
+				};
 			assistant = switch (conf.getSelectedModel())
 			{
-				case OPENAI -> createChatServices(createOpenAIModel(conf));
-				case GEMINI -> createChatServices(createGeminiModel(conf));
+				case OPENAI -> createChatServices(createOpenAIModel(conf), completionModel);
+				case GEMINI -> createChatServices(createGeminiModel(conf), completionModel);
 				case NONE -> null;
 			};
-			completionAssistant = switch (conf.getSelectedModel())
-				{
-					case OPENAI -> createCompletionServices(createOpenAICompletionModel(conf));
-					case GEMINI -> createCompletionServices(createGeminiCompletionModel(conf));
-					case NONE -> null;
-				};
+			completionAssistant = completionModel != null ? createCompletionServices(completionModel) : null;
 		}
 		else
 		{
@@ -68,6 +87,25 @@ public class ServoyAiModel
 	
 	
 
+	/**
+	 * The chat history is kept in the workspace .metadata, one log per solution.
+	 * 
+	 * @return the store, or null when there is no workspace to keep it in
+	 */
+	private static PersistentChatMemoryStore createChatHistoryStore()
+	{
+		try
+		{
+			Path directory = Platform.getStateLocation(FrameworkUtil.getBundle(ServoyAiModel.class)).append(CHAT_HISTORY_DIRECTORY).toPath();
+			return new PersistentChatMemoryStore(directory);
+		}
+		catch (RuntimeException e)
+		{
+			logger.warn("Chat history is not kept, no state location: " + e.getMessage());
+			return null;
+		}
+	}
+
 	public Assistant getAssistant()
 	{
 		return assistant;
@@ -89,7 +127,7 @@ public class ServoyAiModel
 		return GoogleAiGeminiStreamingChatModel.builder().apiKey(conf.getApiKey()).modelName(conf.getModel()).build();
 	}
 
-	private Assistant createChatServices(StreamingChatModel model)
+	private Assistant createChatServices(StreamingChatModel model, ChatModel summaryModel)
 	{
 		// Load system prompt
 		String systemPrompt = loadSystemPrompt();
@@ -100,15 +138,12 @@ public class ServoyAiModel
 		System.out.println("First 200 chars: " + systemPrompt.substring(0, Math.min(200, systemPrompt.length())));
 		System.out.println("======================");
 		
-		// Create message window memory (40 messages max)
-		ChatMemory chatMemory = MessageWindowChatMemory.builder()
-			.maxMessages(40)
-			.chatMemoryStore(chatMemoryStore)
-			.build();
-		
 		AiServices<Assistant> builder = AiServices.builder(Assistant.class);
 		builder.streamingChatModel(model);
-		builder.chatMemoryProvider(memoryId -> chatMemory);
+		// a token window memory per conversation that summarizes old turns, all backed by the bounded store
+		ApproximateTokenCountEstimator tokenCountEstimator = new ApproximateTokenCountEstimator();
+		builder.chatMemoryProvider(
+			memoryId -> new SummarizingChatMemory(memoryId, chatMemoryStore, MAX_MEMORY_TOKENS, tokenCountEstimator, summaryModel, tokenMetrics));
 		builder.systemMessageProvider(memoryId -> {
 			System.out.println("=== SYSTEM MESSAGE REQUESTED for memoryId: " + memoryId + " ===");
 			return systemPrompt;
@@ -175,14 +210,69 @@ public class ServoyAiModel
 	}
 
 	/**
-	 * Clear the chat memory for a specific memory ID (solution name)
+	 * Clear the chat memory and the chat history for a specific memory ID (solution name)
 	 * @param memoryId the memory ID to clear
 	 */
 	public void clearMemory(String memoryId)
 	{
-		if (chatMemoryStore != null)
+		chatMemoryStore.deleteMessages(memoryId);
+		if (assistant != null)
+		{
+			assistant.evictChatMemory(memoryId);
+		}
+		logger.info("Chat memory cleared for " + memoryId + ": " + chatMemoryStore.getStats() + "; " + tokenMetrics.getStats());
+	}
+
+	/**
+	 * Read the latest user and assistant messages of a conversation from the chat history, without loading the whole conversation,
+	 * e.g. to show them again when its solution is activated.
+	 * 
+	 * @param memoryId the memory ID (solution name)
+	 * @param maxMessages maximum number of messages returned
+	 * @return user messages and assistant messages with text, oldest first; empty when there is no chat history
+	 */
+	public List<ChatMessage> getRecentHistory(String memoryId, int maxMessages)
+	{
+		List<ChatMessage> recent = new ArrayList<>();
+		if (chatHistoryStore == null)
+		{
+			return recent;
+		}
+		// a page twice as large as asked for, tool calls and results are left out
+		int size = chatHistoryStore.size(memoryId);
+		for (ChatMessage message : chatHistoryStore.getMessages(memoryId, size - 2 * maxMessages, size))
+		{
+			if ((message instanceof UserMessage userMessage && userMessage.hasSingleText() && !SummarizingChatMemory.SUMMARY_NAME.equals(userMessage.name())) ||
+				(message instanceof AiMessage aiMessage && aiMessage.text() != null && !aiMessage.text().isBlank()))
+			{
+				recent.add(message);
+			}
+		}
+		return recent.size() > maxMessages ? recent.subList(recent.size() - maxMessages, recent.size()) : recent;
+	}
+
+	/**
+	 * @return the resident conversations and message bytes of the chat memory
+	 */
+	public BoundedChatMemoryStore.Stats getMemoryStats()
+	{
+		return chatMemoryStore.getStats();
+	}
+
+	/**
+	 * @return the tokens sent to the chat model per turn and the tokens saved by summarizing the chat memory
+	 */
+	public SummarizingChatMemory.Stats getTokenStats()
+	{
+		return tokenMetrics.getStats();
+	}
+
+	private void onConversationEvicted(Object memoryId)
+	{
+		if (assistant != null)
 		{
-			chatMemoryStore.deleteMessages(memoryId);
+			assistant.evictChatMemory(memoryId);
 		}
+		logger.info("Chat memory evicted for " + memoryId + ": " + chatMemoryStore.getStats());
 	}
 }
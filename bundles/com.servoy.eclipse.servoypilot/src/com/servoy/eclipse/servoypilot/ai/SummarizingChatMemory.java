@@ -0,0 +1,537 @@
+package com.servoy.eclipse.servoypilot.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.ILog;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.Content;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.TextContent;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+
+/**
+ * Chat memory of one conversation that is bounded by an estimated number of tokens instead of a number of messages.
+ *
+ * When a new user message arrives, tool results of turns before the previous turn are replaced by a short stub,
+ * the model can call the tool again when it still needs them. When the conversation still exceeds the token budget,
+ * the oldest turns are replaced right away by a list of the user's earlier requests, until about half of the
+ * budget is used. Turns are only cut at user messages, so tool calls and their results are never separated.
+ *
+ * Adding a message never waits for a model: the replaced turns are summarized by the (fast) summary model in the background,
+ * with a timeout, and a later {@link #add(ChatMessage)} swaps that summary in for the list of requests.
+ * Without a summary model, or when summarizing fails or times out, the list of requests stays.
+ *
+ * The summary is kept in the store as a named user message and handed to the model as part of the system message.
+ * Every call to {@link #messages()} counts as a request sent to the model for the token {@link Metrics}.
+ */
+public class SummarizingChatMemory implements ChatMemory
+{
+	private static final ILog logger = ILog.of(SummarizingChatMemory.class);
+
+	static final String SUMMARY_NAME = "conversation-summary";
+	private static final String SUMMARY_HEADER = "Summary of the earlier conversation with the user:";
+	private static final String SUMMARY_INSTRUCTIONS = "You summarize a conversation between a Servoy developer and a Servoy development assistant. "
+		+ "Keep the developer's goals, decisions, names of forms, relations, value lists, tables and other created or changed items, "
+		+ "and open questions. Leave out greetings, rules and tool output that can be fetched again. "
+		+ "Answer with the summary only, as short bullet points, in at most 300 words.";
+	private static final int STUB_MIN_TOKENS = 200; // older tool results up to this size are kept as is
+	private static final int MAX_SUMMARY_TOKENS = 600;
+	private static final int MAX_TRANSCRIPT_CHARS_PER_MESSAGE = 2000; // what the summary model sees of one message
+	private static final int MAX_FALLBACK_CHARS_PER_REQUEST = 200;
+	private static final long SUMMARY_TIMEOUT_SECONDS = 30;
+	private static final ExecutorService SUMMARY_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "Chat memory summarizer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Tokens handed to the model and saved by compaction, over all conversations.
+	 *
+	 * @param turns user messages added
+	 * @param requests model requests, one per call to {@link SummarizingChatMemory#messages()}
+	 * @param tokensSent estimated tokens of all requests
+	 * @param lastTurnTokens estimated tokens of all requests of the latest turn
+	 * @param maxRequestTokens estimated tokens of the largest request
+	 * @param compactions times old turns were replaced by a list of the user's requests
+	 * @param summaries times the summary model summarized old turns in the background
+	 * @param summaryFailures times the summary model failed or timed out and the list of requests stayed
+	 * @param stubbedResults tool results replaced by a stub
+	 * @param tokensSaved estimated tokens removed from the memory by stubs and summaries
+	 */
+	public record Stats(long turns, long requests, long tokensSent, long lastTurnTokens, long maxRequestTokens, long compactions, long summaries,
+		long summaryFailures, long stubbedResults, long tokensSaved)
+	{
+		@Override
+		public String toString()
+		{
+			return String.format(Locale.ROOT,
+				"%d turn(s), %d request(s), %d tokens sent (%d per turn, last turn %d, largest request %d); %d compactions, %d summaries (%d failed), %d tool results stubbed, %d tokens saved",
+				Long.valueOf(turns), Long.valueOf(requests), Long.valueOf(tokensSent), Long.valueOf(turns > 0 ? tokensSent / turns : 0),
+				Long.valueOf(lastTurnTokens), Long.valueOf(maxRequestTokens), Long.valueOf(compactions), Long.valueOf(summaries), Long.valueOf(summaryFailures),
+				Long.valueOf(stubbedResults), Long.valueOf(tokensSaved));
+		}
+	}
+
+	/**
+	 * Token counters shared by the chat memories of all conversations.
+	 */
+	public static final class Metrics
+	{
+		private long turns;
+		private long requests;
+		private long tokensSent;
+		private long lastTurnTokens;
+		private long maxRequestTokens;
+		private long compactions;
+		private long summaries;
+		private long summaryFailures;
+		private long stubbedResults;
+		private long tokensSaved;
+
+		synchronized void turnStarted()
+		{
+			turns++;
+			lastTurnTokens = 0;
+		}
+
+		synchronized void requestSent(int tokens)
+		{
+			requests++;
+			tokensSent += tokens;
+			lastTurnTokens += tokens;
+			maxRequestTokens = Math.max(maxRequestTokens, tokens);
+		}
+
+		synchronized void stubbed(int results, int tokens)
+		{
+			stubbedResults += results;
+			tokensSaved += tokens;
+		}
+
+		synchronized void compacted(int tokens)
+		{
+			compactions++;
+			tokensSaved += tokens;
+		}
+
+		synchronized void summarized(boolean failed)
+		{
+			if (failed)
+			{
+				summaryFailures++;
+			}
+			else
+			{
+				summaries++;
+			}
+		}
+
+		public synchronized Stats getStats()
+		{
+			return new Stats(turns, requests, tokensSent, lastTurnTokens, maxRequestTokens, compactions, summaries, summaryFailures, stubbedResults, tokensSaved);
+		}
+	}
+
+	private final Object id;
+	private final ChatMemoryStore store;
+	private final int maxTokens;
+	private final TokenCountEstimator estimator;
+	private final ChatModel summaryModel;
+	private final Metrics metrics;
+	private CompletableFuture<String> pendingSummary; // background summary of the turns replaced by listedSummary
+	private String listedSummary; // the summary in the store that pendingSummary replaces
+
+	/**
+	 * @param id the memory id of the conversation
+	 * @param store the store that holds the messages
+	 * @param maxTokens estimated tokens the messages may take before old turns are summarized
+	 * @param estimator estimates the tokens of messages
+	 * @param summaryModel model that summarizes old turns, can be null
+	 * @param metrics receives the token counts
+	 */
+	public SummarizingChatMemory(Object id, ChatMemoryStore store, int maxTokens, TokenCountEstimator estimator, ChatModel summaryModel, Metrics metrics)
+	{
+		this.id = id;
+		this.store = store;
+		this.maxTokens = maxTokens;
+		this.estimator = estimator;
+		this.summaryModel = summaryModel;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public Object id()
+	{
+		return id;
+	}
+
+	@Override
+	public synchronized void add(ChatMessage message)
+	{
+		List<ChatMessage> messages = new ArrayList<>(store.getMessages(id));
+		boolean changed = applySummary(messages);
+		if (message instanceof SystemMessage)
+		{
+			int index = indexOfSystemMessage(messages);
+			if (index >= 0 && message.equals(messages.get(index)))
+			{
+				if (changed)
+				{
+					store.updateMessages(id, messages);
+				}
+				return;
+			}
+			if (index >= 0)
+			{
+				messages.remove(index);
+			}
+			messages.add(0, message);
+		}
+		else
+		{
+			if (message instanceof UserMessage)
+			{
+				metrics.turnStarted();
+				stubToolResults(messages, indexOfLastTurn(messages));
+			}
+			messages.add(message);
+		}
+		if (estimator.estimateTokenCountInMessages(messages) > maxTokens)
+		{
+			messages = compact(messages);
+		}
+		store.updateMessages(id, messages);
+	}
+
+	@Override
+	public List<ChatMessage> messages()
+	{
+		List<ChatMessage> result = new ArrayList<>();
+		String systemPrompt = null;
+		String summary = null;
+		for (ChatMessage message : store.getMessages(id))
+		{
+			if (message instanceof SystemMessage systemMessage)
+			{
+				systemPrompt = systemMessage.text();
+			}
+			else if (isSummary(message))
+			{
+				summary = text((UserMessage)message);
+			}
+			else
+			{
+				result.add(message);
+			}
+		}
+		if (summary != null)
+		{
+			systemPrompt = (systemPrompt != null ? systemPrompt + "\n\n" : "") + SUMMARY_HEADER + "\n" + summary;
+		}
+		if (systemPrompt != null)
+		{
+			result.add(0, SystemMessage.from(systemPrompt));
+		}
+		metrics.requestSent(estimator.estimateTokenCountInMessages(result));
+		return result;
+	}
+
+	@Override
+	public synchronized void clear()
+	{
+		pendingSummary = null;
+		listedSummary = null;
+		store.deleteMessages(id);
+	}
+
+	/**
+	 * Swap in the background summary when it is done and the list of requests it replaces is still the summary in the messages.
+	 *
+	 * @return true when the messages were changed
+	 */
+	private boolean applySummary(List<ChatMessage> messages)
+	{
+		if (pendingSummary == null || !pendingSummary.isDone())
+		{
+			return false;
+		}
+		String summary = pendingSummary.join(); // never fails, failures complete with null
+		String replaced = listedSummary;
+		pendingSummary = null;
+		listedSummary = null;
+		int index = indexOfSummary(messages);
+		if (summary == null || index < 0 || !text((UserMessage)messages.get(index)).equals(replaced))
+		{
+			return false;
+		}
+		messages.set(index, UserMessage.from(SUMMARY_NAME, summary));
+		return true;
+	}
+
+	/**
+	 * Replace the larger tool results before a message by a stub.
+	 *
+	 * @param end index of the first message whose tool results are kept
+	 */
+	private void stubToolResults(List<ChatMessage> messages, int end)
+	{
+		int results = 0;
+		int tokensSaved = 0;
+		for (int i = 0; i < end; i++)
+		{
+			if (messages.get(i) instanceof ToolExecutionResultMessage result)
+			{
+				int tokens = estimator.estimateTokenCountInMessage(result);
+				if (tokens > STUB_MIN_TOKENS)
+				{
+					ToolExecutionResultMessage stub = ToolExecutionResultMessage.from(result.id(), result.toolName(),
+						"[Result of " + result.toolName() + " (about " + tokens + " tokens) removed from the conversation history, call the tool again if it is still needed]");
+					messages.set(i, stub);
+					results++;
+					tokensSaved += tokens - estimator.estimateTokenCountInMessage(stub);
+				}
+			}
+		}
+		if (results > 0)
+		{
+			metrics.stubbed(results, tokensSaved);
+		}
+	}
+
+	/**
+	 * Replace the oldest turns by a summary, keeping the latest turns that fit in half of the budget, and at least the current turn.
+	 *
+	 * @return the compacted messages, or the given messages when there are no older turns to replace
+	 */
+	private List<ChatMessage> compact(List<ChatMessage> messages)
+	{
+		int start = 0;
+		SystemMessage systemMessage = null;
+		String previousSummary = null;
+		if (start < messages.size() && messages.get(start) instanceof SystemMessage message)
+		{
+			systemMessage = message;
+			start++;
+		}
+		if (start < messages.size() && isSummary(messages.get(start)))
+		{
+			previousSummary = text((UserMessage)messages.get(start));
+			start++;
+		}
+
+		// tokens from each message to the end
+		int[] suffixTokens = new int[messages.size() + 1];
+		for (int i = messages.size() - 1; i >= 0; i--)
+		{
+			suffixTokens[i] = suffixTokens[i + 1] + estimator.estimateTokenCountInMessage(messages.get(i));
+		}
+		int fixedTokens = (systemMessage != null ? estimator.estimateTokenCountInMessage(systemMessage) : 0) + MAX_SUMMARY_TOKENS;
+		int lastTurn = indexOfLastTurn(messages);
+		int cut = lastTurn;
+		for (int i = start + 1; i < lastTurn; i++)
+		{
+			if (messages.get(i) instanceof UserMessage && fixedTokens + suffixTokens[i] <= maxTokens / 2)
+			{
+				cut = i;
+				break;
+			}
+		}
+		if (cut <= start)
+		{
+			return messages; // only the current turn is left, it is never cut
+		}
+
+		List<ChatMessage> old = messages.subList(start, cut);
+		String summary = listRequests(previousSummary, old);
+		summarizeInBackground(previousSummary, List.copyOf(old), summary);
+
+		List<ChatMessage> compacted = new ArrayList<>(messages.size() - cut + 2);
+		if (systemMessage != null)
+		{
+			compacted.add(systemMessage);
+		}
+		compacted.add(UserMessage.from(SUMMARY_NAME, summary));
+		compacted.addAll(messages.subList(cut, messages.size()));
+
+		int before = suffixTokens[0];
+		int after = estimator.estimateTokenCountInMessages(compacted);
+		metrics.compacted(before - after);
+		logger.info("Chat memory of " + id + " compacted from " + before + " to " + after + " tokens, " + old.size() + " message(s) replaced by the user's requests" +
+			(summaryModel != null ? ", summarizing them in the background" : ""));
+		return compacted;
+	}
+
+	/**
+	 * Start summarizing the replaced messages, to be swapped in for their list of requests by a later {@link #add(ChatMessage)}.
+	 * A summary that is still running is not dropped: the new summary waits for it and builds on it.
+	 */
+	private void summarizeInBackground(String previousSummary, List<ChatMessage> old, String listed)
+	{
+		if (summaryModel == null)
+		{
+			return;
+		}
+		CompletableFuture<String> previous = pendingSummary != null ? pendingSummary : CompletableFuture.completedFuture(null);
+		pendingSummary = previous.thenCompose(summary -> summarize(summary != null ? summary : previousSummary, old));
+		listedSummary = listed;
+	}
+
+	/**
+	 * Let the summary model summarize old messages together with the previous summary, on the summary thread.
+	 *
+	 * @return the summary, completed with null when the model failed or did not answer within {@link #SUMMARY_TIMEOUT_SECONDS}
+	 */
+	private CompletableFuture<String> summarize(String previousSummary, List<ChatMessage> old)
+	{
+		StringBuilder transcript = new StringBuilder();
+		if (previousSummary != null)
+		{
+			transcript.append("Summary so far:\n").append(previousSummary).append("\n\n");
+		}
+		transcript.append("Conversation to add to the summary:\n");
+		for (ChatMessage message : old)
+		{
+			if (message instanceof UserMessage userMessage)
+			{
+				transcript.append("Developer: ").append(truncate(text(userMessage), MAX_TRANSCRIPT_CHARS_PER_MESSAGE)).append('\n');
+			}
+			else if (message instanceof AiMessage aiMessage)
+			{
+				if (aiMessage.text() != null && !aiMessage.text().isBlank())
+				{
+					transcript.append("Assistant: ").append(truncate(aiMessage.text(), MAX_TRANSCRIPT_CHARS_PER_MESSAGE)).append('\n');
+				}
+				if (aiMessage.hasToolExecutionRequests())
+				{
+					for (ToolExecutionRequest request : aiMessage.toolExecutionRequests())
+					{
+						transcript.append("Assistant calls ").append(request.name()).append('(')
+							.append(truncate(request.arguments(), MAX_TRANSCRIPT_CHARS_PER_MESSAGE / 4)).append(")\n");
+					}
+				}
+			}
+			else if (message instanceof ToolExecutionResultMessage result)
+			{
+				transcript.append("Result of ").append(result.toolName()).append(": ").append(truncate(result.text(), MAX_TRANSCRIPT_CHARS_PER_MESSAGE))
+					.append('\n');
+			}
+		}
+		return CompletableFuture.supplyAsync(() -> {
+			String summary = summaryModel.chat(SystemMessage.from(SUMMARY_INSTRUCTIONS), UserMessage.from(transcript.toString())).aiMessage().text();
+			return summary != null && !summary.isBlank() ? truncate(summary.trim(), MAX_SUMMARY_TOKENS * 4) : null;
+		}, SUMMARY_EXECUTOR).orTimeout(SUMMARY_TIMEOUT_SECONDS, TimeUnit.SECONDS).handle((summary, e) -> {
+			if (e != null)
+			{
+				logger.warn("Could not summarize the chat memory of " + id + ": " + e);
+			}
+			metrics.summarized(summary == null);
+			return summary;
+		});
+	}
+
+	/**
+	 * Summary without a model: the previous summary and the user's requests, the most recent kept when it gets too long.
+	 */
+	private static String listRequests(String previousSummary, List<ChatMessage> old)
+	{
+		StringBuilder summary = new StringBuilder();
+		if (previousSummary != null)
+		{
+			summary.append(previousSummary).append('\n');
+		}
+		for (ChatMessage message : old)
+		{
+			if (message instanceof UserMessage userMessage)
+			{
+				summary.append("- The developer asked: ").append(truncate(text(userMessage), MAX_FALLBACK_CHARS_PER_REQUEST)).append('\n');
+			}
+		}
+		int maxChars = MAX_SUMMARY_TOKENS * 4;
+		return summary.length() > maxChars ? "..." + summary.substring(summary.length() - maxChars) : summary.toString().trim();
+	}
+
+	private static int indexOfSystemMessage(List<ChatMessage> messages)
+	{
+		for (int i = 0; i < messages.size(); i++)
+		{
+			if (messages.get(i) instanceof SystemMessage)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the index of the latest user message that is not the summary, or 0 when there is none
+	 */
+	private static int indexOfLastTurn(List<ChatMessage> messages)
+	{
+		for (int i = messages.size() - 1; i >= 0; i--)
+		{
+			if (messages.get(i) instanceof UserMessage && !isSummary(messages.get(i)))
+			{
+				return i;
+			}
+		}
+		return 0;
+	}
+
+	private static int indexOfSummary(List<ChatMessage> messages)
+	{
+		for (int i = 0; i < messages.size(); i++)
+		{
+			if (isSummary(messages.get(i)))
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isSummary(ChatMessage message)
+	{
+		return message instanceof UserMessage userMessage && SUMMARY_NAME.equals(userMessage.name());
+	}
+
+	private static String text(UserMessage message)
+	{
+		if (message.hasSingleText())
+		{
+			return message.singleText();
+		}
+		StringBuilder text = new StringBuilder();
+		for (Content content : message.contents())
+		{
+			if (content instanceof TextContent textContent)
+			{
+				text.append(textContent.text()).append('\n');
+			}
+		}
+		return text.toString().trim();
+	}
+
+	private static String truncate(String text, int maxChars)
+	{
+		if (text == null)
+		{
+			return "";
+		}
+		return text.length() > maxChars ? text.substring(0, maxChars) + "..." : text;
+	}
+}
@@ -155,6 +155,7 @@ public class ChatView
 		sashForm.setWeights(new int[] { 3, 1 }); // 3:1 ratio for browser and input field
 
 		Activator.getDefault().addChatModelChangeListener(chatModelListener);
+		presenter.onViewCreated();
 	}
 
 	@Focus
@@ -66,8 +66,10 @@ public class ChatViewPresenter
 	private final List<ChatMessage> contents = new ArrayList<>();
 	private String currentMemoryId = "default"; // Memory ID for conversation isolation
 	private Object activeProjectListener; // IActiveProjectListener proxy
+	private List<TextChatMessage> initialHistory = List.of(); // restored by init(), shown once the view is created
 
 	public static final String JOB_PREFIX = "ServoyAI: ";
+	private static final int RESTORED_MESSAGES = 20; // shown again when a solution is activated or the view is opened
 	
 	@PostConstruct
 	public void init()
@@ -78,6 +80,16 @@ public class ChatViewPresenter
 			IServoyModel servoyModel = ServoyModelFinder.getServoyModel();
 			if (servoyModel != null)
 			{
+				// continue the chat history of the solution that is already active, e.g. after a restart;
+				// it is shown by onViewCreated(), the view does not exist yet
+				ServoyProject activeProject = servoyModel.getActiveProject();
+				if (activeProject != null)
+				{
+					currentMemoryId = activeProject.getProject().getName();
+					initialHistory = restoreHistory();
+					contents.addAll(initialHistory);
+				}
+
 				// Use reflection to avoid compile-time dependency on IActiveProjectListener
 				Class<?> listenerClass = Class.forName("com.servoy.eclipse.core.IActiveProjectListener");
 				
@@ -143,6 +155,8 @@ public class ChatViewPresenter
 	{
 		// TODO stop/clear any ongoing operations
 		onStop();
+		// the chat history is kept per solution, clearing the view starts a new conversation
+		Activator.getDefault().getServoyAiModel().clearMemory(currentMemoryId);
 		applyToView(view -> {
 			view.clearChatView();
 			view.clearUserInput();
@@ -429,6 +443,19 @@ public class ChatViewPresenter
 	{
 		this.chatView = chatView;
 	}
+
+	/**
+	 * Called by the view once its controls are created, shows the chat history restored by {@link #init()}.
+	 */
+	public void onViewCreated()
+	{
+		if (!initialHistory.isEmpty())
+		{
+			List<TextChatMessage> restored = initialHistory;
+			initialHistory = List.of();
+			applyToView(view -> showSession(view, currentMemoryId, restored));
+		}
+	}
 	
 	/**
 	 * Called when a Servoy solution is activated
@@ -436,27 +463,51 @@ public class ChatViewPresenter
 	 */
 	public void onSolutionActivated(String projectName)
 	{
-		// Clear LangChain4j chat memory for the old solution
-		Activator.getDefault().getServoyAiModel().clearMemory(currentMemoryId);
-		
-		// Update memory ID to new solution
+		// Update memory ID to new solution, the chat memory of the old solution stays in its chat history
 		currentMemoryId = projectName != null ? projectName : "default";
 		
-		// Clear UI conversation history
+		// Clear UI conversation history and show the latest messages of the new solution's chat history again
 		contents.clear();
+		initialHistory = List.of();
+		List<TextChatMessage> restored = restoreHistory();
+		contents.addAll(restored);
 		
-		applyToView(view -> {
-			view.clearChatView();
-			
-			// Add a system notification message
-			String notificationId = UUID.randomUUID().toString();
-			view.addMessage(notificationId, "system");
-			view.setMessageHtml(notificationId, 
-				"<div style='padding: 10px; background-color: #e8f5e9; border-left: 4px solid #4caf50; margin: 10px 0;'>" +
-				"<strong>New session started</strong><br/>" +
-				"Solution: <strong>" + projectName + "</strong><br/>" +
-				"Conversation history has been reset." +
-				"</div>");
-		});
+		applyToView(view -> showSession(view, projectName, restored));
+	}
+
+	/**
+	 * @return the latest user requests and answers of the current chat history, as view messages
+	 */
+	private List<TextChatMessage> restoreHistory()
+	{
+		List<TextChatMessage> restored = new ArrayList<>();
+		for (dev.langchain4j.data.message.ChatMessage message : Activator.getDefault().getServoyAiModel().getRecentHistory(currentMemoryId,
+			RESTORED_MESSAGES))
+		{
+			restored.add(message instanceof dev.langchain4j.data.message.UserMessage userMessage
+				? new TextChatMessage(UUID.randomUUID().toString(), "user", userMessage.singleText())
+				: new TextChatMessage(UUID.randomUUID().toString(), "assistant", ((dev.langchain4j.data.message.AiMessage)message).text()));
+		}
+		return restored;
+	}
+
+	private static void showSession(ChatView view, String projectName, List<TextChatMessage> restored)
+	{
+		view.clearChatView();
+		
+		// Add a system notification message
+		String notificationId = UUID.randomUUID().toString();
+		view.addMessage(notificationId, "system");
+		view.setMessageHtml(notificationId, 
+			"<div style='padding: 10px; background-color: #e8f5e9; border-left: 4px solid #4caf50; margin: 10px 0;'>" +
+			(restored.isEmpty() ? "<strong>New session started</strong><br/>" : "<strong>Session restored</strong><br/>") +
+			"Solution: <strong>" + projectName + "</strong><br/>" +
+			(restored.isEmpty() ? "Conversation history has been reset." : "The conversation continues where it was left.") +
+			"</div>");
+		for (TextChatMessage message : restored)
+		{
+			view.addMessage(message.getId(), message.getRole());
+			view.setMessageHtml(message.getId(), message.getContent().text());
+		}
 	}
 }
@@ -28,6 +28,11 @@ public final class PreferenceConstants
 	public static final String OPENAI_MODEL = "openaiModel";
 	public static final String GEMINI_MODEL = "geminiModel";
 	public static final String DEFAULT_MODEL = "defaultModel";
+	public static final String KNOWLEDGE_TOKEN_BUDGET = "knowledgeTokenBudget";
+
+	public static final int DEFAULT_KNOWLEDGE_TOKEN_BUDGET = 4000;
+	public static final int MIN_KNOWLEDGE_TOKEN_BUDGET = 500;
+	public static final int MAX_KNOWLEDGE_TOKEN_BUDGET = 100000;
 
 	private PreferenceConstants()
 	{
@@ -41,6 +46,7 @@ public final class PreferenceConstants
 		store.setDefault(OPENAI_MODEL, "");
 		store.setDefault(GEMINI_MODEL, "");
 		store.setDefault(DEFAULT_MODEL, "");
+		store.setDefault(KNOWLEDGE_TOKEN_BUDGET, DEFAULT_KNOWLEDGE_TOKEN_BUDGET);
 	}
 
 }
\ No newline at end of file
@@ -8,6 +8,7 @@ import java.util.function.Function;
 import org.eclipse.jface.preference.FieldEditor;
 import org.eclipse.jface.preference.FieldEditorPreferencePage;
 import org.eclipse.jface.preference.IPreferenceStore;
+import org.eclipse.jface.preference.IntegerFieldEditor;
 import org.eclipse.jface.preference.StringFieldEditor;
 import org.eclipse.jface.util.PropertyChangeEvent;
 import org.eclipse.swt.SWT;
@@ -41,6 +42,7 @@ public class ServoyPilotPreferencePage extends FieldEditorPreferencePage impleme
 	private StringFieldEditor geminiKeyEditor;
 	private DynamicComboFieldEditor geminiModelEditor;
 	private DynamicComboFieldEditor defaultModelEditor;
+	private IntegerFieldEditor knowledgeTokenBudgetEditor;
 
 	private List<ModelDescription> openAiModels = List.of();
 	private List<ModelDescription> geminiModels = List.of();
@@ -67,6 +69,12 @@ public class ServoyPilotPreferencePage extends FieldEditorPreferencePage impleme
 		addField(defaultModelEditor);
 		constrainFieldEditor(defaultModelEditor, getFieldEditorParent());
 
+		knowledgeTokenBudgetEditor = new IntegerFieldEditor(PreferenceConstants.KNOWLEDGE_TOKEN_BUDGET, "Knowledge response token budget:",
+			getFieldEditorParent());
+		knowledgeTokenBudgetEditor.setValidRange(PreferenceConstants.MIN_KNOWLEDGE_TOKEN_BUDGET, PreferenceConstants.MAX_KNOWLEDGE_TOKEN_BUDGET);
+		addField(knowledgeTokenBudgetEditor);
+		constrainFieldEditor(knowledgeTokenBudgetEditor, getFieldEditorParent());
+
 		Label spacer = new Label(getFieldEditorParent(), SWT.NONE);
 		GridData spacerData = new GridData(GridData.FILL_HORIZONTAL);
 		spacerData.horizontalSpan = 2;
@@ -117,6 +125,10 @@ public class ServoyPilotPreferencePage extends FieldEditorPreferencePage impleme
 	public void propertyChange(PropertyChangeEvent event)
 	{
 		super.propertyChange(event);
+		if (event.getSource() == knowledgeTokenBudgetEditor)
+		{
+			return; // read on every getKnowledge call, the chat model does not depend on it
+		}
 		if (event.getSource() == geminiKeyEditor)
 		{
 			refreshGeminiModels((String)event.getNewValue());
@@ -0,0 +1,262 @@
+package com.servoy.eclipse.servoypilot.tools.utility;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * Assembles the getKnowledge response within a token budget.
+ * 
+ * Rules markdown is split into sections at its headings. Sections are then selected greedily: first the opening
+ * section of every matched category, then the remaining sections, both in order of the category's match score.
+ * A section that does not fit is cut at a line boundary when enough budget is left, otherwise it is left out
+ * and only its heading is listed, so the model knows the rules go further than what it was given.
+ * 
+ * Token counts are estimates (about 4 characters per token for English text and markdown), close enough to budget
+ * a prompt without shipping the tokenizer of every supported model.
+ */
+final class KnowledgeResponseAssembler
+{
+	private static final int CHARS_PER_TOKEN = 4;
+	private static final int MIN_TRIMMED_SECTION_TOKENS = 48; // below this, listing the heading is more useful than a fragment
+	private static final String TRIMMED_MARKER = "\n[... section shortened to fit the response size ...]\n";
+	private static final String CODE_FENCE = "```";
+
+	/**
+	 * The rules of one matched category.
+	 */
+	record CategoryRules(String category, String matchedQuery, double score, String rules)
+	{
+	}
+
+	/**
+	 * An assembled response.
+	 * 
+	 * @param text the response
+	 * @param tokens estimated tokens of the response
+	 * @param fullTokens estimated tokens the response would have with all rules complete
+	 * @param omittedSections sections left out or shortened
+	 */
+	record Result(String text, int tokens, int fullTokens, int omittedSections)
+	{
+		int tokensSaved()
+		{
+			return fullTokens - tokens;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format(Locale.ROOT, "%d tokens (%d saved of %d, %d section(s) omitted or shortened)", Integer.valueOf(tokens),
+				Integer.valueOf(tokensSaved()), Integer.valueOf(fullTokens), Integer.valueOf(omittedSections));
+		}
+	}
+
+	/**
+	 * A heading with the text up to the next heading; the text before the first heading has an empty heading.
+	 */
+	private static final class Section
+	{
+		final String heading;
+		final String text; // including the heading line
+		final int tokens;
+		String selected; // the text or a shortened part of it, null when not selected
+
+		Section(String heading, String text)
+		{
+			this.heading = heading;
+			this.text = text;
+			this.tokens = estimateTokens(text);
+		}
+	}
+
+	private KnowledgeResponseAssembler()
+	{
+	}
+
+	/**
+	 * Estimate the number of LLM tokens of a text.
+	 */
+	static int estimateTokens(String text)
+	{
+		return (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+	}
+
+	/**
+	 * Split rules markdown into sections at headings ("#" lines), ignoring "#" lines inside fenced code blocks.
+	 */
+	static List<String> splitSections(String markdown)
+	{
+		List<String> sections = new ArrayList<>();
+		StringBuilder current = new StringBuilder();
+		boolean inCodeBlock = false;
+		for (String line : markdown.split("\n", -1))
+		{
+			String trimmed = line.trim();
+			if (trimmed.startsWith(CODE_FENCE))
+			{
+				inCodeBlock = !inCodeBlock;
+			}
+			else if (!inCodeBlock && trimmed.startsWith("#") && current.length() > 0)
+			{
+				sections.add(current.toString());
+				current.setLength(0);
+			}
+			current.append(line).append('\n');
+		}
+		if (!current.toString().isBlank())
+		{
+			sections.add(current.toString());
+		}
+		return sections;
+	}
+
+	/**
+	 * Assemble the response for the matched categories.
+	 * 
+	 * @param header text before the categories, always included
+	 * @param categories the matched categories, in the order they are presented
+	 * @param missingRules text for a category without rules, by category name
+	 * @param tokenBudget maximum estimated tokens of the response; the notes listing left out sections come on top of it
+	 */
+	static Result assemble(String header, List<CategoryRules> categories, Function<String, String> missingRules, int tokenBudget)
+	{
+		List<List<Section>> sectionsPerCategory = new ArrayList<>();
+		List<String> categoryHeaders = new ArrayList<>();
+		int fullChars = header.length();
+		int remaining = tokenBudget - estimateTokens(header);
+		for (int i = 0; i < categories.size(); i++)
+		{
+			CategoryRules category = categories.get(i);
+			List<Section> sections = new ArrayList<>();
+			String categoryHeader = categoryHeader(i + 1, category);
+			if (category.rules() == null || category.rules().isEmpty())
+			{
+				categoryHeader += missingRules.apply(category.category()); // always included, it tells the model not to look for tools
+			}
+			else
+			{
+				for (String text : splitSections(category.rules()))
+				{
+					sections.add(new Section(headingOf(text), text));
+					fullChars += text.length();
+				}
+			}
+			sectionsPerCategory.add(sections);
+			categoryHeaders.add(categoryHeader);
+			fullChars += categoryHeader.length() + 1;
+			remaining -= estimateTokens(categoryHeader);
+		}
+
+		// opening sections of all categories first, then the rest; within each round by descending match score
+		List<Integer> byScore = new ArrayList<>();
+		for (int i = 0; i < categories.size(); i++)
+		{
+			byScore.add(Integer.valueOf(i));
+		}
+		byScore.sort(Comparator.comparingDouble((Integer i) -> categories.get(i.intValue()).score()).reversed());
+		for (Integer i : byScore)
+		{
+			List<Section> sections = sectionsPerCategory.get(i.intValue());
+			if (!sections.isEmpty())
+			{
+				remaining = select(sections.get(0), remaining);
+			}
+		}
+		for (Integer i : byScore)
+		{
+			List<Section> sections = sectionsPerCategory.get(i.intValue());
+			for (int s = 1; s < sections.size(); s++)
+			{
+				remaining = select(sections.get(s), remaining);
+			}
+		}
+
+		StringBuilder response = new StringBuilder(header);
+		int omitted = 0;
+		for (int i = 0; i < categories.size(); i++)
+		{
+			response.append(categoryHeaders.get(i));
+			List<String> omittedHeadings = new ArrayList<>();
+			for (Section section : sectionsPerCategory.get(i))
+			{
+				if (section.selected != null)
+				{
+					response.append(section.selected);
+				}
+				if (section.selected != section.text)
+				{
+					omitted++;
+					if (section.selected == null)
+					{
+						omittedHeadings.add(section.heading.isEmpty() ? "(introduction)" : section.heading);
+					}
+				}
+			}
+			if (!omittedHeadings.isEmpty())
+			{
+				response.append("\n[Sections left out to fit the response size: ").append(String.join("; ", omittedHeadings)).append("]\n");
+			}
+			response.append('\n');
+		}
+		String text = response.toString();
+		return new Result(text, estimateTokens(text), (fullChars + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN, omitted);
+	}
+
+	/**
+	 * Select a section, or a part of it, when it fits the remaining budget.
+	 * 
+	 * @return the remaining budget
+	 */
+	private static int select(Section section, int remaining)
+	{
+		if (section.tokens <= remaining)
+		{
+			section.selected = section.text;
+			return remaining - section.tokens;
+		}
+		// room for the marker and for closing a code block the cut falls in, so the rest of the response is not rendered as code
+		int available = remaining - estimateTokens(TRIMMED_MARKER) - estimateTokens(CODE_FENCE + '\n');
+		if (available >= MIN_TRIMMED_SECTION_TOKENS)
+		{
+			int end = section.text.lastIndexOf('\n', available * CHARS_PER_TOKEN);
+			if (end > 0)
+			{
+				String kept = section.text.substring(0, end + 1);
+				section.selected = kept + (endsInCodeBlock(kept) ? CODE_FENCE + '\n' : "") + TRIMMED_MARKER;
+				return remaining - estimateTokens(section.selected);
+			}
+		}
+		return remaining;
+	}
+
+	/**
+	 * @return true when the text ends inside a fenced code block, with the same fence rule as {@link #splitSections(String)}
+	 */
+	private static boolean endsInCodeBlock(String text)
+	{
+		boolean inCodeBlock = false;
+		for (String line : text.split("\n"))
+		{
+			if (line.trim().startsWith(CODE_FENCE))
+			{
+				inCodeBlock = !inCodeBlock;
+			}
+		}
+		return inCodeBlock;
+	}
+
+	private static String categoryHeader(int number, CategoryRules category)
+	{
+		return "--- Category " + number + ": " + category.category() + " ---\n" + "Matched query: \"" + category.matchedQuery() + "\"\n" +
+			"Confidence: " + String.format(Locale.ROOT, "%.1f%%", Double.valueOf(category.score() * 100)) + "\n\n";
+	}
+
+	private static String headingOf(String section)
+	{
+		String firstLine = section.substring(0, Math.max(0, section.indexOf('\n'))).trim();
+		return firstLine.startsWith("#") ? firstLine.replaceFirst("^#+\\s*", "") : "";
+	}
+}
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.core.runtime.ILog;
 
@@ -14,6 +15,8 @@ import com.servoy.eclipse.knowledgebase.service.RulesCache;
 import com.servoy.eclipse.knowledgebase.service.ServoyEmbeddingService;
 import com.servoy.eclipse.knowledgebase.service.ServoyEmbeddingService.SearchResult;
 import com.servoy.eclipse.model.nature.ServoyProject;
+import com.servoy.eclipse.servoypilot.Activator;
+import com.servoy.eclipse.servoypilot.preferences.PreferenceConstants;
 
 import dev.langchain4j.agent.tool.P;
 import dev.langchain4j.agent.tool.Tool;
@@ -28,6 +31,7 @@ import dev.langchain4j.agent.tool.Tool;
 public class KnowledgeTools
 {
 	private static final ILog logger = ILog.of(KnowledgeTools.class);
+	private static final long KNOWLEDGE_BASE_READY_TIMEOUT_SECONDS = 30; // knowledge base loads in the background after startup
 
 	/**
 	 * Retrieves Servoy documentation and tool instructions for specified action queries.
@@ -39,9 +43,10 @@ public class KnowledgeTools
 	 * such as "create form", "add buttons", "create relation", "style component", etc.
 	 * 
 	 * The tool will:
-	 * 1. Perform similarity search for each query
+	 * 1. Perform similarity search for all queries in one batch
 	 * 2. Match queries to known Servoy categories
-	 * 3. Return detailed documentation and tool instructions for matched categories
+	 * 3. Return detailed documentation and tool instructions for matched categories,
+	 *    within the configured token budget (see {@link KnowledgeResponseAssembler})
 	 * 4. Indicate when functionality is not yet implemented
 	 * 
 	 * @param queries Action phrases to look up. Can be a JSON array string like ["create form", "add buttons"]
@@ -65,19 +70,23 @@ public class KnowledgeTools
 
 		try
 		{
-			// Get embedding service
-			ServoyEmbeddingService embeddingService = KnowledgeBaseManager.getEmbeddingService();
+			// Get embedding service, waiting for the background startup to finish
+			ServoyEmbeddingService embeddingService = KnowledgeBaseManager.awaitEmbeddingService(KNOWLEDGE_BASE_READY_TIMEOUT_SECONDS,
+				TimeUnit.SECONDS);
+			if (embeddingService == null)
+			{
+				return "The Servoy knowledge base is still loading. Wait a moment and call this tool again with the same queries.";
+			}
 
 			// Track matched categories and their contexts
 			Map<String, CategoryMatch> categoryMatches = new LinkedHashMap<>();
 
-			// For each query, do similarity search
-			for (String query : queryList)
+			// Search all queries at once, with top 3 results per query to allow multiple category matches
+			List<List<SearchResult>> queryResults = embeddingService.searchBatch(queryList, 3);
+			for (int i = 0; i < queryList.size(); i++)
 			{
-				// Search with top 3 results to allow multiple category matches
-				List<SearchResult> results = embeddingService.search(query, 3);
-
-				for (SearchResult result : results)
+				String query = queryList.get(i);
+				for (SearchResult result : queryResults.get(i))
 				{
 					String intent = result.metadata.get("intent");
 					if (intent != null && !intent.equals("PASS_THROUGH"))
@@ -117,55 +126,39 @@ public class KnowledgeTools
 				}
 				response.append("\nThese don't match any known Servoy categories.\n");
 				response.append("Either this is not a Servoy-related request, or you need to rephrase your action queries.\n");
+				return response.toString();
 			}
-			else
-			{
-				response.append("=============================================================================\n");
-				response.append("=== AVAILABLE TOOLS & KNOWLEDGE ===\n");
-				response.append("=============================================================================\n\n");
 
-				// Get active project name for variable substitution
-				String projectName = null;
-				try
-				{
-					ServoyProject activeProject = ServoyModelManager.getServoyModelManager().getServoyModel().getActiveProject();
-					if (activeProject != null)
-					{
-						projectName = activeProject.getProject().getName();
-					}
-				}
-				catch (Exception e)
-				{
-					// Ignore - will use null project name
-				}
+			response.append("=== AVAILABLE TOOLS & KNOWLEDGE ===\n\n");
 
-				int categoryNum = 1;
-				for (CategoryMatch match : categoryMatches.values())
+			// Get active project name for variable substitution
+			String projectName = null;
+			try
+			{
+				ServoyProject activeProject = ServoyModelManager.getServoyModelManager().getServoyModel().getActiveProject();
+				if (activeProject != null)
 				{
-					response.append("--- Category ").append(categoryNum++).append(": ").append(match.category).append(" ---\n");
-					response.append("Matched query: \"").append(match.matchedQuery).append("\"\n");
-					response.append("Confidence: ").append(String.format("%.1f%%", match.bestScore * 100)).append("\n\n");
-
-					// Load actual rules content from RulesCache with project name substitution
-					String rules = RulesCache.getRules(match.category, projectName);
-					if (rules != null && !rules.isEmpty())
-					{
-						response.append(rules).append("\n\n");
-					}
-					else
-					{
-						response.append("[NOT YET IMPLEMENTED]\n\n");
-						response.append("This category was matched by similarity search, but tools for ").append(match.category)
-							.append(" are not yet available.\n");
-						response.append("This feature is planned for future implementation.\n\n");
-						response.append("For now, inform the user that this functionality is coming soon.\n\n");
-					}
-
-					response.append("=============================================================================\n\n");
+					projectName = activeProject.getProject().getName();
 				}
 			}
+			catch (Exception e)
+			{
+				// Ignore - will use null project name
+			}
 
-			return response.toString();
+			// Load actual rules content from RulesCache with project name substitution
+			List<KnowledgeResponseAssembler.CategoryRules> categories = new ArrayList<>();
+			for (CategoryMatch match : categoryMatches.values())
+			{
+				categories.add(new KnowledgeResponseAssembler.CategoryRules(match.category, match.matchedQuery, match.bestScore,
+					RulesCache.getRules(match.category, projectName)));
+			}
+
+			int tokenBudget = Activator.getDefault().getPreferenceStore().getInt(PreferenceConstants.KNOWLEDGE_TOKEN_BUDGET);
+			KnowledgeResponseAssembler.Result result = KnowledgeResponseAssembler.assemble(response.toString(), categories, KnowledgeTools::notImplementedRules,
+				tokenBudget > 0 ? tokenBudget : Integer.MAX_VALUE);
+			logger.info("getKnowledge response for " + categories.size() + " categories: " + result);
+			return result.text();
 		}
 		catch (Exception e)
 		{
@@ -174,6 +167,12 @@ public class KnowledgeTools
 		}
 	}
 
+	private static String notImplementedRules(String category)
+	{
+		return "[NOT YET IMPLEMENTED]\n\n" + "This category was matched by similarity search, but tools for " + category + " are not yet available.\n" +
+			"This feature is planned for future implementation.\n\n" + "For now, inform the user that this functionality is coming soon.\n";
+	}
+
 	/**
 	 * Parse queries from various input formats.
 	 * Supports: